@@ -0,0 +1,72 @@
+package com.example.threadlearning.benchmark;
+
+import com.example.threadlearning.lock.AdaptiveSpinLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * synchronized、ReentrantLock与AdaptiveSpinLock在不同临界区长度下的吞吐量
+ *
+ * criticalWork是临界区内Blackhole.consumeCPU的量（0约等于sharedCounter++），
+ * outsideWork是两次加锁之间在锁外做的工作，决定了竞争的激烈程度。
+ * 用 -Dbench.threads=2,4,max 运行；单核机器上AdaptiveSpinLock默认不自旋，结果与ReentrantLock相同。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AdaptiveSpinLockBenchmark {
+
+    @Param({"synchronized", "ReentrantLock", "AdaptiveSpinLock"})
+    public String lockType;
+
+    @Param({"0", "50", "500", "5000"})
+    public int criticalWork;
+
+    @Param({"100"})
+    public int outsideWork;
+
+    final Object monitor = new Object();
+    Lock lock;
+    long counter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        lock = "AdaptiveSpinLock".equals(lockType) ? new AdaptiveSpinLock() : new ReentrantLock();
+    }
+
+    @Benchmark
+    public long increment() {
+        Blackhole.consumeCPU(outsideWork);
+        if ("synchronized".equals(lockType)) {
+            synchronized (monitor) {
+                Blackhole.consumeCPU(criticalWork);
+                return ++counter;
+            }
+        }
+        lock.lock();
+        try {
+            Blackhole.consumeCPU(criticalWork);
+            return ++counter;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.threadlearning.benchmark;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH启动入口
+ * 命令行参数原样交给JMH解析（基准名正则、-f、-wi、-prof gc 等）；
+ * 额外支持系统属性 bench.threads=1,2,4,8，按列表中的线程数依次各跑一遍，用于观察扩展性
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        String threadList = System.getProperty("bench.threads", "").trim();
+
+        if (threadList.isEmpty()) {
+            new Runner(commandLine).run();
+            return;
+        }
+
+        for (String token : threadList.split(",")) {
+            int threads = token.trim().equals("max")
+                    ? Runtime.getRuntime().availableProcessors()
+                    : Integer.parseInt(token.trim());
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(threads);
+            System.out.println("\n########## 线程数: " + threads + " ##########");
+            new Runner(options.build()).run();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.threadlearning.benchmark;
+
+import com.example.threadlearning.lock.BravoReadWriteLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ReentrantReadWriteLock与BravoReadWriteLock的读者扩展性基准测试
+ *
+ * 吞吐量随线程数的变化才是重点，用 -Dbench.threads=1,2,4,8,max 一直扫到全部核心；
+ * 线程数超过核数时BRAVO的写者撤销要等被调度出去的读者，结果没有参考意义。
+ * writePercent为0时只有读者，其余取值观察写者撤销偏向、禁用期回退到底层锁后的表现。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BravoLockBenchmark {
+
+    private static final int TRACE_LENGTH = 1 << 16;
+    private static final int TRACE_MASK = TRACE_LENGTH - 1;
+
+    @Param({"ReentrantReadWriteLock", "Bravo"})
+    public String lockType;
+
+    /**
+     * 写操作所占百分比
+     */
+    @Param({"0", "0.1", "1"})
+    public double writePercent;
+
+    ReadWriteLock lock;
+    long first;
+    long second;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        lock = "Bravo".equals(lockType) ? new BravoReadWriteLock() : new ReentrantReadWriteLock();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadTrace {
+        boolean[] writes;
+        int position;
+
+        @Setup(Level.Trial)
+        public void setUp(BravoLockBenchmark benchmark) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            writes = new boolean[TRACE_LENGTH];
+            for (int i = 0; i < TRACE_LENGTH; i++) {
+                writes[i] = random.nextDouble() * 100 < benchmark.writePercent;
+            }
+            position = random.nextInt(TRACE_LENGTH);
+        }
+    }
+
+    @Benchmark
+    public long operation(ThreadTrace trace) {
+        if (trace.writes[trace.position++ & TRACE_MASK]) {
+            lock.writeLock().lock();
+            try {
+                first++;
+                return ++second;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        lock.readLock().lock();
+        try {
+            if (first != second) {
+                throw new IllegalStateException("读到写了一半的值");
+            }
+            return first;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.threadlearning.benchmark;
+
+import com.example.threadlearning.threadlocal.BufferArena;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 临时缓冲区：每次分配 vs BufferArena的JMH基准测试
+ *
+ * 每次调用申请一个size字节的缓冲区，写入首尾两个long后读回，模拟编码时借用临时缓冲区。
+ * 加上 -prof gc 查看gc.alloc.rate.norm：BufferArena的两个版本应接近0字节/次，
+ * allocateDirect的开销主要在申请/释放本地内存和Cleaner上，size大时会触发显式GC。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BufferArenaBenchmark {
+
+    @Param({"512", "4096", "65536"})
+    public int size;
+
+    private long value = 42;
+
+    @Benchmark
+    public long allocateHeap() {
+        return touch(ByteBuffer.allocate(size));
+    }
+
+    @Benchmark
+    public long arenaHeap() {
+        BufferArena arena = BufferArena.heap();
+        ByteBuffer buffer = arena.acquire(size);
+        try {
+            return touch(buffer);
+        } finally {
+            arena.release(buffer);
+        }
+    }
+
+    @Benchmark
+    public long allocateDirect() {
+        return touch(ByteBuffer.allocateDirect(size));
+    }
+
+    @Benchmark
+    public long arenaDirect() {
+        BufferArena arena = BufferArena.direct();
+        ByteBuffer buffer = arena.acquire(size);
+        try {
+            return touch(buffer);
+        } finally {
+            arena.release(buffer);
+        }
+    }
+
+    private long touch(ByteBuffer buffer) {
+        buffer.putLong(0, value++);
+        buffer.putLong(size - Long.BYTES, value);
+        return buffer.getLong(0) + buffer.getLong(size - Long.BYTES);
+    }
+}
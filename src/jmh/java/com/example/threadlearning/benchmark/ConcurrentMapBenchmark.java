@@ -0,0 +1,183 @@
+package com.example.threadlearning.benchmark;
+
+import com.example.threadlearning.concurrent.HeavyHitterTracker;
+import com.example.threadlearning.concurrent.HotKeyTrackingMap;
+import com.example.threadlearning.concurrent.TinyLfuCache;
+import com.example.threadlearning.concurrent.VersionedMap;
+import com.example.threadlearning.concurrent.ZipfianGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 并发Map实现的JMH基准测试
+ *
+ * 与ConcurrentMapDemo.performanceComparison()的区别：
+ * 1. 计时范围只有Map操作本身，不包含线程池创建、latch等待和日志
+ * 2. 访问序列（键下标和读写判定）在Setup阶段为每个线程预先生成，测量循环里没有随机数开销
+ * 3. 不测试HashMap——多线程下它的结果没有意义
+ *
+ * 参数维度：实现类型 × 读比例 × 键数量 × 键分布(uniform/zipfian)，线程数通过 -t 或 bench.threads 指定
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentMapBenchmark {
+
+    private static final int TRACE_LENGTH = 1 << 16;
+    private static final int TRACE_MASK = TRACE_LENGTH - 1;
+
+    @Param({"ConcurrentHashMap", "SynchronizedMap", "ConcurrentSkipListMap",
+            "VersionedMap", "TinyLfuCache", "HotKeyTrackingMap"})
+    public String mapType;
+
+    /**
+     * 读操作所占百分比，其余为写操作
+     */
+    @Param({"100", "90", "50"})
+    public int readPercent;
+
+    @Param({"1000", "100000"})
+    public int keyCount;
+
+    @Param({"uniform", "zipfian"})
+    public String distribution;
+
+    String[] keys;
+    MapAdapter map;
+    ZipfianGenerator zipfian;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "key-" + i;
+        }
+        zipfian = "zipfian".equals(distribution) ? new ZipfianGenerator(keyCount) : null;
+        map = MapAdapter.create(mapType, keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            map.put(keys[i], i);
+        }
+    }
+
+    /**
+     * 每个线程独立的访问序列
+     */
+    @State(Scope.Thread)
+    public static class ThreadTrace {
+        int[] indexes;
+        boolean[] reads;
+        int position;
+
+        @Setup(Level.Trial)
+        public void setUp(ConcurrentMapBenchmark benchmark) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            indexes = benchmark.zipfian != null
+                    ? benchmark.zipfian.generate(TRACE_LENGTH)
+                    : random.ints(TRACE_LENGTH, 0, benchmark.keyCount).toArray();
+            reads = new boolean[TRACE_LENGTH];
+            for (int i = 0; i < TRACE_LENGTH; i++) {
+                reads[i] = random.nextInt(100) < benchmark.readPercent;
+            }
+            position = random.nextInt(TRACE_LENGTH);
+        }
+    }
+
+    @Benchmark
+    public Object operation(ThreadTrace trace) {
+        int i = trace.position++ & TRACE_MASK;
+        String key = keys[trace.indexes[i]];
+        if (trace.reads[i]) {
+            return map.get(key);
+        }
+        map.put(key, i);
+        return key;
+    }
+
+    /**
+     * 统一不同结构的读写接口
+     */
+    interface MapAdapter {
+        Object get(String key);
+
+        void put(String key, Integer value);
+
+        static MapAdapter create(String type, int keyCount) {
+            switch (type) {
+                case "ConcurrentHashMap":
+                    return of(new ConcurrentHashMap<>());
+                case "SynchronizedMap":
+                    return of(Collections.synchronizedMap(new HashMap<>()));
+                case "ConcurrentSkipListMap":
+                    return of(new ConcurrentSkipListMap<>());
+                case "HotKeyTrackingMap":
+                    return of(new HotKeyTrackingMap<>(new HeavyHitterTracker<>(20, 64, 100_000)));
+                case "VersionedMap": {
+                    VersionedMap<String, Integer> versioned = new VersionedMap<>();
+                    return new MapAdapter() {
+                        @Override
+                        public Object get(String key) {
+                            return versioned.get(key);
+                        }
+
+                        @Override
+                        public void put(String key, Integer value) {
+                            versioned.put(key, value);
+                        }
+                    };
+                }
+                case "TinyLfuCache": {
+                    // 容量等于键数量，测的是并发读写开销而不是命中率
+                    TinyLfuCache<String, Integer> cache = new TinyLfuCache<>(keyCount);
+                    return new MapAdapter() {
+                        @Override
+                        public Object get(String key) {
+                            return cache.getIfPresent(key);
+                        }
+
+                        @Override
+                        public void put(String key, Integer value) {
+                            cache.put(key, value);
+                        }
+                    };
+                }
+                default:
+                    throw new IllegalArgumentException("未知的Map类型: " + type);
+            }
+        }
+
+        private static MapAdapter of(Map<String, Integer> map) {
+            return new MapAdapter() {
+                @Override
+                public Object get(String key) {
+                    return map.get(key);
+                }
+
+                @Override
+                public void put(String key, Integer value) {
+                    map.put(key, value);
+                }
+            };
+        }
+    }
+}
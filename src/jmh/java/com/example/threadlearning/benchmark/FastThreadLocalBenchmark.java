@@ -0,0 +1,135 @@
+package com.example.threadlearning.benchmark;
+
+import com.example.threadlearning.threadlocal.FastThreadLocal;
+import com.example.threadlearning.threadlocal.FastThreadLocalThread;
+import com.example.threadlearning.threadlocal.FastThreadLocalThreadFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ThreadLocal与FastThreadLocal的JMH基准测试
+ *
+ * 每个线程上有localCount个存活的变量，每次调用按顺序轮流读取其中一个：
+ * - threadLocal：ThreadLocalMap哈希探测
+ * - fastThreadLocal：工作线程是FastThreadLocalThread，按下标读线程字段里的数组
+ * - fastThreadLocalFallback：工作线程是普通线程，先经过一次ThreadLocal再按下标读取
+ *
+ * 类上的@Fork通过JMH的CUSTOM executor让工作线程由FastThreadLocalThreadFactory创建，
+ * fastThreadLocalFallback在方法上另写了@Fork：方法上的@Fork整体替换类上的@Fork，不会合并参数，
+ * 这个fork根本拿不到CUSTOM的两个参数，-Djmh.executor=PLATFORM只是把JMH默认的普通线程写明；
+ * 两个State在@Setup里检查线程类型，配置没有生效时直接失败而不是给出错误的数字。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Djmh.executor=CUSTOM",
+        "-Djmh.executor.class=com.example.threadlearning.benchmark.FastThreadLocalBenchmark$FastThreadLocalExecutor"})
+public class FastThreadLocalBenchmark {
+
+    private static final int MAX_LOCALS = 256;
+
+    @SuppressWarnings("unchecked")
+    private static final ThreadLocal<Integer>[] THREAD_LOCALS = new ThreadLocal[MAX_LOCALS];
+    @SuppressWarnings("unchecked")
+    private static final FastThreadLocal<Integer>[] FAST_THREAD_LOCALS = new FastThreadLocal[MAX_LOCALS];
+
+    static {
+        for (int i = 0; i < MAX_LOCALS; i++) {
+            THREAD_LOCALS[i] = new ThreadLocal<>();
+            FAST_THREAD_LOCALS[i] = new FastThreadLocal<>();
+        }
+    }
+
+    /**
+     * JMH的CUSTOM executor：要求实现ExecutorService并提供(int maxThreads, String prefix)构造器
+     */
+    public static class FastThreadLocalExecutor extends ThreadPoolExecutor {
+        public FastThreadLocalExecutor(int maxThreads, String prefix) {
+            super(maxThreads, maxThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    new FastThreadLocalThreadFactory(prefix + "-", true));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Locals {
+        @Param({"1", "16", "256"})
+        public int localCount;
+
+        int mask;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            mask = localCount - 1;
+            for (int i = 0; i < localCount; i++) {
+                THREAD_LOCALS[i].set(i);
+                FAST_THREAD_LOCALS[i].set(i);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            for (int i = 0; i < localCount; i++) {
+                THREAD_LOCALS[i].remove();
+            }
+            FastThreadLocal.removeAll();
+        }
+
+        int nextIndex() {
+            return next++ & mask;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class OnFastThread {
+        @Setup(Level.Trial)
+        public void check() {
+            if (!(Thread.currentThread() instanceof FastThreadLocalThread)) {
+                throw new IllegalStateException("工作线程不是FastThreadLocalThread: " + Thread.currentThread());
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class OnPlainThread {
+        @Setup(Level.Trial)
+        public void check() {
+            if (Thread.currentThread() instanceof FastThreadLocalThread) {
+                throw new IllegalStateException("工作线程应为普通线程: " + Thread.currentThread());
+            }
+        }
+    }
+
+    @Benchmark
+    public Integer threadLocal(Locals locals) {
+        return THREAD_LOCALS[locals.nextIndex()].get();
+    }
+
+    @Benchmark
+    public Integer fastThreadLocal(Locals locals, OnFastThread onFastThread) {
+        return FAST_THREAD_LOCALS[locals.nextIndex()].get();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Djmh.executor=PLATFORM")
+    public Integer fastThreadLocalFallback(Locals locals, OnPlainThread onPlainThread) {
+        return FAST_THREAD_LOCALS[locals.nextIndex()].get();
+    }
+}
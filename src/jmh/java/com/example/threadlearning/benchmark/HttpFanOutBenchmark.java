@@ -0,0 +1,93 @@
+package com.example.threadlearning.benchmark;
+
+import com.example.threadlearning.async.HttpFanOut;
+import com.example.threadlearning.async.StubHttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP扇出的JMH基准测试：阻塞（每个调用一个线程 + send()）vs 异步（sendAsync()）
+ *
+ * 1. 每次操作是一轮完整的扇出：同时发出concurrency个请求，等待全部完成
+ * 2. 桩服务固定延迟20ms、无错误，测的是客户端一侧的开销；连接在轮次之间复用
+ * 3. 阻塞方式的线程池在Setup中按并发数预先创建，不把创建线程的时间算进每轮操作
+ * 4. 每个参数组合结束时打印JVM峰值线程数；内存分配用 -prof gc 查看（gc.alloc.rate.norm为每轮分配字节数）
+ *
+ * 并发数10000时客户端和服务端共需约2万个socket，运行前确认 ulimit -n 足够大。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class HttpFanOutBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int concurrency;
+
+    @Param({"BLOCKING", "ASYNC"})
+    public HttpFanOut.Mode mode;
+
+    StubHttpServer server;
+    ExecutorService clientExecutor;
+    ExecutorService blockingPool;
+    HttpFanOut fanOut;
+    List<URI> uris;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = StubHttpServer.start();
+        server.route("/backend", StubHttpServer.LatencyDistribution.fixed(20), 0.0);
+        uris = Collections.nCopies(concurrency, server.uri("/backend"));
+        clientExecutor = Executors.newFixedThreadPool(2);
+        fanOut = new HttpFanOut(clientExecutor, Duration.ofSeconds(60));
+        if (mode == HttpFanOut.Mode.BLOCKING) {
+            blockingPool = Executors.newFixedThreadPool(concurrency);
+        }
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.out.printf("%n[%s 并发=%d] JVM峰值线程数: %d%n", mode, concurrency, threads.getPeakThreadCount());
+        if (blockingPool != null) {
+            blockingPool.shutdownNow();
+        }
+        clientExecutor.shutdownNow();
+        server.close();
+    }
+
+    @Benchmark
+    public List<HttpFanOut.Response> fanOut() throws InterruptedException {
+        if (mode == HttpFanOut.Mode.ASYNC) {
+            return fanOut.fetchAll(uris).join();
+        }
+        return fanOut.fetchAllBlocking(uris, blockingPool);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.threadlearning.benchmark;
+
+import com.example.threadlearning.lock.LockProfiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ProfiledLock的额外开销基准测试
+ *
+ * 单线程时全是无竞争获取，差值就是包装本身的固定成本；多线程（-Dbench.threads=1,4,max）时看竞争路径上
+ * 计时、计数和抽样调用栈的成本，sampleRate取0、默认的0.05和1（每次都抓调用栈）作对比，
+ * ReentrantLock不受sampleRate影响，三组结果只是重复测量。
+ * 临界区里用Blackhole.consumeCPU模拟少量工作。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProfiledLockBenchmark {
+
+    @Param({"ReentrantLock", "Profiled"})
+    public String lockType;
+
+    @Param({"0", "0.05", "1"})
+    public double sampleRate;
+
+    @Param({"16"})
+    public int work;
+
+    Lock lock;
+    long counter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        lock = "Profiled".equals(lockType)
+                ? new LockProfiler(sampleRate).wrap("benchmark", new ReentrantLock())
+                : new ReentrantLock();
+    }
+
+    @Benchmark
+    public long lockUnlock() {
+        lock.lock();
+        try {
+            Blackhole.consumeCPU(work);
+            return ++counter;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.threadlearning.benchmark;
+
+import com.example.threadlearning.threadlocal.RequestContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * RequestContext与InheritableThreadLocal的JMH基准测试
+ *
+ * 每个工作线程上另有ambientLocals个可继承变量，模拟MDC、安全上下文等同时存在的InheritableThreadLocal。
+ * - constructInheriting / constructScoped：只构造子线程不启动，单独测new Thread时复制继承表的开销
+ * - fanOutInheriting / fanOutScoped：每次扇出fanOut个新线程读取上下文并等待全部完成
+ * - fanOutScopedPooled：同样的扇出交给线程池，通过RequestContext.propagate传递
+ *   （InheritableThreadLocal在线程池里读到的是创建线程时的旧值，没有可比的正确版本）
+ * - readInheritable / readScoped：绑定上下文并读取一次（set/get/remove 对比 supplyWith/current）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestContextBenchmark {
+
+    private static final InheritableThreadLocal<String> REQUEST_ID = new InheritableThreadLocal<>();
+    private static final Runnable NOOP = () -> { };
+
+    @State(Scope.Thread)
+    public static class Parent {
+        @Param({"0", "8", "64"})
+        public int ambientLocals;
+
+        @Param({"16"})
+        public int fanOut;
+
+        final RequestContext context = RequestContext.of("req-1", "user-1");
+        private final List<InheritableThreadLocal<String>> ambient = new ArrayList<>();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            for (int i = 0; i < ambientLocals; i++) {
+                InheritableThreadLocal<String> local = new InheritableThreadLocal<>();
+                local.set("ambient-" + i);
+                ambient.add(local);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            ambient.forEach(ThreadLocal::remove);
+            REQUEST_ID.remove();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Pool {
+        ExecutorService executor;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            executor = Executors.newFixedThreadPool(4);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public Thread constructInheriting(Parent parent) {
+        REQUEST_ID.set("req-1");
+        try {
+            return new Thread(NOOP);
+        } finally {
+            REQUEST_ID.remove();
+        }
+    }
+
+    @Benchmark
+    public Thread constructScoped(Parent parent) {
+        return RequestContext.supplyWith(parent.context,
+                () -> new Thread(null, RequestContext.propagate(NOOP), "scoped", 0, false));
+    }
+
+    @Benchmark
+    public int fanOutInheriting(Parent parent) throws InterruptedException {
+        REQUEST_ID.set("req-1");
+        try {
+            return fanOut(parent.fanOut, task -> new Thread(task).start(), REQUEST_ID::get);
+        } finally {
+            REQUEST_ID.remove();
+        }
+    }
+
+    @Benchmark
+    public int fanOutScoped(Parent parent) throws Exception {
+        return RequestContext.callWith(parent.context, () -> fanOut(parent.fanOut,
+                task -> new Thread(null, RequestContext.propagate(task), "scoped", 0, false).start(),
+                () -> RequestContext.current().getRequestId()));
+    }
+
+    @Benchmark
+    public int fanOutScopedPooled(Parent parent, Pool pool) throws Exception {
+        return RequestContext.callWith(parent.context, () -> fanOut(parent.fanOut,
+                task -> pool.executor.execute(RequestContext.propagate(task)),
+                () -> RequestContext.current().getRequestId()));
+    }
+
+    @Benchmark
+    public String readInheritable(Parent parent) {
+        REQUEST_ID.set("req-1");
+        try {
+            return REQUEST_ID.get();
+        } finally {
+            REQUEST_ID.remove();
+        }
+    }
+
+    @Benchmark
+    public String readScoped(Parent parent) {
+        return RequestContext.supplyWith(parent.context, () -> RequestContext.current().getRequestId());
+    }
+
+    /**
+     * 启动n个读取上下文的任务并等待完成，返回读到值的任务数
+     */
+    private static int fanOut(int n, Consumer<Runnable> launcher,
+                              Supplier<String> reader) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(n);
+        int[] seen = new int[1];
+        for (int i = 0; i < n; i++) {
+            launcher.accept(() -> {
+                if (reader.get() != null) {
+                    synchronized (seen) {
+                        seen[0]++;
+                    }
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+        return seen[0];
+    }
+}
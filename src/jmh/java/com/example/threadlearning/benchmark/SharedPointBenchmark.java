@@ -0,0 +1,101 @@
+package com.example.threadlearning.benchmark;
+
+import com.example.threadlearning.lock.ReadWriteLockPoint;
+import com.example.threadlearning.lock.SeqLockPoint;
+import com.example.threadlearning.lock.SharedPoint;
+import com.example.threadlearning.lock.StampedLockPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SharedPoint三种实现的JMH基准测试：ReentrantReadWriteLock / StampedLock乐观读 / 序列锁
+ *
+ * 每个线程预先生成读写序列，读比例从50%到99.99%；线程数通过 -t 或 bench.threads 指定，
+ * 例如 -Dbench.threads=1,2,4,max 一直扫到核数。
+ * 读操作返回 x + y，写者总是写入 (v, -v)，结果非0说明读到了不一致的值（会让基准直接失败）。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SharedPointBenchmark {
+
+    private static final int TRACE_LENGTH = 1 << 16;
+    private static final int TRACE_MASK = TRACE_LENGTH - 1;
+
+    @Param({"ReadWriteLock", "StampedLock", "SeqLock"})
+    public String implementation;
+
+    /**
+     * 读操作所占百分比，其余为写操作
+     */
+    @Param({"50", "90", "99", "99.9", "99.99"})
+    public double readPercent;
+
+    SharedPoint point;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (implementation) {
+            case "ReadWriteLock":
+                point = new ReadWriteLockPoint();
+                break;
+            case "StampedLock":
+                point = new StampedLockPoint();
+                break;
+            case "SeqLock":
+                point = new SeqLockPoint();
+                break;
+            default:
+                throw new IllegalArgumentException("未知实现: " + implementation);
+        }
+    }
+
+    /**
+     * 每个线程独立的读写序列
+     */
+    @State(Scope.Thread)
+    public static class ThreadTrace {
+        boolean[] reads;
+        int position;
+
+        @Setup(Level.Trial)
+        public void setUp(SharedPointBenchmark benchmark) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            reads = new boolean[TRACE_LENGTH];
+            for (int i = 0; i < TRACE_LENGTH; i++) {
+                reads[i] = random.nextDouble() * 100 < benchmark.readPercent;
+            }
+            position = random.nextInt(TRACE_LENGTH);
+        }
+    }
+
+    @Benchmark
+    public double operation(ThreadTrace trace) {
+        int i = trace.position++ & TRACE_MASK;
+        if (trace.reads[i]) {
+            double sum = point.read((x, y) -> x + y);
+            if (sum != 0) {
+                throw new IllegalStateException("读到不一致的值: x + y = " + sum);
+            }
+            return sum;
+        }
+        point.write(i, -i);
+        return i;
+    }
+}
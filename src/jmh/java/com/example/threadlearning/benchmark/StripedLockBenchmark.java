@@ -0,0 +1,124 @@
+package com.example.threadlearning.benchmark;
+
+import com.example.threadlearning.lock.StripedLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按键加锁的几种方式对比：全局锁、分段锁（预先分配 / 延迟弱引用）、每个键一把锁（ConcurrentHashMap）
+ *
+ * update只锁一个键，transfer按固定顺序锁两个键；用 -Dbench.threads=1,4,max 观察并行度的变化。
+ * 键的数量大时每键一把锁的表随之变大，查表开始缓存不命中，分段锁的段数则与键数无关。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StripedLockBenchmark {
+
+    private static final int TRACE_LENGTH = 1 << 16;
+    private static final int TRACE_MASK = TRACE_LENGTH - 1;
+
+    @Param({"global", "striped", "lazyWeakStriped", "perKeyMap"})
+    public String strategy;
+
+    @Param({"1024", "1048576"})
+    public int keys;
+
+    ReentrantLock globalLock;
+    StripedLock<Lock> stripes;
+    ConcurrentHashMap<Integer, Lock> perKeyLocks;
+    long[] values;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        globalLock = new ReentrantLock();
+        stripes = "lazyWeakStriped".equals(strategy) ? StripedLock.lazyWeakLock(1 << 20) : StripedLock.lock(256);
+        perKeyLocks = new ConcurrentHashMap<>();
+        values = new long[keys];
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadTrace {
+        Integer[] keys;
+        int position;
+
+        @Setup(Level.Trial)
+        public void setUp(StripedLockBenchmark benchmark) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            keys = new Integer[TRACE_LENGTH];
+            for (int i = 0; i < TRACE_LENGTH; i++) {
+                keys[i] = random.nextInt(benchmark.keys);
+            }
+            position = random.nextInt(TRACE_LENGTH);
+        }
+
+        Integer next() {
+            return keys[position++ & TRACE_MASK];
+        }
+    }
+
+    @Benchmark
+    public long update(ThreadTrace trace) {
+        Integer key = trace.next();
+        Lock lock = lockFor(key);
+        lock.lock();
+        try {
+            return ++values[key];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Benchmark
+    public long transfer(ThreadTrace trace) {
+        Integer from = trace.next();
+        Integer to = trace.next();
+        List<Lock> locks;
+        switch (strategy) {
+            case "global":
+                locks = List.of(globalLock);
+                break;
+            case "perKeyMap":
+                locks = from.equals(to) ? List.of(lockFor(from))
+                        : from < to ? List.of(lockFor(from), lockFor(to)) : List.of(lockFor(to), lockFor(from));
+                break;
+            default:
+                locks = stripes.bulkGet(List.of(from, to));
+        }
+        try (StripedLock.Unlocker ignored = StripedLock.lockAll(locks)) {
+            values[from]--;
+            return ++values[to];
+        }
+    }
+
+    private Lock lockFor(Integer key) {
+        switch (strategy) {
+            case "global":
+                return globalLock;
+            case "perKeyMap":
+                return perKeyLocks.computeIfAbsent(key, k -> new ReentrantLock());
+            default:
+                return stripes.get(key);
+        }
+    }
+}
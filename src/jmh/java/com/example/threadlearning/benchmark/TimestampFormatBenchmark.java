@@ -0,0 +1,93 @@
+package com.example.threadlearning.benchmark;
+
+import com.example.threadlearning.threadlocal.CachedTimestampFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 时间戳格式化的JMH基准测试
+ *
+ * 对比ThreadLocalDemo.demonstrateDateFormatSafety()的ThreadLocal&lt;SimpleDateFormat&gt;、
+ * DateTimeFormatter和CachedTimestampFormatter（写入byte[]、追加StringBuilder、生成String）。
+ *
+ * 时间戳序列每次调用前进stepMillis毫秒：1表示每1000次跨一秒（高频日志），
+ * 997表示几乎每次都跨秒（缓存的最坏情况）。
+ * 加上 -prof gc 查看gc.alloc.rate.norm，写入缓冲区的版本应为0字节/次。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimestampFormatBenchmark {
+
+    private static final String PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+    private static final ThreadLocal<SimpleDateFormat> SIMPLE_DATE_FORMAT =
+            ThreadLocal.withInitial(() -> new SimpleDateFormat(PATTERN));
+    private static final DateTimeFormatter DATE_TIME_FORMATTER =
+            DateTimeFormatter.ofPattern(PATTERN).withZone(ZoneId.systemDefault());
+
+    /**
+     * 所有线程共享同一个格式化器，测的就是并发下的共享缓存
+     */
+    @State(Scope.Benchmark)
+    public static class Shared {
+        final CachedTimestampFormatter formatter = new CachedTimestampFormatter();
+    }
+
+    @State(Scope.Thread)
+    public static class Clock {
+        @Param({"1", "997"})
+        public long stepMillis;
+
+        final byte[] bytes = new byte[CachedTimestampFormatter.LENGTH];
+        final StringBuilder builder = new StringBuilder(64);
+        long now = System.currentTimeMillis();
+
+        long next() {
+            return now += stepMillis;
+        }
+    }
+
+    @Benchmark
+    public String threadLocalSimpleDateFormat(Clock clock) {
+        return SIMPLE_DATE_FORMAT.get().format(new Date(clock.next()));
+    }
+
+    @Benchmark
+    public String dateTimeFormatter(Clock clock) {
+        return DATE_TIME_FORMATTER.format(Instant.ofEpochMilli(clock.next()));
+    }
+
+    @Benchmark
+    public byte[] cachedToBytes(Shared shared, Clock clock) {
+        shared.formatter.format(clock.next(), clock.bytes, 0);
+        return clock.bytes;
+    }
+
+    @Benchmark
+    public StringBuilder cachedToBuilder(Shared shared, Clock clock) {
+        clock.builder.setLength(0);
+        return shared.formatter.formatTo(clock.next(), clock.builder);
+    }
+
+    @Benchmark
+    public String cachedToString(Shared shared, Clock clock) {
+        return shared.formatter.format(clock.next());
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.threadlearning.async;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 缓存CompletableFuture的异步加载缓存
+ *
+ * 1. 缓存的是Future而不是值：加载进行中时，并发的get拿到同一个Future，同一个key只会加载一次
+ * 2. 加载失败的Future会被立即移除，下一次get重新加载，失败不会被缓存
+ * 3. expireAfterWrite：写入超过该时间的条目视为过期，get会重新加载并等待新结果
+ * 4. refreshAfterWrite（提前刷新）：写入超过该时间但尚未过期时，get立即返回旧值，
+ *    同时在后台触发一次重新加载，成功后替换旧条目；刷新失败则保留旧值，下次读取再试。
+ *    只要热点key的读取间隔小于expireAfterWrite，读者就永远不会等待重新加载
+ *
+ * 所有加载都在构造时传入的executor上发起。过期条目在读取时惰性处理，也可以定期调用cleanUp()。
+ */
+public class AsyncLoadingCache<K, V> {
+
+    private final ConcurrentHashMap<K, Entry<V>> data = new ConcurrentHashMap<>();
+    private final Function<? super K, ? extends CompletableFuture<? extends V>> loader;
+    private final Executor executor;
+    private final long expireAfterWriteNanos;
+    private final long refreshAfterWriteNanos;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    /**
+     * @param loader            异步加载函数，在executor上调用
+     * @param executor          发起加载的线程池
+     * @param expireAfterWrite  写入后多久过期
+     * @param refreshAfterWrite 写入后多久开始后台刷新，必须小于expireAfterWrite；不需要刷新时传0
+     * @param unit              时间单位
+     */
+    public AsyncLoadingCache(Function<? super K, ? extends CompletableFuture<? extends V>> loader,
+                             Executor executor, long expireAfterWrite, long refreshAfterWrite, TimeUnit unit) {
+        if (expireAfterWrite <= 0 || refreshAfterWrite < 0 || refreshAfterWrite >= expireAfterWrite) {
+            throw new IllegalArgumentException("需要满足 0 <= refreshAfterWrite < expireAfterWrite");
+        }
+        this.loader = Objects.requireNonNull(loader);
+        this.executor = Objects.requireNonNull(executor);
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.refreshAfterWriteNanos = refreshAfterWrite == 0 ? Long.MAX_VALUE : unit.toNanos(refreshAfterWrite);
+    }
+
+    /**
+     * 获取key对应的值，不存在或已过期时加载
+     * 返回的是缓存Future的副本，调用方对它的取消或完成不会影响缓存
+     */
+    public CompletableFuture<V> get(K key) {
+        long now = System.nanoTime();
+        Entry<V> entry = data.get(key);
+        if (entry != null && !entry.isExpired(now, expireAfterWriteNanos)) {
+            hits.incrementAndGet();
+            if (entry.needsRefresh(now, refreshAfterWriteNanos)) {
+                refresh(key, entry);
+            }
+            return entry.future.copy();
+        }
+
+        misses.incrementAndGet();
+        Entry<V> created = new Entry<>();
+        Entry<V> winner = data.compute(key, (k, current) ->
+                current != null && !current.isExpired(now, expireAfterWriteNanos) ? current : created);
+        // 在compute之外发起加载：线程池饱和走CallerRunsPolicy时加载可能同步完成，不能在compute里回写data
+        if (winner == created) {
+            load(key, created);
+        }
+        return winner.future.copy();
+    }
+
+    /**
+     * 只读取不加载，不存在或已过期时返回null
+     */
+    public CompletableFuture<V> getIfPresent(K key) {
+        Entry<V> entry = data.get(key);
+        if (entry == null || entry.isExpired(System.nanoTime(), expireAfterWriteNanos)) {
+            return null;
+        }
+        return entry.future.copy();
+    }
+
+    public void invalidate(K key) {
+        data.remove(key);
+    }
+
+    public void invalidateAll() {
+        data.clear();
+    }
+
+    /**
+     * 清理已经过期的条目
+     */
+    public void cleanUp() {
+        long now = System.nanoTime();
+        data.values().removeIf(entry -> entry.isExpired(now, expireAfterWriteNanos));
+    }
+
+    /**
+     * 条目数量（包括加载中和尚未清理的过期条目）
+     */
+    public int size() {
+        return data.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailures.get();
+    }
+
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    /**
+     * 为新条目加载值，失败时先把条目从缓存中移除再通知等待者，之后的get会重新加载
+     */
+    private void load(K key, Entry<V> entry) {
+        startLoad(key).whenComplete((value, error) -> {
+            if (error != null) {
+                loadFailures.incrementAndGet();
+                data.remove(key, entry);
+                entry.future.completeExceptionally(error);
+            } else {
+                entry.writeTime = System.nanoTime();
+                entry.future.complete(value);
+            }
+        });
+    }
+
+    /**
+     * 后台刷新，同一条目同时只有一个刷新在进行；读者继续拿旧条目
+     */
+    private void refresh(K key, Entry<V> current) {
+        if (!current.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        refreshes.incrementAndGet();
+        startLoad(key).whenComplete((value, error) -> {
+            if (error != null) {
+                loadFailures.incrementAndGet();
+                current.refreshing.set(false);
+                return;
+            }
+            Entry<V> refreshed = new Entry<>();
+            refreshed.writeTime = System.nanoTime();
+            refreshed.future.complete(value);
+            // 刷新期间条目被删除或替换时放弃这次结果
+            data.replace(key, current, refreshed);
+        });
+    }
+
+    private CompletableFuture<V> startLoad(K key) {
+        return CompletableFuture.supplyAsync(() -> loader.apply(key), executor)
+                .thenCompose(future -> Objects.requireNonNull(future, "loader返回了null"))
+                .thenApply(value -> Objects.requireNonNull(value, "loader加载结果为null"));
+    }
+
+    private static final class Entry<V> {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        // 加载成功的时间，在future完成之前写入；加载进行中的条目不会过期
+        volatile long writeTime;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        /**
+         * 已过期或加载失败（尚未被移除）的条目都不能再使用
+         */
+        boolean isExpired(long now, long expireNanos) {
+            if (!future.isDone()) {
+                return false;
+            }
+            return future.isCompletedExceptionally() || now - writeTime >= expireNanos;
+        }
+
+        boolean needsRefresh(long now, long refreshNanos) {
+            return future.isDone() && !future.isCompletedExceptionally()
+                    && now - writeTime >= refreshNanos && !refreshing.get();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.threadlearning.async;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 限制并发数的异步map操作
+ *
+ * 与"每个输入一个supplyAsync + allOf"相比：
+ * 1. 同一时刻最多maxConcurrency个未交付的结果（运行中 + 已完成但下游还没要），输入再多内存也是常数
+ * 2. 结果一完成就通过Flow.Publisher或回调推给下游，不必等全部结束
+ * 3. 下游处理不过来时（request不足）不再启动新任务，形成背压
+ *
+ * 有序模式按输入顺序交付，乱序的结果暂存在大小为maxConcurrency的环形槽里；
+ * 无序模式按完成顺序交付。任一任务失败时立即onError并停止启动新任务。
+ *
+ * 所有状态只在drain循环中修改，drain通过wip计数保证同一时刻只有一个线程在执行，
+ * 因此输入Iterator也只会被单线程访问。
+ */
+public final class BoundedAsyncMapper<T, R> {
+
+    private final Function<? super T, ? extends CompletableFuture<? extends R>> mapper;
+    private final int maxConcurrency;
+    private final boolean ordered;
+
+    private BoundedAsyncMapper(Function<? super T, ? extends CompletableFuture<? extends R>> mapper,
+                               int maxConcurrency, boolean ordered) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency必须大于0: " + maxConcurrency);
+        }
+        this.mapper = Objects.requireNonNull(mapper);
+        this.maxConcurrency = maxConcurrency;
+        this.ordered = ordered;
+    }
+
+    /**
+     * 按输入顺序交付结果
+     */
+    public static <T, R> BoundedAsyncMapper<T, R> ordered(
+            Function<? super T, ? extends CompletableFuture<? extends R>> mapper, int maxConcurrency) {
+        return new BoundedAsyncMapper<>(mapper, maxConcurrency, true);
+    }
+
+    /**
+     * 按完成顺序交付结果
+     */
+    public static <T, R> BoundedAsyncMapper<T, R> unordered(
+            Function<? super T, ? extends CompletableFuture<? extends R>> mapper, int maxConcurrency) {
+        return new BoundedAsyncMapper<>(mapper, maxConcurrency, false);
+    }
+
+    /**
+     * 把输入包装成Publisher，订阅后才开始消费输入
+     * 输入只能被遍历一次，所以返回的Publisher只接受一个订阅者
+     */
+    public Flow.Publisher<R> map(Iterator<? extends T> source) {
+        Objects.requireNonNull(source);
+        AtomicBoolean subscribed = new AtomicBoolean();
+        return subscriber -> {
+            if (!subscribed.compareAndSet(false, true)) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("该Publisher只能被订阅一次"));
+                return;
+            }
+            MapSubscription subscription = new MapSubscription(source, subscriber);
+            subscriber.onSubscribe(subscription);
+            subscription.drain();
+        };
+    }
+
+    /**
+     * 回调方式：每个结果完成时调用consumer，全部完成或首次失败时返回的Future结束
+     * consumer在drain线程上串行调用，不需要额外同步，但应当足够快
+     */
+    public CompletableFuture<Void> forEach(Iterator<? extends T> source, Consumer<? super R> consumer) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        map(source).subscribe(new Flow.Subscriber<R>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                done.whenComplete((v, e) -> subscription.cancel());
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(R item) {
+                try {
+                    consumer.accept(item);
+                } catch (Throwable e) {
+                    done.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        return done;
+    }
+
+    private final class MapSubscription implements Flow.Subscription {
+        private final Iterator<? extends T> source;
+        private final Flow.Subscriber<? super R> subscriber;
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+
+        // 无序模式：完成的结果
+        private final Queue<R> completed = new ConcurrentLinkedQueue<>();
+        // 有序模式：按序号取模存放，窗口保证不会覆盖未交付的槽位
+        private final AtomicReferenceArray<Object> slots;
+
+        private volatile Throwable error;
+        private volatile boolean cancelled;
+        private boolean terminated;
+
+        // 以下字段只在drain中访问
+        private long launched;
+        private long emitted;
+
+        MapSubscription(Iterator<? extends T> source, Flow.Subscriber<? super R> subscriber) {
+            this.source = source;
+            this.subscriber = subscriber;
+            this.slots = ordered ? new AtomicReferenceArray<>(maxConcurrency) : null;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("request数量必须大于0: " + n);
+            } else {
+                requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                drainLoop();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void drainLoop() {
+            while (!terminated) {
+                if (cancelled) {
+                    terminate();
+                    return;
+                }
+                Throwable failure = error;
+                if (failure != null) {
+                    terminate();
+                    subscriber.onError(failure);
+                    return;
+                }
+
+                boolean progressed = false;
+                // 1. 在下游需求范围内交付已完成的结果
+                while (emitted < requested.get()) {
+                    R value;
+                    if (ordered) {
+                        int slot = (int) (emitted % maxConcurrency);
+                        Object item = slots.get(slot);
+                        if (item == null) {
+                            break;
+                        }
+                        slots.set(slot, null);
+                        value = (R) item;
+                    } else {
+                        value = completed.poll();
+                        if (value == null) {
+                            break;
+                        }
+                    }
+                    emitted++;
+                    subscriber.onNext(value);
+                    progressed = true;
+                    if (cancelled || error != null) {
+                        break;
+                    }
+                }
+
+                // 2. 窗口有空位时启动新任务；已完成未交付的结果也占窗口，这是内存有界的关键
+                while (launched - emitted < maxConcurrency && !cancelled && error == null && source.hasNext()) {
+                    long sequence = launched++;
+                    launch(source.next(), sequence);
+                    progressed = true;
+                }
+
+                // 3. 全部启动且全部交付后结束
+                if (launched == emitted && error == null && !cancelled && !source.hasNext()) {
+                    terminate();
+                    subscriber.onComplete();
+                    return;
+                }
+                if (!progressed) {
+                    return;
+                }
+            }
+        }
+
+        private void launch(T input, long sequence) {
+            CompletableFuture<? extends R> future;
+            try {
+                future = Objects.requireNonNull(mapper.apply(input), "mapper返回了null");
+            } catch (Throwable e) {
+                error = e;
+                return;
+            }
+            future.whenComplete((value, throwable) -> {
+                if (throwable != null) {
+                    error = throwable;
+                } else if (value == null) {
+                    error = new NullPointerException("异步结果为null，序号: " + sequence);
+                } else if (ordered) {
+                    slots.set((int) (sequence % maxConcurrency), value);
+                } else {
+                    completed.offer(value);
+                }
+                drain();
+            });
+        }
+
+        private void terminate() {
+            terminated = true;
+            completed.clear();
+        }
+    }
+}
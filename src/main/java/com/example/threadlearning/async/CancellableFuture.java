@@ -0,0 +1,167 @@
+package com.example.threadlearning.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * 取消时会中断执行线程的CompletableFuture
+ *
+ * CompletableFuture.cancel(true)只是把Future标记为取消，supplyAsync里正在sleep或阻塞IO的线程
+ * 并不会被中断，会一直占着线程池直到任务自己结束。这里的做法：
+ * 1. 任务运行时把所在线程登记到任务句柄（TaskHandle），结束时注销
+ * 2. 覆盖cancel和completeExceptionally：由外部取消或失败时中断已登记的线程。
+ *    orTimeout到期时调用的正是completeExceptionally(new TimeoutException())，因此超时同样会中断
+ * 3. 覆盖newIncompleteFuture，让thenApply等派生阶段共享同一个句柄：
+ *    对链上任意阶段取消或设置超时，都会中断整条链上正在运行的任务；
+ *    上游被取消时，下游阶段照常以CancellationException结束
+ * 4. 覆盖defaultExecutor，不指定线程池的*Async阶段也在登记线程的包装执行器上运行
+ *
+ * 注意：共享句柄意味着一条链的多个分支同生共死，需要独立取消的分支应当分别创建CancellableFuture。
+ */
+public class CancellableFuture<T> extends CompletableFuture<T> {
+
+    private final TaskHandle handle;
+    private final Executor executor;
+
+    public CancellableFuture() {
+        this(new TaskHandle(), ForkJoinPool.commonPool());
+    }
+
+    private CancellableFuture(TaskHandle handle, Executor executor) {
+        this.handle = handle;
+        this.executor = executor;
+    }
+
+    /**
+     * 在executor上异步执行supplier，返回可中断的Future
+     */
+    public static <T> CancellableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        Objects.requireNonNull(supplier);
+        CancellableFuture<T> future = new CancellableFuture<>(new TaskHandle(), executor);
+        future.defaultExecutor().execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.completeFromTask(supplier.get(), null);
+            } catch (Throwable e) {
+                future.completeFromTask(null, e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 在executor上异步执行runnable，返回可中断的Future
+     */
+    public static CancellableFuture<Void> runAsync(Runnable runnable, Executor executor) {
+        Objects.requireNonNull(runnable);
+        return supplyAsync(() -> {
+            runnable.run();
+            return null;
+        }, executor);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled && mayInterruptIfRunning) {
+            handle.interrupt();
+        }
+        return cancelled;
+    }
+
+    /**
+     * 外部调用（包括orTimeout的超时）使Future失败时，中断正在运行的任务
+     * 任务自身抛出的异常走completeFromTask，不会触发中断
+     */
+    @Override
+    public boolean completeExceptionally(Throwable ex) {
+        boolean completed = super.completeExceptionally(ex);
+        if (completed) {
+            handle.interrupt();
+        }
+        return completed;
+    }
+
+    @Override
+    public <U> CompletableFuture<U> newIncompleteFuture() {
+        return new CancellableFuture<>(handle, executor);
+    }
+
+    @Override
+    public Executor defaultExecutor() {
+        return handle.track(executor);
+    }
+
+    /**
+     * 当前链上正在运行的任务数
+     */
+    public int runningTaskCount() {
+        return handle.runningCount();
+    }
+
+    private void completeFromTask(T value, Throwable error) {
+        if (error == null) {
+            super.complete(value);
+        } else {
+            super.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * 一条链共享的任务句柄
+     * 登记、注销和中断都在同一把锁里完成，保证不会误中断线程池之后执行的其它任务
+     */
+    private static final class TaskHandle {
+        private final List<Thread> runners = new ArrayList<>(1);
+        private boolean interrupted;
+
+        Executor track(Executor executor) {
+            return command -> executor.execute(() -> {
+                Thread current = Thread.currentThread();
+                // 已经取消时仍然执行：派生阶段的Completion需要运行才能把取消传递下去
+                synchronized (this) {
+                    runners.add(current);
+                    if (interrupted) {
+                        current.interrupt();
+                    }
+                }
+                try {
+                    command.run();
+                } finally {
+                    synchronized (this) {
+                        runners.remove(current);
+                    }
+                    // 清除取消留下的中断标记，线程回到线程池时是干净的
+                    if (isInterrupted()) {
+                        Thread.interrupted();
+                    }
+                }
+            });
+        }
+
+        synchronized void interrupt() {
+            interrupted = true;
+            Thread self = Thread.currentThread();
+            for (Thread runner : runners) {
+                if (runner != self) {
+                    runner.interrupt();
+                }
+            }
+        }
+
+        synchronized boolean isInterrupted() {
+            return interrupted;
+        }
+
+        synchronized int runningCount() {
+            return runners.size();
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.example.threadlearning.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 面向CompletableFuture的熔断器
+ *
+ * 状态机：
+ * 1. CLOSED：正常放行，结果记入滑动窗口；窗口内调用数达到minimumCalls后，
+ *    失败率或慢调用率超过阈值就转为OPEN
+ * 2. OPEN：直接返回失败的Future，不提交任务、不占用线程；经过openDuration后，
+ *    下一次调用把状态CAS为HALF_OPEN
+ * 3. HALF_OPEN：只放行一个探测调用，成功则回到CLOSED并清空窗口，失败则重新OPEN
+ *
+ * 滑动窗口是最近windowSize次调用结果组成的环形数组，写入时用getAndSet替换旧结果，
+ * 按新旧差值调整各项计数，全程无锁。
+ *
+ * 超时不是常量：成功调用的耗时记入LatencyTracker，超时取 p99 × timeoutMultiplier，
+ * 并限制在[minTimeout, maxTimeout]之间；样本不足时使用maxTimeout。超时计为失败。
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final int RECORDED = 1;
+    private static final int FAILED = 2;
+    private static final int SLOW = 4;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private static final int TIMEOUT_REFRESH_INTERVAL = 16;
+
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final long minTimeoutNanos;
+    private final long maxTimeoutNanos;
+    private final double timeoutMultiplier;
+
+    private final LatencyTracker latencyTracker = new LatencyTracker(512);
+    private final AtomicReference<StateHolder> state =
+            new AtomicReference<>(new StateHolder(State.CLOSED, 0));
+    private volatile Window window;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private volatile long timeoutNanos;
+
+    private CircuitBreaker(Builder builder) {
+        this.name = builder.name;
+        this.windowSize = builder.windowSize;
+        this.minimumCalls = builder.minimumCalls;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallNanos = builder.slowCallNanos;
+        this.openNanos = builder.openNanos;
+        this.minTimeoutNanos = builder.minTimeoutNanos;
+        this.maxTimeoutNanos = builder.maxTimeoutNanos;
+        this.timeoutMultiplier = builder.timeoutMultiplier;
+        this.window = new Window(windowSize);
+        this.timeoutNanos = maxTimeoutNanos;
+    }
+
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    /**
+     * 通过熔断器执行异步调用
+     * 熔断时不会调用call，直接返回以CallNotPermittedException失败的Future
+     */
+    public <T> CompletableFuture<T> execute(Supplier<? extends CompletableFuture<T>> call) {
+        StateHolder permitted = acquirePermission();
+        if (permitted == null) {
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(new CallNotPermittedException(name, getState()));
+        }
+
+        long timeout = timeoutNanos;
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get().copy().orTimeout(timeout, TimeUnit.NANOSECONDS);
+        } catch (Throwable e) {
+            onResult(permitted, System.nanoTime() - start, e);
+            return CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((value, error) -> onResult(permitted, System.nanoTime() - start, error));
+    }
+
+    /**
+     * 同步任务的便捷版本：放行时才把supplier提交到executor
+     */
+    public <T> CompletableFuture<T> executeAsync(Supplier<T> supplier, Executor executor) {
+        return execute(() -> CompletableFuture.supplyAsync(supplier, executor));
+    }
+
+    public State getState() {
+        return state.get().state;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 当前窗口内的失败率
+     */
+    public double getFailureRate() {
+        return window.failureRate();
+    }
+
+    /**
+     * 当前窗口内的慢调用率
+     */
+    public double getSlowCallRate() {
+        return window.slowRate();
+    }
+
+    /**
+     * 当前生效的超时（毫秒）
+     */
+    public double getCurrentTimeoutMillis() {
+        return timeoutNanos / 1_000_000.0;
+    }
+
+    /**
+     * 熔断期间被直接拒绝的调用数
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    /**
+     * 返回本次调用所在的状态；不允许调用时返回null
+     */
+    private StateHolder acquirePermission() {
+        while (true) {
+            StateHolder current = state.get();
+            switch (current.state) {
+                case CLOSED:
+                    return current;
+                case OPEN:
+                    if (System.nanoTime() - current.since < openNanos) {
+                        return null;
+                    }
+                    // 只有CAS成功的线程获得探测资格
+                    StateHolder halfOpen = new StateHolder(State.HALF_OPEN, System.nanoTime());
+                    if (state.compareAndSet(current, halfOpen)) {
+                        return halfOpen;
+                    }
+                    break;
+                default:
+                    // HALF_OPEN：探测调用进行中，其他调用继续拒绝
+                    return null;
+            }
+        }
+    }
+
+    private void onResult(StateHolder permitted, long nanos, Throwable error) {
+        boolean failed = error != null;
+        if (isTimeout(error)) {
+            timeouts.incrementAndGet();
+        }
+        if (!failed) {
+            recordLatency(nanos);
+        }
+
+        if (permitted.state == State.HALF_OPEN) {
+            if (failed) {
+                state.compareAndSet(permitted, new StateHolder(State.OPEN, System.nanoTime()));
+            } else {
+                // 先换新窗口再关闭，避免刚关闭就被旧窗口里的失败重新打开
+                window = new Window(windowSize);
+                state.compareAndSet(permitted, new StateHolder(State.CLOSED, System.nanoTime()));
+            }
+            return;
+        }
+
+        Window current = window;
+        current.record(failed, nanos >= slowCallNanos);
+        if (current.calls() >= minimumCalls
+                && (current.failureRate() >= failureRateThreshold || current.slowRate() >= slowCallRateThreshold)) {
+            state.compareAndSet(permitted, new StateHolder(State.OPEN, System.nanoTime()));
+        }
+    }
+
+    /**
+     * 记录成功调用的耗时，每积累一批样本重新计算一次超时
+     */
+    private void recordLatency(long nanos) {
+        latencyTracker.record(nanos);
+        long count = latencyTracker.getCount();
+        if (count >= MIN_LATENCY_SAMPLES && count % TIMEOUT_REFRESH_INTERVAL == 0) {
+            long adaptive = (long) (latencyTracker.percentile(0.99) * timeoutMultiplier);
+            timeoutNanos = Math.max(minTimeoutNanos, Math.min(maxTimeoutNanos, adaptive));
+        }
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        return error instanceof TimeoutException
+                || (error != null && error.getCause() instanceof TimeoutException);
+    }
+
+    /**
+     * 状态与进入该状态的时间，整体替换，保证CAS时两者一致
+     */
+    private static final class StateHolder {
+        final State state;
+        final long since;
+
+        StateHolder(State state, long since) {
+            this.state = state;
+            this.since = since;
+        }
+    }
+
+    /**
+     * 最近N次调用结果的环形窗口
+     */
+    private static final class Window {
+        private final AtomicIntegerArray outcomes;
+        private final AtomicLong cursor = new AtomicLong();
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger slowCalls = new AtomicInteger();
+
+        Window(int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        void record(boolean failed, boolean slow) {
+            int outcome = RECORDED | (failed ? FAILED : 0) | (slow ? SLOW : 0);
+            int index = (int) (cursor.getAndIncrement() % outcomes.length());
+            int old = outcomes.getAndSet(index, outcome);
+            calls.addAndGet(bit(outcome, RECORDED) - bit(old, RECORDED));
+            failures.addAndGet(bit(outcome, FAILED) - bit(old, FAILED));
+            slowCalls.addAndGet(bit(outcome, SLOW) - bit(old, SLOW));
+        }
+
+        int calls() {
+            return calls.get();
+        }
+
+        double failureRate() {
+            int total = calls.get();
+            return total == 0 ? 0 : (double) failures.get() / total;
+        }
+
+        double slowRate() {
+            int total = calls.get();
+            return total == 0 ? 0 : (double) slowCalls.get() / total;
+        }
+
+        private static int bit(int outcome, int flag) {
+            return (outcome & flag) != 0 ? 1 : 0;
+        }
+    }
+
+    /**
+     * 熔断器拒绝调用
+     */
+    public static class CallNotPermittedException extends RuntimeException {
+        CallNotPermittedException(String name, State state) {
+            super("熔断器 " + name + " 处于 " + state + " 状态，调用被拒绝");
+        }
+    }
+
+    public static final class Builder {
+        private final String name;
+        private int windowSize = 50;
+        private int minimumCalls = 20;
+        private double failureRateThreshold = 0.5;
+        private double slowCallRateThreshold = 0.8;
+        private long slowCallNanos = TimeUnit.SECONDS.toNanos(1);
+        private long openNanos = TimeUnit.SECONDS.toNanos(5);
+        private long minTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        private long maxTimeoutNanos = TimeUnit.SECONDS.toNanos(3);
+        private double timeoutMultiplier = 2.0;
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        /**
+         * 滑动窗口大小与开始计算比率所需的最少调用数
+         */
+        public Builder slidingWindow(int windowSize, int minimumCalls) {
+            if (windowSize <= 0 || minimumCalls <= 0 || minimumCalls > windowSize) {
+                throw new IllegalArgumentException("需要满足 0 < minimumCalls <= windowSize");
+            }
+            this.windowSize = windowSize;
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        public Builder failureRateThreshold(double threshold) {
+            this.failureRateThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * 慢调用率阈值，以及判定为慢调用的耗时
+         */
+        public Builder slowCallThreshold(double rateThreshold, long duration, TimeUnit unit) {
+            this.slowCallRateThreshold = rateThreshold;
+            this.slowCallNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * 熔断后多久允许半开探测
+         */
+        public Builder openDuration(long duration, TimeUnit unit) {
+            this.openNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * 自适应超时 = p99 × multiplier，限制在[min, max]之间
+         */
+        public Builder adaptiveTimeout(double multiplier, long min, long max, TimeUnit unit) {
+            if (multiplier <= 0 || min <= 0 || min > max) {
+                throw new IllegalArgumentException("需要满足 multiplier > 0 且 0 < min <= max");
+            }
+            this.timeoutMultiplier = multiplier;
+            this.minTimeoutNanos = unit.toNanos(min);
+            this.maxTimeoutNanos = unit.toNanos(max);
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
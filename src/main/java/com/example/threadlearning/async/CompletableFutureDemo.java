@@ -1,17 +1,37 @@
 package com.example.threadlearning.async;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * CompletableFuture异步编程演示
@@ -21,9 +41,19 @@ import java.util.stream.Collectors;
 @Component
 public class CompletableFutureDemo {
 
+    /**
+     * HTTP扇出演示允许的最大并发数范围：阻塞方式每个并发调用一个线程
+     */
+    public static final int MIN_HTTP_FAN_OUT = 10;
+    public static final int MAX_HTTP_FAN_OUT = 10_000;
+
     private final Random random = new Random();
     private final ExecutorService customExecutor = Executors.newFixedThreadPool(4);
 
+    @Autowired
+    @Qualifier("cacheLoaderThreadPool")
+    private Executor cacheLoaderExecutor;
+
     /**
      * 基础CompletableFuture使用演示
      */
@@ -89,6 +119,152 @@ public class CompletableFutureDemo {
         log.info("链式操作最终结果: {}", result);
     }
 
+    /**
+     * 阶段级延迟追踪演示
+     * 1. 一条包含thenApplyAsync、thenCompose、thenCombine的链路，中间在customExecutor和只有2个线程的IO线程池之间切换
+     * 2. 并发发起40个请求，按25%采样，统计每个阶段的平均排队时间和运行时间，找出延迟花在哪里
+     * 3. 导出Chrome Trace JSON，用chrome://tracing或Perfetto查看每个请求的时间线
+     * 4. 对比未采样和全量采样时短链路的开销
+     */
+    public void demonstrateStageTracing() {
+        log.info("\n=== CompletableFuture阶段级延迟追踪演示 ===");
+
+        ExecutorService ioExecutor = Executors.newFixedThreadPool(2);
+        StageTracer tracer = new StageTracer(0.25, 100);
+        try {
+            List<CompletableFuture<String>> requests = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String userId = "user" + i;
+                StageTracer.Trace trace = tracer.start("查询用户 " + userId);
+                Executor cpu = trace.executor(customExecutor);
+                Executor io = trace.executor(ioExecutor);
+
+                CompletableFuture<Integer> points = CompletableFuture.supplyAsync(trace.supplier("查询积分", () -> {
+                    simulateDelay(30);
+                    return userId.length() * 100;
+                }), cpu);
+
+                CompletableFuture<String> request = CompletableFuture
+                        .supplyAsync(trace.supplier("解析请求", () -> {
+                            simulateDelay(5);
+                            return userId;
+                        }), cpu)
+                        .thenApplyAsync(trace.function("查询用户信息", id -> {
+                            simulateDelay(20);
+                            return "User{id=" + id + "}";
+                        }), io)
+                        .thenCompose(trace.compose("查询订单", user -> CompletableFuture.supplyAsync(
+                                trace.supplier("订单服务", () -> {
+                                    simulateDelay(15);
+                                    return user + " 订单数=3";
+                                }), io)))
+                        .thenCombine(points, trace.biFunction("合并积分", (user, p) -> user + " 积分=" + p))
+                        .thenApply(trace.function("格式化", s -> "结果: " + s))
+                        .whenComplete((value, error) -> trace.finish());
+                requests.add(request);
+            }
+            CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).join();
+
+            log.info("40个请求中被采样追踪的: {} 个", tracer.completedCount());
+            tracer.summarize().forEach((stage, avg) ->
+                    log.info("  阶段 {}: 平均排队 {}ms, 平均运行 {}ms",
+                            stage, String.format("%.1f", avg[0]), String.format("%.1f", avg[1])));
+            log.info("各异步阶段的排队时间远大于运行时间：延迟主要花在线程池切换后的排队上，而不是计算本身；同步阶段没有排队");
+
+            Path file = Paths.get(System.getProperty("java.io.tmpdir"), "thread-learning-stage-trace.json");
+            tracer.writeChromeTrace(file);
+            log.info("Chrome Trace已写入: {}（在chrome://tracing或https://ui.perfetto.dev中打开）", file.toAbsolutePath());
+        } catch (IOException e) {
+            log.error("写入Chrome Trace失败", e);
+        } finally {
+            ioExecutor.shutdown();
+        }
+
+        // 开销对比：同一条同步短链路，未采样与全量采样
+        int iterations = 200_000;
+        for (double rate : new double[]{0.0, 1.0}) {
+            StageTracer overheadTracer = new StageTracer(rate, 16);
+            long start = System.nanoTime();
+            long checksum = 0;
+            for (int i = 0; i < iterations; i++) {
+                StageTracer.Trace trace = overheadTracer.start("overhead");
+                checksum += CompletableFuture.completedFuture(i)
+                        .thenApply(trace.function("加一", v -> v + 1))
+                        .thenApply(trace.function("乘二", v -> v * 2))
+                        .whenComplete((v, e) -> trace.finish())
+                        .join();
+            }
+            long nanos = System.nanoTime() - start;
+            log.info("采样率 {}: 每条链路 {}ns (checksum={})",
+                    rate, nanos / iterations, checksum);
+        }
+    }
+
+    /**
+     * 异步加载缓存演示
+     * 缓存链式操作（获取用户ID -> 用户信息 -> 格式化）的结果，演示请求合并、失败移除、提前刷新和过期
+     */
+    public void demonstrateAsyncLoadingCache() {
+        log.info("\n=== 异步加载缓存（AsyncLoadingCache）演示 ===");
+
+        AtomicInteger loadCount = new AtomicInteger();
+        Function<String, CompletableFuture<String>> loader = userId -> {
+            int version = loadCount.incrementAndGet();
+            if (userId.startsWith("broken") && version % 2 == 1) {
+                return CompletableFuture.failedFuture(new IllegalStateException("用户服务暂时不可用"));
+            }
+            return CompletableFuture
+                    .supplyAsync(() -> {
+                        simulateDelay(100);
+                        return "User{id=" + userId + ", name='张三'}";
+                    }, cacheLoaderExecutor)
+                    .thenApplyAsync(userInfo -> {
+                        simulateDelay(50);
+                        return "格式化后的用户信息: " + userInfo + " (第" + version + "次加载)";
+                    }, cacheLoaderExecutor);
+        };
+        AsyncLoadingCache<String, String> cache = new AsyncLoadingCache<>(
+                loader, cacheLoaderExecutor, 2000, 1000, TimeUnit.MILLISECONDS);
+
+        // 1. 首次读取：未命中，等待加载；加载期间的并发读取共享同一个Future
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<String>> concurrentReads = IntStream.range(0, 50)
+                .mapToObj(i -> cache.get("user123"))
+                .collect(Collectors.toList());
+        CompletableFuture.allOf(concurrentReads.toArray(new CompletableFuture[0])).join();
+        log.info("首次读取: 50个并发读取耗时 {} ms, 加载次数 {}, 结果: {}",
+                System.currentTimeMillis() - start, loadCount.get(), concurrentReads.get(0).join());
+
+        // 2. 再次读取：命中，不需要等待
+        start = System.currentTimeMillis();
+        String cached = cache.get("user123").join();
+        log.info("命中读取: 耗时 {} ms, 结果: {}", System.currentTimeMillis() - start, cached);
+
+        // 3. 超过refreshAfterWrite：立即返回旧值，同时在后台刷新
+        simulateDelay(1100);
+        start = System.currentTimeMillis();
+        String stale = cache.get("user123").join();
+        log.info("提前刷新窗口内读取: 耗时 {} ms, 返回旧值: {}", System.currentTimeMillis() - start, stale);
+        simulateDelay(300);
+        log.info("后台刷新完成后读取: {}", cache.get("user123").join());
+
+        // 4. 加载失败的条目被移除，下一次读取重新加载
+        String failed = cache.get("broken-user")
+                .exceptionally(e -> "加载失败: " + e.getCause().getMessage())
+                .join();
+        log.info("失败的加载: {}, 重新读取: {}", failed, cache.get("broken-user").join());
+
+        // 5. 超过expireAfterWrite未被读取：条目过期，读取需要等待重新加载
+        simulateDelay(2100);
+        start = System.currentTimeMillis();
+        String reloaded = cache.get("user123").join();
+        log.info("过期后读取: 耗时 {} ms, 结果: {}", System.currentTimeMillis() - start, reloaded);
+
+        log.info("缓存统计: 命中 {}, 未命中 {}, 后台刷新 {}, 加载失败 {}, 加载总次数 {}",
+                cache.getHitCount(), cache.getMissCount(), cache.getRefreshCount(),
+                cache.getLoadFailureCount(), loadCount.get());
+    }
+
     /**
      * 组合多个CompletableFuture演示
      */
@@ -143,6 +319,98 @@ public class CompletableFutureDemo {
         log.info("allOf组合结果: {}", allCombinedFuture.join());
     }
 
+    /**
+     * 任务图（DAG）执行演示
+     * 1. 用TaskGraph声明demonstrateCombining()中的服务依赖，不再手写thenCombine
+     * 2. 200个节点的随机依赖图，对比串行耗时、实际耗时与关键路径
+     * 3. 中间节点失败时，下游节点被跳过
+     */
+    public void demonstrateTaskGraph() {
+        log.info("\n=== 任务图（TaskGraph）执行演示 ===");
+
+        // 1. 小图：用户 -> 订单；用户 + 产品 -> 推荐；订单 + 推荐 -> 汇总
+        TaskGraph graph = new TaskGraph();
+        TaskGraph.TaskHandle<String> user = graph.addTask("用户服务", in -> {
+            simulateDelay(300);
+            return "UserInfo{name='李四'}";
+        });
+        TaskGraph.TaskHandle<String> product = graph.addTask("产品服务", in -> {
+            simulateDelay(200);
+            return "ProductInfo{name='智能手机'}";
+        });
+        TaskGraph.TaskHandle<String> order = graph.addTask("订单服务", in -> {
+            simulateDelay(250);
+            return "OrderInfo{user=" + in.get(user) + "}";
+        }, user);
+        TaskGraph.TaskHandle<String> recommend = graph.addTask("推荐服务", in -> {
+            simulateDelay(400);
+            return "Recommend{" + in.get(user) + ", " + in.get(product) + "}";
+        }, user, product);
+        TaskGraph.TaskHandle<String> summary = graph.addTask("汇总", in -> {
+            simulateDelay(50);
+            return "[" + in.get(order) + "] + [" + in.get(recommend) + "]";
+        }, order, recommend);
+
+        TaskGraph.Result result = graph.execute(customExecutor).join();
+        log.info("汇总结果: {}", result.get(summary));
+        logTaskGraphReport(result.getReport());
+        result.getReport().getTasks().forEach(stats -> log.info("  {}", stats));
+
+        // 2. 大图：每个节点依赖之前最多3个节点
+        ExecutorService graphExecutor = Executors.newFixedThreadPool(16);
+        try {
+            TaskGraph large = buildRandomGraph(200);
+            TaskGraph.Result largeResult = large.execute(graphExecutor).join();
+            log.info("200节点随机依赖图:");
+            logTaskGraphReport(largeResult.getReport());
+
+            // 3. 失败传播
+            TaskGraph failing = new TaskGraph();
+            TaskGraph.TaskHandle<Integer> a = failing.addTask("加载配置", in -> 1);
+            TaskGraph.TaskHandle<Integer> b = failing.addTask("校验库存", in -> {
+                throw new IllegalStateException("库存服务不可用");
+            }, a);
+            TaskGraph.TaskHandle<Integer> c = failing.addTask("扣减库存", in -> in.get(b) + 1, b);
+            failing.addTask("发送通知", in -> in.get(c), c);
+            try {
+                failing.execute(graphExecutor).join();
+            } catch (CompletionException e) {
+                TaskGraph.TaskGraphException failure = (TaskGraph.TaskGraphException) e.getCause();
+                log.info("失败传播: {}", failure.getMessage());
+                failure.getReport().getTasks().forEach(stats -> log.info("  {}", stats));
+            }
+        } finally {
+            graphExecutor.shutdown();
+        }
+    }
+
+    private TaskGraph buildRandomGraph(int size) {
+        TaskGraph graph = new TaskGraph();
+        List<TaskGraph.TaskHandle<Integer>> handles = new ArrayList<>(size);
+        Random graphRandom = new Random(42);
+        for (int i = 0; i < size; i++) {
+            int dependencyCount = i == 0 ? 0 : graphRandom.nextInt(Math.min(i, 3) + 1);
+            TaskGraph.TaskHandle<?>[] dependencies = new TaskGraph.TaskHandle<?>[dependencyCount];
+            for (int d = 0; d < dependencyCount; d++) {
+                // 倾向于依赖最近的节点，形成较长的依赖链
+                dependencies[d] = handles.get(i - 1 - graphRandom.nextInt(Math.min(i, 20)));
+            }
+            int cost = 5 + graphRandom.nextInt(20);
+            handles.add(graph.addTask("node-" + i, in -> {
+                simulateDelay(cost);
+                return cost;
+            }, dependencies));
+        }
+        return graph;
+    }
+
+    private void logTaskGraphReport(TaskGraph.Report report) {
+        log.info("总耗时 {} ms, 串行执行需要 {} ms, 并行度 {}",
+                String.format("%.1f", report.getTotalMillis()), String.format("%.1f", report.getSerialMillis()),
+                String.format("%.1f", report.getSerialMillis() / report.getTotalMillis()));
+        log.info("关键路径: {}", report.formatCriticalPath());
+    }
+
     /**
      * 异常处理演示
      */
@@ -243,51 +511,325 @@ public class CompletableFutureDemo {
         }
     }
 
+    /**
+     * 结构化扇出演示
+     * 三个下游服务中订单服务在200ms时失败，其余两个需要2秒：
+     * allOf的写法失败后兄弟任务继续占用线程，FanOutScope则立即中断兄弟任务
+     */
+    public void demonstrateFanOutScope() {
+        log.info("\n=== 结构化扇出（FanOutScope）演示 ===");
+
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(8);
+        try {
+            // 1. 原来的写法：allOf在订单服务失败后才结束，但用户服务和产品服务仍在运行
+            long start = System.currentTimeMillis();
+            CompletableFuture<String> userFuture = CompletableFuture.supplyAsync(() -> slowTask(2000), pool);
+            CompletableFuture<String> orderFuture = CompletableFuture.supplyAsync(() -> failingTask(200), pool);
+            CompletableFuture<String> productFuture = CompletableFuture.supplyAsync(() -> slowTask(2000), pool);
+            try {
+                CompletableFuture.anyOf(orderFuture,
+                        CompletableFuture.allOf(userFuture, orderFuture, productFuture)).join();
+            } catch (CompletionException e) {
+                log.info("allOf写法: {} ms 时发现失败 [{}]，此时仍在运行的兄弟任务线程: {}",
+                        System.currentTimeMillis() - start, e.getCause().getMessage(), settledActiveCount(pool));
+            }
+            simulateDelay(2000);
+
+            // 2. FanOutScope：第一个失败关闭作用域，兄弟任务被中断，close返回时所有子任务都已结束
+            start = System.currentTimeMillis();
+            try (FanOutScope scope = FanOutScope.open(pool, Duration.ofSeconds(5))) {
+                FanOutScope.Subtask<String> user = scope.fork(() -> slowTask(2000));
+                FanOutScope.Subtask<String> order = scope.fork(() -> failingTask(200));
+                FanOutScope.Subtask<String> product = scope.fork(() -> slowTask(2000));
+                scope.join().throwIfFailed();
+                log.info("全部成功: {}, {}, {}", user.get(), order.get(), product.get());
+            } catch (ExecutionException | TimeoutException e) {
+                log.info("FanOutScope: {} ms 时作用域结束 [{}]，此时仍在运行的子任务线程: {}",
+                        System.currentTimeMillis() - start, e.getCause() != null ? e.getCause().getMessage() : e.getMessage(),
+                        settledActiveCount(pool));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            // 3. 截止时间：300ms内没有全部完成，所有子任务被中断
+            start = System.currentTimeMillis();
+            try (FanOutScope scope = FanOutScope.open(pool, Duration.ofMillis(300))) {
+                for (int i = 0; i < 5; i++) {
+                    int delay = 100 + i * 200;
+                    scope.fork(() -> slowTask(delay));
+                }
+                scope.join().throwIfFailed();
+            } catch (ExecutionException | TimeoutException e) {
+                log.info("截止时间: {} ms 时作用域结束 [{}]，此时仍在运行的子任务线程: {}",
+                        System.currentTimeMillis() - start, e.getMessage(), settledActiveCount(pool));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 线程退出任务代码后还要经过线程池的收尾才不再计为活跃，稍等片刻再读取
+     */
+    private int settledActiveCount(ThreadPoolExecutor pool) {
+        simulateDelay(20);
+        return pool.getActiveCount();
+    }
+
+    private String failingTask(int milliseconds) {
+        simulateDelay(milliseconds);
+        throw new IllegalStateException("订单服务返回500");
+    }
+
+    /**
+     * 熔断器演示
+     * 后端经历 健康 -> 变慢(300ms) -> 恢复 三个阶段，对比固定超时直接调用与熔断器调用对线程池的占用
+     */
+    public void demonstrateCircuitBreaker() {
+        log.info("\n=== 熔断器与自适应超时演示 ===");
+
+        AtomicInteger backendLatency = new AtomicInteger(15);
+        AtomicInteger backendCalls = new AtomicInteger();
+        Supplier<String> backend = () -> {
+            backendCalls.incrementAndGet();
+            simulateDelay(backendLatency.get() + random.nextInt(10));
+            return "OK";
+        };
+        CircuitBreaker breaker = CircuitBreaker.builder("库存服务")
+                .slidingWindow(20, 10)
+                .failureRateThreshold(0.5)
+                .slowCallThreshold(0.8, 200, TimeUnit.MILLISECONDS)
+                .openDuration(1, TimeUnit.SECONDS)
+                .adaptiveTimeout(3.0, 20, 2000, TimeUnit.MILLISECONDS)
+                .build();
+
+        // 1. 健康阶段：积累延迟样本，超时从上限收敛到 p99 × 3
+        for (int i = 0; i < 40; i++) {
+            breaker.executeAsync(backend, customExecutor).join();
+        }
+        log.info("健康阶段结束: 状态 {}, 自适应超时 {} ms", breaker.getState(),
+                String.format("%.1f", breaker.getCurrentTimeoutMillis()));
+
+        // 2. 后端变慢：固定1秒超时的直接调用，每次都占用线程300ms
+        backendLatency.set(300);
+        final int degradedCalls = 20;
+        backendCalls.set(0);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < degradedCalls; i++) {
+            CompletableFuture.supplyAsync(backend, customExecutor)
+                    .orTimeout(1, TimeUnit.SECONDS)
+                    .exceptionally(e -> "fallback")
+                    .join();
+        }
+        log.info("后端变慢 - 固定超时直接调用: {} 次调用耗时 {} ms, 提交到线程池 {} 次",
+                degradedCalls, System.currentTimeMillis() - start, backendCalls.get());
+
+        // 熔断器：超时按正常延迟计算，很快超时；失败率达到50%后熔断，后续调用立即降级
+        backendCalls.set(0);
+        start = System.currentTimeMillis();
+        int fallbacks = 0;
+        for (int i = 0; i < degradedCalls; i++) {
+            String result = breaker.executeAsync(backend, customExecutor)
+                    .exceptionally(e -> "fallback")
+                    .join();
+            if ("fallback".equals(result)) {
+                fallbacks++;
+            }
+        }
+        log.info("后端变慢 - 熔断器调用: {} 次调用耗时 {} ms, 提交到线程池 {} 次, 降级 {} 次, 超时 {} 次, 被熔断拒绝 {} 次, 状态 {}",
+                degradedCalls, System.currentTimeMillis() - start, backendCalls.get(), fallbacks,
+                breaker.getTimeoutCount(), breaker.getRejectedCount(), breaker.getState());
+
+        // 3. 后端恢复：等待熔断时间过去，半开探测成功后关闭
+        backendLatency.set(15);
+        simulateDelay(1100);
+        String probe = breaker.executeAsync(backend, customExecutor).join();
+        log.info("后端恢复 - 半开探测结果: {}, 状态 {}, 失败率 {}%", probe, breaker.getState(),
+                String.format("%.1f", breaker.getFailureRate() * 100));
+    }
+
     /**
      * 并行处理演示
+     * 5个下游接口由本地桩服务模拟（延迟1~3秒），用异步HttpClient同时发出请求，等待期间不占用线程
      */
     public void demonstrateParallelProcessing() {
         log.info("\n=== CompletableFuture并行处理演示 ===");
 
-        List<String> urls = Arrays.asList(
-                "http://api1.example.com",
-                "http://api2.example.com", 
-                "http://api3.example.com",
-                "http://api4.example.com",
-                "http://api5.example.com"
-        );
+        try (StubHttpServer server = StubHttpServer.start()) {
+            List<String> apis = Arrays.asList("/api1", "/api2", "/api3", "/api4", "/api5");
+            apis.forEach(api -> server.route(api, StubHttpServer.LatencyDistribution.uniform(1000, 3000), 0.0));
+            List<URI> urls = apis.stream().map(server::uri).collect(Collectors.toList());
+            HttpFanOut fanOut = new HttpFanOut(customExecutor, Duration.ofSeconds(5));
+
+            long startTime = System.currentTimeMillis();
+
+            // 并行发出所有请求，sendAsync立即返回，响应到达后在customExecutor上完成
+            List<CompletableFuture<String>> futures = urls.stream()
+                    .map(url -> {
+                        log.info("开始请求: {} 线程: {}", url, Thread.currentThread().getName());
+                        return fanOut.fetch(url).thenApply(response -> {
+                            log.info("完成请求: {} 状态: {} 线程: {}", url, response.getStatus(), Thread.currentThread().getName());
+                            return response.getBody();
+                        });
+                    })
+                    .collect(Collectors.toList());
+
+            // 等待所有请求完成
+            CompletableFuture<Void> allFutures = CompletableFuture.allOf(
+                    futures.toArray(new CompletableFuture[0])
+            );
+
+            // 收集所有结果
+            CompletableFuture<List<String>> allResults = allFutures.thenApply(v ->
+                    futures.stream()
+                            .map(CompletableFuture::join)
+                            .collect(Collectors.toList())
+            );
+
+            List<String> results = allResults.join();
+            long endTime = System.currentTimeMillis();
+
+            log.info("所有并行请求完成，总耗时: {} ms", endTime - startTime);
+            results.forEach(result -> log.info("结果: {}", result));
+        } catch (IOException e) {
+            log.error("启动本地桩服务失败", e);
+        }
+    }
+
+    /**
+     * HTTP扇出的阻塞与异步对比
+     * 桩服务延迟为对数正态分布（中位数50ms，p99 300ms），错误率2%；
+     * 并发调用数从10开始每次乘10直到maxConcurrency，分别用"每个调用一个线程+send()"和sendAsync()扇出，
+     * 对比总耗时、延迟分位数、错误率、新增线程数和内存。
+     * 并发数很大时注意文件描述符上限：每个并发调用在客户端和服务端各占一个socket
+     *
+     * @param maxConcurrency MIN_HTTP_FAN_OUT ~ MAX_HTTP_FAN_OUT
+     * @throws IllegalArgumentException maxConcurrency超出范围
+     */
+    public void demonstrateHttpFanOut(int maxConcurrency) {
+        if (maxConcurrency < MIN_HTTP_FAN_OUT || maxConcurrency > MAX_HTTP_FAN_OUT) {
+            throw new IllegalArgumentException("maxConcurrency必须在" + MIN_HTTP_FAN_OUT + "~" + MAX_HTTP_FAN_OUT
+                    + "之间: " + maxConcurrency);
+        }
+        log.info("\n=== HTTP扇出：阻塞 vs 异步 ===");
+
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(2);
+        try (StubHttpServer server = StubHttpServer.start()) {
+            server.route("/backend", StubHttpServer.LatencyDistribution.logNormal(50, 300), 0.02);
+            URI uri = server.uri("/backend");
 
-        long startTime = System.currentTimeMillis();
-
-        // 并行处理所有URL
-        List<CompletableFuture<String>> futures = urls.stream()
-                .map(url -> CompletableFuture.supplyAsync(() -> {
-                    log.info("开始请求: {} 线程: {}", url, Thread.currentThread().getName());
-                    int responseTime = 1000 + random.nextInt(2000);
-                    simulateDelay(responseTime);
-                    String response = "Response from " + url + " (took " + responseTime + "ms)";
-                    log.info("完成请求: {}", url);
-                    return response;
-                }, customExecutor))
+            for (int concurrency = 10; concurrency <= maxConcurrency; concurrency *= 10) {
+                List<URI> uris = Collections.nCopies(concurrency, uri);
+                for (HttpFanOut.Mode mode : HttpFanOut.Mode.values()) {
+                    // 每次使用新的HttpClient，避免复用上一轮建立的连接
+                    HttpFanOut fanOut = new HttpFanOut(clientExecutor, Duration.ofSeconds(30));
+                    log.info("  {}", fanOut.measure(mode, uris));
+                }
+            }
+            log.info("桩服务共收到 {} 个请求，返回错误 {} 个", server.getRequestCount(), server.getErrorCount());
+            log.info("阻塞方式的线程数随并发数线性增长，异步方式只用到HttpClient的选择器线程和2个回调线程");
+            log.info("注意：异步方式的单次延迟从sendAsync开始计时，包含排队建立连接的时间；阻塞方式从线程开始运行才计时，创建线程的开销体现在总耗时里");
+        } catch (IOException e) {
+            log.error("启动本地桩服务失败", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            clientExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 限流异步map演示
+     * 对比"每个输入一个Future + allOf"与BoundedAsyncMapper（无序回调 / 有序Publisher）的同时在途数量和耗时
+     * 模拟的请求用delayedExecutor实现延迟，等待期间不占用线程，相当于异步IO
+     */
+    public void demonstrateBoundedAsyncMap() {
+        log.info("\n=== 限流异步map（BoundedAsyncMapper）演示 ===");
+
+        final int inputCount = 20_000;
+        final int maxConcurrency = 64;
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        Function<Integer, CompletableFuture<Integer>> fetch = id -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Executor delayed = CompletableFuture.delayedExecutor(
+                    1 + ThreadLocalRandom.current().nextInt(4), TimeUnit.MILLISECONDS, customExecutor);
+            return CompletableFuture.supplyAsync(() -> {
+                inFlight.decrementAndGet();
+                return id;
+            }, delayed);
+        };
+
+        // 1. 原来的写法：一次性创建全部Future，等allOf结束才拿到结果
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<Integer>> futures = IntStream.range(0, inputCount).boxed()
+                .map(fetch)
                 .collect(Collectors.toList());
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        long sum = futures.stream().mapToLong(CompletableFuture::join).sum();
+        log.info("不限流: 耗时 {} ms, 同时在途峰值 {}, 结果总和 {}",
+                System.currentTimeMillis() - start, peak.get(), sum);
 
-        // 等待所有请求完成
-        CompletableFuture<Void> allFutures = CompletableFuture.allOf(
-                futures.toArray(new CompletableFuture[0])
-        );
+        // 2. 无序回调：结果一完成就交给回调
+        peak.set(0);
+        LongAdder unorderedSum = new LongAdder();
+        start = System.currentTimeMillis();
+        BoundedAsyncMapper.unordered(fetch, maxConcurrency)
+                .forEach(IntStream.range(0, inputCount).boxed().iterator(), unorderedSum::add)
+                .join();
+        log.info("限流无序: 耗时 {} ms, 同时在途峰值 {}, 结果总和 {}",
+                System.currentTimeMillis() - start, peak.get(), unorderedSum.sum());
 
-        // 收集所有结果
-        CompletableFuture<List<String>> allResults = allFutures.thenApply(v ->
-                futures.stream()
-                        .map(CompletableFuture::join)
-                        .collect(Collectors.toList())
-        );
+        // 3. 有序Publisher：下游每次只要256个，按输入顺序交付
+        peak.set(0);
+        CompletableFuture<Long> orderedDone = new CompletableFuture<>();
+        start = System.currentTimeMillis();
+        BoundedAsyncMapper.<Integer, Integer>ordered(fetch, maxConcurrency)
+                .map(IntStream.range(0, inputCount).boxed().iterator())
+                .subscribe(new Flow.Subscriber<Integer>() {
+                    private static final int BATCH = 256;
+                    private Flow.Subscription subscription;
+                    private int expected;
+                    private long total;
 
-        List<String> results = allResults.join();
-        long endTime = System.currentTimeMillis();
+                    @Override
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        this.subscription = subscription;
+                        subscription.request(BATCH);
+                    }
+
+                    @Override
+                    public void onNext(Integer item) {
+                        if (item != expected) {
+                            subscription.cancel();
+                            orderedDone.completeExceptionally(
+                                    new IllegalStateException("顺序错误: 期望 " + expected + " 实际 " + item));
+                            return;
+                        }
+                        expected++;
+                        total += item;
+                        if (expected % BATCH == 0) {
+                            subscription.request(BATCH);
+                        }
+                    }
 
-        log.info("所有并行请求完成，总耗时: {} ms", endTime - startTime);
-        results.forEach(result -> log.info("结果: {}", result));
+                    @Override
+                    public void onError(Throwable throwable) {
+                        orderedDone.completeExceptionally(throwable);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        orderedDone.complete(total);
+                    }
+                });
+        long orderedSum = orderedDone.join();
+        log.info("限流有序: 耗时 {} ms, 同时在途峰值 {}, 结果总和 {}（顺序校验通过）",
+                System.currentTimeMillis() - start, peak.get(), orderedSum);
+        log.info("结论: 限流后在途Future数量固定为{}，内存与输入规模无关，结果边完成边消费", maxConcurrency);
     }
 
     /**
@@ -330,6 +872,195 @@ public class CompletableFutureDemo {
         task3.cancel(true);
     }
 
+    /**
+     * 可中断取消演示
+     * 4线程的线程池里先放满4个耗时3秒的任务再取消（或超时），然后提交一个快速任务，
+     * 比较快速任务需要等多久才能拿到线程
+     */
+    public void demonstrateCancellableTasks() {
+        log.info("\n=== 可中断取消（CancellableFuture）演示 ===");
+
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(4);
+        try {
+            // 1. CompletableFuture.cancel(true)：只标记取消，线程仍在sleep
+            List<CompletableFuture<String>> plain = IntStream.range(0, 4)
+                    .mapToObj(i -> CompletableFuture.supplyAsync(() -> slowTask(3000), pool))
+                    .collect(Collectors.toList());
+            simulateDelay(100);
+            plain.forEach(future -> future.cancel(true));
+            simulateDelay(50);
+            log.info("CompletableFuture.cancel(true)后: 活跃线程 {} / {}", pool.getActiveCount(), pool.getMaximumPoolSize());
+            log.info("快速任务等待线程耗时: {} ms", measureQuickTask(pool));
+
+            // 2. CancellableFuture.cancel(true)：中断正在运行的线程，线程立即归还
+            List<CancellableFuture<String>> cancellable = IntStream.range(0, 4)
+                    .mapToObj(i -> CancellableFuture.supplyAsync(() -> slowTask(3000), pool))
+                    .collect(Collectors.toList());
+            simulateDelay(100);
+            cancellable.forEach(future -> future.cancel(true));
+            simulateDelay(50);
+            log.info("CancellableFuture.cancel(true)后: 活跃线程 {} / {}", pool.getActiveCount(), pool.getMaximumPoolSize());
+            log.info("快速任务等待线程耗时: {} ms", measureQuickTask(pool));
+
+            // 3. 在派生阶段上设置orTimeout，超时同样中断上游任务
+            CompletableFuture<String> timed = CancellableFuture.supplyAsync(() -> slowTask(3000), pool)
+                    .thenApply(result -> "处理后的" + result)
+                    .orTimeout(200, TimeUnit.MILLISECONDS);
+            String outcome = timed.exceptionally(e -> "超时: " + e.getClass().getSimpleName()).join();
+            simulateDelay(50);
+            log.info("派生阶段orTimeout结果: {}, 活跃线程 {}", outcome, pool.getActiveCount());
+
+            // 4. anyOf竞速：输家被真正中断
+            List<CancellableFuture<String>> racers = IntStream.range(0, 3)
+                    .mapToObj(i -> CancellableFuture.supplyAsync(() -> slowTask(200 + i * 1000), pool))
+                    .collect(Collectors.toList());
+            Object winner = CompletableFuture.anyOf(racers.toArray(new CompletableFuture[0])).join();
+            racers.forEach(racer -> racer.cancel(true));
+            simulateDelay(50);
+            log.info("anyOf竞速胜者: {}, 取消输家后活跃线程 {}", winner, pool.getActiveCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private String slowTask(int milliseconds) {
+        simulateDelay(milliseconds);
+        return "耗时" + milliseconds + "ms的任务结果";
+    }
+
+    private long measureQuickTask(Executor pool) {
+        long start = System.currentTimeMillis();
+        CompletableFuture.runAsync(() -> { }, pool).join();
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * 单飞请求合并演示 - 惊群场景
+     * 模拟缓存失效瞬间200个请求同时查询5个热点商品，每次后端查询耗时100ms
+     */
+    public void demonstrateSingleFlight() {
+        log.info("\n=== 单飞（SingleFlight）请求合并演示 ===");
+
+        final int hotKeys = 5;
+        final int callersPerKey = 40;
+        ExecutorService herdExecutor = Executors.newFixedThreadPool(32);
+        AtomicInteger backendCalls = new AtomicInteger();
+        Function<String, String> loadProduct = key -> {
+            backendCalls.incrementAndGet();
+            simulateDelay(100);
+            return "ProductInfo{id='" + key + "'}";
+        };
+
+        try {
+            // 1. 原来的写法：每个调用者各自supplyAsync
+            long start = System.currentTimeMillis();
+            List<CompletableFuture<String>> naive = new ArrayList<>();
+            for (int i = 0; i < callersPerKey; i++) {
+                for (int k = 0; k < hotKeys; k++) {
+                    String key = "product-" + k;
+                    naive.add(CompletableFuture.supplyAsync(() -> loadProduct.apply(key), herdExecutor));
+                }
+            }
+            CompletableFuture.allOf(naive.toArray(new CompletableFuture[0])).join();
+            log.info("直接调用: {} 个请求, 后端查询 {} 次, 总耗时 {} ms",
+                    naive.size(), backendCalls.get(), System.currentTimeMillis() - start);
+
+            // 2. SingleFlight：同一商品的并发查询只执行一次
+            backendCalls.set(0);
+            SingleFlight<String, String> singleFlight = new SingleFlight<>();
+            start = System.currentTimeMillis();
+            List<CompletableFuture<String>> coalesced = new ArrayList<>();
+            for (int i = 0; i < callersPerKey; i++) {
+                for (int k = 0; k < hotKeys; k++) {
+                    String key = "product-" + k;
+                    coalesced.add(singleFlight.execute(key, () -> loadProduct.apply(key), herdExecutor));
+                }
+            }
+            CompletableFuture.allOf(coalesced.toArray(new CompletableFuture[0])).join();
+            log.info("单飞合并: {} 个请求, 后端查询 {} 次, 被合并 {} 次, 总耗时 {} ms",
+                    coalesced.size(), backendCalls.get(), singleFlight.getSharedCount(),
+                    System.currentTimeMillis() - start);
+
+            // 3. 调用结束后表项已清理，失败不会被保留
+            CompletableFuture<String> failed = singleFlight.execute("broken", () -> {
+                throw new IllegalStateException("后端不可用");
+            }, herdExecutor);
+            String recovered = failed.exceptionally(e -> "失败: " + e.getCause().getMessage()).join();
+            String retried = singleFlight.execute("broken", () -> "恢复后的结果", herdExecutor).join();
+            log.info("失败调用结果: {}, 之后的重试结果: {}, 进行中的key数量: {}",
+                    recovered, retried, singleFlight.inFlightCount());
+        } finally {
+            herdExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 对冲请求演示 - 降低尾延迟
+     * 模拟一个95%请求10~20ms、5%请求落到慢节点150~250ms的后端，
+     * 分别直接调用和通过HedgedRequests调用，对比p50/p95/p99
+     */
+    public void demonstrateHedgedRequests() {
+        log.info("\n=== 对冲请求（Hedged Requests）演示 ===");
+
+        final int requestCount = 300;
+        HedgedRequests hedged = new HedgedRequests(customExecutor, 0.95, 0.05, 5, TimeUnit.MILLISECONDS);
+
+        // 预热：让滚动窗口积累足够样本，得到稳定的对冲延迟
+        for (int i = 0; i < 50; i++) {
+            hedged.submit(this::simulateBackendCall).join();
+        }
+        log.info("预热完成，当前对冲延迟(p95): {} ms", String.format("%.1f", hedged.getHedgeDelayMillis()));
+
+        long[] direct = new long[requestCount];
+        for (int i = 0; i < requestCount; i++) {
+            long start = System.nanoTime();
+            CompletableFuture.supplyAsync(this::simulateBackendCall, customExecutor).join();
+            direct[i] = System.nanoTime() - start;
+        }
+
+        long hedgesBefore = hedged.getHedgeCount();
+        long winsBefore = hedged.getHedgeWinCount();
+        long[] withHedging = new long[requestCount];
+        for (int i = 0; i < requestCount; i++) {
+            long start = System.nanoTime();
+            hedged.submit(this::simulateBackendCall).join();
+            withHedging[i] = System.nanoTime() - start;
+        }
+        long hedgeCount = hedged.getHedgeCount() - hedgesBefore;
+
+        log.info("直接调用: {}", formatLatency(direct));
+        log.info("对冲调用: {}", formatLatency(withHedging));
+        log.info("对冲请求数: {} ({}%)，其中备份先返回: {} 次，被令牌桶限流: {} 次，最终对冲延迟: {} ms",
+                hedgeCount, String.format("%.1f", hedgeCount * 100.0 / requestCount),
+                hedged.getHedgeWinCount() - winsBefore, hedged.getThrottledCount(),
+                String.format("%.1f", hedged.getHedgeDelayMillis()));
+        log.info("结论: 只多付出约5%的请求量，p99就从慢节点延迟回落到接近 对冲延迟 + 正常延迟");
+    }
+
+    /**
+     * 模拟后端调用：5%的请求落到慢节点
+     */
+    private String simulateBackendCall() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean slow = random.nextInt(100) < 5;
+        int delay = slow ? 150 + random.nextInt(100) : 10 + random.nextInt(10);
+        simulateDelay(delay);
+        return slow ? "slow" : "fast";
+    }
+
+    private String formatLatency(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50=%.1fms, p95=%.1fms, p99=%.1fms, max=%.1fms",
+                percentileMillis(sorted, 0.50), percentileMillis(sorted, 0.95),
+                percentileMillis(sorted, 0.99), sorted[sorted.length - 1] / 1_000_000.0);
+    }
+
+    private double percentileMillis(long[] sorted, double quantile) {
+        int rank = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, rank)] / 1_000_000.0;
+    }
+
     /**
      * 模拟延迟
      */
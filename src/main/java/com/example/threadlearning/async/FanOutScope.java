@@ -0,0 +1,344 @@
+package com.example.threadlearning.async;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 结构化并发的扇出作用域（失败即关闭）
+ *
+ * 用法与Java 21的StructuredTaskScope.ShutdownOnFailure一致：
+ * <pre>
+ * try (FanOutScope scope = FanOutScope.open(executor, Duration.ofSeconds(1))) {
+ *     FanOutScope.Subtask&lt;User&gt; user = scope.fork(() -&gt; loadUser());
+ *     FanOutScope.Subtask&lt;Order&gt; order = scope.fork(() -&gt; loadOrder());
+ *     scope.join().throwIfFailed();
+ *     return combine(user.get(), order.get());
+ * }
+ * </pre>
+ * 1. 第一个子任务失败或到达截止时间时，作用域关闭：尚未开始的子任务不再执行，运行中的子任务被中断
+ * 2. close()在所有子任务真正结束（线程退出任务代码）之前不会返回，子任务不会比作用域活得更久
+ * 3. 子任务运行在传入的线程池上，中断后线程立即归还
+ *
+ * 项目以Java 17为编译目标，而StructuredTaskScope在Java 21中仍是预览API（需要--enable-preview），
+ * 所以这里基于普通线程池实现同样的语义；迁移到正式版API时调用方代码形状不需要变化。
+ */
+public class FanOutScope implements AutoCloseable {
+
+    private final Executor executor;
+    private final long deadlineNanos;
+    private final Thread owner = Thread.currentThread();
+    private final Queue<Subtask<?>> subtasks = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // 以下字段由lock保护
+    private int unfinished;
+    private boolean shutdown;
+    private boolean timedOut;
+    private boolean closed;
+
+    private FanOutScope(Executor executor, long deadlineNanos) {
+        this.executor = executor;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 打开一个作用域，timeout为整个作用域的截止时间
+     */
+    public static FanOutScope open(Executor executor, Duration timeout) {
+        return new FanOutScope(executor, System.nanoTime() + timeout.toNanos());
+    }
+
+    /**
+     * 打开一个没有截止时间的作用域
+     */
+    public static FanOutScope open(Executor executor) {
+        return new FanOutScope(executor, Long.MAX_VALUE);
+    }
+
+    /**
+     * 派生一个子任务；作用域已经关闭时子任务不会执行，状态为CANCELLED
+     */
+    public <T> Subtask<T> fork(Callable<? extends T> task) {
+        ensureOwner();
+        Subtask<T> subtask = new Subtask<>(this, task);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("作用域已关闭");
+            }
+            if (shutdown) {
+                subtask.state = Subtask.State.CANCELLED;
+                return subtask;
+            }
+            unfinished++;
+        } finally {
+            lock.unlock();
+        }
+        subtasks.add(subtask);
+        try {
+            executor.execute(subtask);
+        } catch (RuntimeException e) {
+            // 线程池拒绝：与并发的shutdown竞争，谁认领谁负责计入完成
+            if (subtask.claim()) {
+                subtask.fail(e);
+                childFinished();
+                onFailure(e);
+            }
+        }
+        return subtask;
+    }
+
+    /**
+     * 等待所有子任务完成，或者第一个失败，或者到达截止时间
+     * 到达截止时间时关闭作用域，throwIfFailed会抛出TimeoutException
+     */
+    public FanOutScope join() throws InterruptedException {
+        ensureOwner();
+        lock.lock();
+        try {
+            while (unfinished > 0 && !shutdown) {
+                if (deadlineNanos == Long.MAX_VALUE) {
+                    changed.await();
+                    continue;
+                }
+                long remaining = deadlineNanos - System.nanoTime();
+                if (remaining <= 0) {
+                    timedOut = true;
+                    break;
+                }
+                changed.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (timedOut) {
+            shutdown();
+        }
+        return this;
+    }
+
+    /**
+     * join之后调用：有子任务失败时抛出ExecutionException（原因为第一个失败），超时抛出TimeoutException
+     */
+    public void throwIfFailed() throws ExecutionException, TimeoutException {
+        Throwable failure = firstFailure.get();
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        lock.lock();
+        try {
+            if (timedOut) {
+                throw new TimeoutException("作用域到达截止时间");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭作用域：不再执行新的子任务，中断运行中的子任务
+     * 可以从任何线程调用，重复调用无副作用
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Subtask<?> subtask : subtasks) {
+            subtask.cancel();
+        }
+    }
+
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭作用域并等待所有子任务真正结束
+     * 等待过程不响应中断（子任务已被中断，很快就会退出），返回前恢复调用线程的中断状态
+     */
+    @Override
+    public void close() {
+        ensureOwner();
+        shutdown();
+        boolean interrupted = false;
+        lock.lock();
+        try {
+            closed = true;
+            while (unfinished > 0) {
+                try {
+                    changed.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void onFailure(Throwable error) {
+        if (firstFailure.compareAndSet(null, error)) {
+            shutdown();
+        }
+    }
+
+    private void childFinished() {
+        lock.lock();
+        try {
+            unfinished--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ensureOwner() {
+        if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("只有打开作用域的线程可以调用该方法");
+        }
+    }
+
+    /**
+     * 剩余时间，便于子任务设置自己的IO超时
+     */
+    public long remaining(TimeUnit unit) {
+        if (deadlineNanos == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return unit.convert(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 作用域中的子任务
+     */
+    public static final class Subtask<T> implements Runnable {
+
+        public enum State {
+            RUNNING, SUCCESS, FAILED, CANCELLED
+        }
+
+        private final FanOutScope scope;
+        private final Callable<? extends T> task;
+        private volatile State state = State.RUNNING;
+        private volatile T result;
+        private volatile Throwable exception;
+        // 以下字段由this锁保护
+        private boolean started;
+        private Thread runner;
+
+        Subtask(FanOutScope scope, Callable<? extends T> task) {
+            this.scope = scope;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (!claim()) {
+                    // 开始之前已被取消，取消方已经计入完成
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            try {
+                if (scope.isShutdown()) {
+                    // fork与shutdown并发时可能错过取消，开始前再检查一次
+                    state = State.CANCELLED;
+                    return;
+                }
+                result = task.call();
+                state = State.SUCCESS;
+            } catch (Throwable e) {
+                if (scope.isShutdown()) {
+                    // 被作用域关闭打断，不算作新的失败
+                    exception = e;
+                    state = State.CANCELLED;
+                } else {
+                    fail(e);
+                    scope.onFailure(e);
+                }
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                }
+                if (scope.isShutdown()) {
+                    Thread.interrupted();
+                }
+                scope.childFinished();
+            }
+        }
+
+        /**
+         * 子任务成功时返回结果，否则抛出IllegalStateException
+         */
+        public T get() {
+            if (state != State.SUCCESS) {
+                throw new IllegalStateException("子任务未成功完成，当前状态: " + state);
+            }
+            return result;
+        }
+
+        public Throwable exception() {
+            return exception;
+        }
+
+        public State state() {
+            return state;
+        }
+
+        private void fail(Throwable e) {
+            exception = e;
+            state = State.FAILED;
+        }
+
+        /**
+         * 认领子任务的执行权，只有第一个调用者返回true
+         */
+        private synchronized boolean claim() {
+            if (started) {
+                return false;
+            }
+            started = true;
+            return true;
+        }
+
+        private void cancel() {
+            if (claim()) {
+                state = State.CANCELLED;
+                scope.childFinished();
+                return;
+            }
+            synchronized (this) {
+                if (runner != null) {
+                    runner.interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.threadlearning.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 对冲请求（Hedged Requests）
+ *
+ * 先发主请求；如果它在"近期延迟的p95"之内还没返回，再发一个备份请求，谁先成功用谁，另一个被中断取消。
+ * 绝大多数请求在对冲延迟内就已完成，所以额外负载只有几个百分点，却能把p99从慢节点的延迟拉回到正常水平。
+ *
+ * 1. 对冲延迟：由LatencyTracker的滚动分位数自适应得出，每完成32次尝试刷新一次；
+ *    样本不足20个之前不对冲
+ * 2. 负载上限：令牌桶，每个请求存入maxHedgeRatio个令牌（桶上限10个），每次对冲消耗1个，
+ *    后端整体变慢时对冲会被限流，不会把负载翻倍
+ * 3. 取消：尝试在哪个线程上运行就中断哪个线程，慢请求里的sleep/阻塞IO能及时退出，不占着线程池
+ */
+public class HedgedRequests {
+
+    private static final long TOKEN_SCALE = 1000;
+    private static final int MIN_SAMPLES = 20;
+    private static final int REFRESH_INTERVAL = 32;
+
+    private final Executor executor;
+    private final double hedgeQuantile;
+    private final long minDelayNanos;
+    private final long tokensPerRequest;
+    private final long maxTokens;
+    private final LatencyTracker tracker;
+
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private volatile long hedgeDelayNanos = Long.MAX_VALUE;
+
+    /**
+     * @param executor       执行请求的线程池
+     * @param hedgeQuantile  对冲延迟取近期延迟的哪个分位数，例如0.95
+     * @param maxHedgeRatio  对冲请求占总请求的最大比例，例如0.05
+     * @param minDelay       对冲延迟的下限，避免在延迟很小时过度对冲
+     * @param unit           minDelay的单位
+     */
+    public HedgedRequests(Executor executor, double hedgeQuantile, double maxHedgeRatio,
+                          long minDelay, TimeUnit unit) {
+        if (hedgeQuantile <= 0 || hedgeQuantile >= 1) {
+            throw new IllegalArgumentException("hedgeQuantile必须在(0,1)之间: " + hedgeQuantile);
+        }
+        if (maxHedgeRatio < 0 || maxHedgeRatio > 1) {
+            throw new IllegalArgumentException("maxHedgeRatio必须在[0,1]之间: " + maxHedgeRatio);
+        }
+        this.executor = executor;
+        this.hedgeQuantile = hedgeQuantile;
+        this.minDelayNanos = unit.toNanos(minDelay);
+        this.tokensPerRequest = Math.round(maxHedgeRatio * TOKEN_SCALE);
+        // 允许短时间内连续对冲若干次，但长期比例不超过maxHedgeRatio
+        this.maxTokens = 10 * TOKEN_SCALE;
+        this.tracker = new LatencyTracker(1024);
+    }
+
+    /**
+     * 以对冲方式执行一次调用
+     * 返回的Future被取消时，所有还在运行的尝试都会被中断
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        requests.incrementAndGet();
+        tokens.getAndUpdate(t -> Math.min(maxTokens, t + tokensPerRequest));
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // 还在运行（或即将运行）的尝试数，降为0时说明全部失败
+        AtomicInteger inFlight = new AtomicInteger(1);
+        Attempt<T> primary = new Attempt<>(call, result, inFlight, false);
+        AtomicReference<Attempt<T>> backup = new AtomicReference<>();
+
+        result.whenComplete((value, error) -> {
+            primary.cancel();
+            Attempt<T> hedge = backup.get();
+            if (hedge != null) {
+                hedge.cancel();
+            }
+        });
+
+        executor.execute(primary);
+
+        long delay = hedgeDelayNanos;
+        if (delay != Long.MAX_VALUE) {
+            Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS, executor);
+            delayed.execute(() -> {
+                if (result.isDone() || !tryAcquireToken()) {
+                    return;
+                }
+                // 主请求已经失败时inFlight为0，不再发起对冲（对冲解决的是慢，不是失败重试）
+                if (inFlight.getAndUpdate(n -> n == 0 ? 0 : n + 1) == 0) {
+                    return;
+                }
+                Attempt<T> hedge = new Attempt<>(call, result, inFlight, true);
+                backup.set(hedge);
+                hedges.incrementAndGet();
+                if (result.isDone()) {
+                    // 与whenComplete竞争：结果已出，没有必要再执行
+                    hedge.cancel();
+                }
+                hedge.run();
+            });
+        }
+        return result;
+    }
+
+    /**
+     * 当前使用的对冲延迟（毫秒），尚未预热时返回-1
+     */
+    public double getHedgeDelayMillis() {
+        long delay = hedgeDelayNanos;
+        return delay == Long.MAX_VALUE ? -1 : delay / 1_000_000.0;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     * 对冲请求先于主请求返回的次数
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * 因令牌不足而放弃对冲的次数
+     */
+    public long getThrottledCount() {
+        return throttled.get();
+    }
+
+    private boolean tryAcquireToken() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN_SCALE) {
+                throttled.incrementAndGet();
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN_SCALE));
+        return true;
+    }
+
+    private void recordLatency(long nanos) {
+        tracker.record(nanos);
+        long count = tracker.getCount();
+        if (count >= MIN_SAMPLES && (count % REFRESH_INTERVAL == 0 || hedgeDelayNanos == Long.MAX_VALUE)) {
+            hedgeDelayNanos = Math.max(minDelayNanos, tracker.percentile(hedgeQuantile));
+        }
+    }
+
+    /**
+     * 一次具体的调用尝试，记录运行线程以便取消时中断
+     * 设置/清除运行线程与中断都在同一把锁里，保证不会误中断线程池接下来执行的其它任务
+     */
+    private final class Attempt<T> implements Runnable {
+        private final Supplier<T> call;
+        private final CompletableFuture<T> result;
+        private final AtomicInteger inFlight;
+        private final boolean hedge;
+        private Thread runner;
+        private volatile boolean cancelled;
+
+        Attempt(Supplier<T> call, CompletableFuture<T> result, AtomicInteger inFlight, boolean hedge) {
+            this.call = call;
+            this.result = result;
+            this.inFlight = inFlight;
+            this.hedge = hedge;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            long start = System.nanoTime();
+            try {
+                T value = call.get();
+                recordLatency(System.nanoTime() - start);
+                if (result.complete(value) && hedge) {
+                    hedgeWins.incrementAndGet();
+                }
+            } catch (Throwable e) {
+                if (cancelled) {
+                    // 被取消的尝试按取消时已耗时记入，作为真实延迟的下界，避免慢样本被系统性丢弃
+                    recordLatency(System.nanoTime() - start);
+                } else if (inFlight.decrementAndGet() == 0) {
+                    result.completeExceptionally(e);
+                }
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                }
+                // 清除取消留下的中断标记，避免影响线程池里的下一个任务
+                if (cancelled) {
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (runner != null && runner != Thread.currentThread()) {
+                runner.interrupt();
+            }
+        }
+    }
+}
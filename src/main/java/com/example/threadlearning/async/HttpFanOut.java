@@ -0,0 +1,284 @@
+package com.example.threadlearning.async;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 基于java.net.http.HttpClient的HTTP扇出
+ *
+ * 两种方式请求同一组URI：
+ * 1. BLOCKING：每个调用占一个线程，在线程里调用client.send()阻塞等待响应，
+ *    N个并发调用需要N个线程，每个线程都要预留一份栈空间
+ * 2. ASYNC：client.sendAsync()，等待响应时不占线程，
+ *    只有HttpClient的选择器线程和少量回调线程，线程数与并发数无关
+ *
+ * 单个调用的失败（非2xx、超时、连接错误）不会让整个扇出失败，而是记录在Response里，便于统计错误率。
+ * measure()同时统计延迟分位数、错误率、峰值线程数和内存，线程数来自ThreadMXBean，是整个JVM的数据，
+ * 测量期间应避免其他任务并发运行。
+ */
+public class HttpFanOut {
+
+    public enum Mode {
+        BLOCKING, ASYNC
+    }
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+
+    /**
+     * @param clientExecutor HttpClient用来执行回调和响应处理的线程池，异步方式下这就是全部的工作线程
+     * @param requestTimeout 单个请求的超时
+     */
+    public HttpFanOut(Executor clientExecutor, Duration requestTimeout) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(requestTimeout)
+                .executor(clientExecutor)
+                .build();
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * 异步请求一个URI，返回的Future总是正常完成
+     */
+    public CompletableFuture<Response> fetch(URI uri) {
+        long start = System.nanoTime();
+        return client.sendAsync(request(uri), HttpResponse.BodyHandlers.ofString())
+                .handle((response, error) -> error == null
+                        ? new Response(uri, response.statusCode(), response.body(), System.nanoTime() - start, null)
+                        : new Response(uri, -1, null, System.nanoTime() - start, error));
+    }
+
+    /**
+     * 异步扇出：同时发出所有请求，全部完成后按输入顺序返回
+     */
+    public CompletableFuture<List<Response>> fetchAll(List<URI> uris) {
+        List<CompletableFuture<Response>> futures = uris.stream().map(this::fetch).collect(Collectors.toList());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(v -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    /**
+     * 阻塞扇出：每个请求提交到pool，在线程里调用client.send()阻塞等待
+     */
+    public List<Response> fetchAllBlocking(List<URI> uris, ExecutorService pool) throws InterruptedException {
+        List<Future<Response>> futures = new ArrayList<>(uris.size());
+        for (URI uri : uris) {
+            futures.add(pool.submit(() -> send(uri)));
+        }
+        List<Response> responses = new ArrayList<>(uris.size());
+        for (Future<Response> future : futures) {
+            try {
+                responses.add(future.get());
+            } catch (ExecutionException e) {
+                // send()内部已经捕获了异常，这里只会是线程池层面的问题
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * 按指定方式扇出并测量
+     * 阻塞方式使用大小等于调用数的临时线程池，与"每个并发调用一个线程"的写法一致
+     */
+    public Report measure(Mode mode, List<URI> uris) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        int baselineThreads = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        long start = System.nanoTime();
+
+        List<Response> responses;
+        if (mode == Mode.ASYNC) {
+            responses = fetchAll(uris).join();
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(uris.size());
+            try {
+                responses = fetchAllBlocking(uris, pool);
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        int extraThreads = Math.max(0, threads.getPeakThreadCount() - baselineThreads);
+        long heapDelta = memory.getHeapMemoryUsage().getUsed() - heapBefore;
+        return new Report(mode, responses, elapsed, extraThreads, heapDelta);
+    }
+
+    private Response send(URI uri) {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request(uri), HttpResponse.BodyHandlers.ofString());
+            return new Response(uri, response.statusCode(), response.body(), System.nanoTime() - start, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Response(uri, -1, null, System.nanoTime() - start, e);
+        } catch (Exception e) {
+            return new Response(uri, -1, null, System.nanoTime() - start, e);
+        }
+    }
+
+    private HttpRequest request(URI uri) {
+        return HttpRequest.newBuilder(uri).timeout(requestTimeout).GET().build();
+    }
+
+    /**
+     * 线程栈大小（KB），读取JVM参数ThreadStackSize，未设置时按1MB计
+     */
+    private static long threadStackKb() {
+        try {
+            HotSpotDiagnosticMXBean hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            long value = Long.parseLong(hotSpot.getVMOption("ThreadStackSize").getValue());
+            return value > 0 ? value : 1024;
+        } catch (RuntimeException e) {
+            return 1024;
+        }
+    }
+
+    /**
+     * 单个调用的结果
+     */
+    public static final class Response {
+        private final URI uri;
+        private final int status;
+        private final String body;
+        private final long latencyNanos;
+        private final Throwable error;
+
+        Response(URI uri, int status, String body, long latencyNanos, Throwable error) {
+            this.uri = uri;
+            this.status = status;
+            this.body = body;
+            this.latencyNanos = latencyNanos;
+            this.error = error;
+        }
+
+        public boolean isSuccess() {
+            return error == null && status >= 200 && status < 300;
+        }
+
+        public URI getUri() {
+            return uri;
+        }
+
+        /**
+         * HTTP状态码，请求没有得到响应时为-1
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public long getLatencyMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+    }
+
+    /**
+     * 一次扇出的测量结果
+     */
+    public static final class Report {
+        private final Mode mode;
+        private final int calls;
+        private final int errors;
+        private final long elapsedNanos;
+        private final long[] sortedLatencies;
+        private final int extraThreads;
+        private final long heapDeltaBytes;
+
+        Report(Mode mode, List<Response> responses, long elapsedNanos, int extraThreads, long heapDeltaBytes) {
+            this.mode = mode;
+            this.calls = responses.size();
+            this.errors = (int) responses.stream().filter(r -> !r.isSuccess()).count();
+            this.elapsedNanos = elapsedNanos;
+            this.sortedLatencies = responses.stream().mapToLong(r -> r.latencyNanos).toArray();
+            Arrays.sort(sortedLatencies);
+            this.extraThreads = extraThreads;
+            this.heapDeltaBytes = heapDeltaBytes;
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public int getCalls() {
+            return calls;
+        }
+
+        public double getErrorRate() {
+            return calls == 0 ? 0 : (double) errors / calls;
+        }
+
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+        /**
+         * 单个调用延迟的分位数（毫秒）
+         */
+        public double percentileMillis(double quantile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))] / 1_000_000.0;
+        }
+
+        /**
+         * 测量期间相对开始时新增的峰值线程数
+         */
+        public int getExtraThreads() {
+            return extraThreads;
+        }
+
+        /**
+         * 新增线程预留的栈空间（MB），虚拟内存预留，实际提交的物理内存取决于栈的使用深度
+         */
+        public double getReservedStackMb() {
+            return extraThreads * threadStackKb() / 1024.0;
+        }
+
+        /**
+         * 测量前后的堆使用量之差（MB），包含尚未回收的垃圾，只作量级参考
+         */
+        public double getHeapDeltaMb() {
+            return heapDeltaBytes / (1024.0 * 1024.0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-8s 调用数=%-6d 总耗时=%5dms p50=%6.1fms p99=%6.1fms 错误率=%5.1f%% 新增线程=%-5d 栈预留=%7.1fMB 堆增量=%6.1fMB",
+                    mode, calls, getElapsedMillis(), percentileMillis(0.5), percentileMillis(0.99),
+                    getErrorRate() * 100, extraThreads, getReservedStackMb(), getHeapDeltaMb());
+        }
+    }
+}
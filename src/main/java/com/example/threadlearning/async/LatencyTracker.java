@@ -0,0 +1,92 @@
+package com.example.threadlearning.async;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 滚动窗口延迟统计
+ *
+ * 只保留最近windowSize个样本（环形数组，写入无锁），分位数按需对窗口快照排序计算。
+ * 样本数量固定，所以计算成本是常数；窗口会随新样本滚动，能跟上后端延迟的变化。
+ */
+public class LatencyTracker {
+
+    private final AtomicLongArray samples;
+    private final int mask;
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * @param windowSize 窗口大小，会向上取整为2的幂
+     */
+    public LatencyTracker(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize必须大于0: " + windowSize);
+        }
+        int size = windowSize == 1 ? 1 : Integer.highestOneBit(windowSize - 1) << 1;
+        this.samples = new AtomicLongArray(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * 记录一次耗时（纳秒）
+     */
+    public void record(long nanos) {
+        long index = count.getAndIncrement();
+        samples.set((int) index & mask, nanos);
+    }
+
+    /**
+     * 窗口内的分位数（纳秒），没有样本时返回0
+     *
+     * @param quantile 0~1之间，例如0.95表示p95
+     */
+    public long percentile(double quantile) {
+        long[] sorted = sortedWindow();
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return valueAt(sorted, quantile);
+    }
+
+    /**
+     * 一次排序同时取多个分位数
+     */
+    public long[] percentiles(double... quantiles) {
+        long[] sorted = sortedWindow();
+        long[] result = new long[quantiles.length];
+        if (sorted.length == 0) {
+            return result;
+        }
+        for (int i = 0; i < quantiles.length; i++) {
+            result[i] = valueAt(sorted, quantiles[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 累计记录的样本数（不限于窗口内）
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    public int getWindowSize() {
+        return samples.length();
+    }
+
+    private long[] sortedWindow() {
+        int size = (int) Math.min(count.get(), samples.length());
+        long[] copy = new long[size];
+        for (int i = 0; i < size; i++) {
+            copy[i] = samples.get(i);
+        }
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    private static long valueAt(long[] sorted, double quantile) {
+        int rank = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+    }
+}
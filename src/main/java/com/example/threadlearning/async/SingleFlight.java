@@ -0,0 +1,97 @@
+package com.example.threadlearning.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 单飞（Single Flight）请求合并
+ *
+ * 同一时刻对同一个key的并发调用只会真正执行一次，其余调用者共享这一次的结果：
+ * 1. 第一个调用者把自己的Future放进inFlight表，成为leader并发起真正的调用
+ * 2. 之后的调用者在表里找到进行中的Future，直接挂在上面等待
+ * 3. 调用结束（成功或失败）时先从表中移除再完成Future，之后到来的调用会重新执行，
+ *    不会读到过期结果，失败也不会被"缓存"下来
+ *
+ * 它不是缓存：结果只在调用进行期间被共享，解决的是缓存失效瞬间的惊群问题。
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong executions = new AtomicLong();
+
+    /**
+     * 执行或加入key对应的进行中调用
+     * 每个调用者拿到的是共享Future的副本，某个调用者取消或完成自己的副本不会影响其他人
+     *
+     * @param call 真正的异步调用，只有leader会执行
+     */
+    public CompletableFuture<V> execute(K key, Supplier<? extends CompletableFuture<? extends V>> call) {
+        calls.incrementAndGet();
+        CompletableFuture<V> promise = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, promise);
+        if (existing != null) {
+            return existing.copy();
+        }
+
+        executions.incrementAndGet();
+        CompletableFuture<? extends V> source;
+        try {
+            source = call.get();
+            if (source == null) {
+                throw new NullPointerException("call返回了null: " + key);
+            }
+        } catch (Throwable e) {
+            inFlight.remove(key, promise);
+            promise.completeExceptionally(e);
+            return promise.copy();
+        }
+        source.whenComplete((value, error) -> {
+            inFlight.remove(key, promise);
+            if (error != null) {
+                promise.completeExceptionally(error);
+            } else {
+                promise.complete(value);
+            }
+        });
+        return promise.copy();
+    }
+
+    /**
+     * 同步计算的便捷版本：leader在executor上执行supplier
+     */
+    public CompletableFuture<V> execute(K key, Supplier<? extends V> supplier, Executor executor) {
+        return execute(key, () -> CompletableFuture.supplyAsync(supplier, executor));
+    }
+
+    /**
+     * 当前有调用在进行中的key数量
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * 累计调用次数
+     */
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    /**
+     * 累计真正执行的次数
+     */
+    public long getExecutionCount() {
+        return executions.get();
+    }
+
+    /**
+     * 被合并掉的调用次数
+     */
+    public long getSharedCount() {
+        return calls.get() - executions.get();
+    }
+}
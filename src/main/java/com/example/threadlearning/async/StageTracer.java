@@ -0,0 +1,408 @@
+package com.example.threadlearning.async;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * CompletableFuture链路的阶段级延迟追踪
+ *
+ * 对每个阶段记录：入队时间（提交到线程池的时刻）、开始时间、结束时间和执行线程，
+ * 可以看出延迟到底花在某个阶段的计算上，还是花在线程池切换的排队上。
+ *
+ * 用法：
+ * <pre>
+ * StageTracer.Trace trace = tracer.start("查询用户");
+ * Executor traced = trace.executor(pool);
+ * CompletableFuture.supplyAsync(trace.supplier("获取ID", () -&gt; ...), traced)
+ *         .thenApplyAsync(trace.function("获取信息", id -&gt; ...), traced)
+ *         .whenComplete((v, e) -&gt; trace.finish());
+ * </pre>
+ * 1. trace.executor包装线程池：execute时记下入队时间，任务运行时放进ThreadLocal，
+ *    同一线程上紧接着执行的阶段函数取走它作为自己的入队时间；同步阶段（thenApply等）没有入队，
+ *    入队时间等于开始时间
+ * 2. 采样：start按sampleRate决定是否追踪，未采中时返回的Trace原样返回传入的函数和线程池，
+ *    几乎没有额外开销
+ * 3. 最近maxTraces个完成的追踪保留在内存里，可导出为Chrome Trace Event格式的JSON，
+ *    用chrome://tracing或https://ui.perfetto.dev打开：每个请求一个进程行，每个阶段一条泳道，
+ *    泳道上依次是排队和运行（标注执行线程）
+ */
+public class StageTracer {
+
+    private static final ThreadLocal<Long> PENDING_ENQUEUE = new ThreadLocal<>();
+    private static final Trace NOOP = new NoopTrace();
+
+    private final double sampleRate;
+    private final int maxTraces;
+    private final Deque<RecordedTrace> completed = new ArrayDeque<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final long originNanos = System.nanoTime();
+
+    /**
+     * @param sampleRate 采样率，0~1
+     * @param maxTraces  内存中保留的最近完成的追踪数
+     */
+    public StageTracer(double sampleRate, int maxTraces) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate必须在[0,1]之间: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        this.maxTraces = maxTraces;
+    }
+
+    /**
+     * 开始一次请求的追踪，未被采样时返回空实现
+     */
+    public Trace start(String requestName) {
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return NOOP;
+        }
+        return new RecordingTrace(sequence.incrementAndGet(), requestName);
+    }
+
+    /**
+     * 已完成并保留在内存中的追踪数
+     */
+    public synchronized int completedCount() {
+        return completed.size();
+    }
+
+    /**
+     * 把保留的追踪导出为Chrome Trace Event格式的JSON文件
+     */
+    public void writeChromeTrace(Path file) throws IOException {
+        List<RecordedTrace> traces;
+        synchronized (this) {
+            traces = new ArrayList<>(completed);
+        }
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+            boolean first = true;
+            for (RecordedTrace trace : traces) {
+                for (String event : trace.toEvents(originNanos)) {
+                    if (!first) {
+                        writer.write(",\n");
+                    }
+                    writer.write(event);
+                    first = false;
+                }
+            }
+            writer.write("\n]}\n");
+        }
+    }
+
+    /**
+     * 每个阶段的平均排队和运行时间（毫秒），按阶段名汇总所有保留的追踪
+     */
+    public Map<String, double[]> summarize() {
+        List<RecordedTrace> traces;
+        synchronized (this) {
+            traces = new ArrayList<>(completed);
+        }
+        Map<String, double[]> totals = new LinkedHashMap<>();
+        for (RecordedTrace trace : traces) {
+            for (Span span : trace.spans) {
+                double[] sum = totals.computeIfAbsent(span.name, k -> new double[3]);
+                sum[0] += (span.startNanos - span.enqueueNanos) / 1_000_000.0;
+                sum[1] += (span.endNanos - span.startNanos) / 1_000_000.0;
+                sum[2]++;
+            }
+        }
+        Map<String, double[]> averages = new LinkedHashMap<>();
+        totals.forEach((name, sum) -> averages.put(name, new double[]{sum[0] / sum[2], sum[1] / sum[2]}));
+        return averages;
+    }
+
+    private synchronized void record(RecordedTrace trace) {
+        completed.addLast(trace);
+        while (completed.size() > maxTraces) {
+            completed.removeFirst();
+        }
+    }
+
+    /**
+     * 一次请求的追踪
+     */
+    public interface Trace {
+
+        boolean isSampled();
+
+        /**
+         * 包装线程池，记录提交到该线程池的阶段的入队时间
+         */
+        Executor executor(Executor executor);
+
+        <T> Supplier<T> supplier(String stage, Supplier<T> supplier);
+
+        <T, R> Function<T, R> function(String stage, Function<T, R> function);
+
+        <T, U, R> BiFunction<T, U, R> biFunction(String stage, BiFunction<T, U, R> function);
+
+        /**
+         * 包装thenCompose的函数：记录的是从调用到内部Future完成的整段时间
+         */
+        <T, R> Function<T, CompletableFuture<R>> compose(String stage, Function<T, CompletableFuture<R>> function);
+
+        /**
+         * 结束追踪，之后记录的阶段会被忽略
+         */
+        void finish();
+    }
+
+    private static final class NoopTrace implements Trace {
+        @Override
+        public boolean isSampled() {
+            return false;
+        }
+
+        @Override
+        public Executor executor(Executor executor) {
+            return executor;
+        }
+
+        @Override
+        public <T> Supplier<T> supplier(String stage, Supplier<T> supplier) {
+            return supplier;
+        }
+
+        @Override
+        public <T, R> Function<T, R> function(String stage, Function<T, R> function) {
+            return function;
+        }
+
+        @Override
+        public <T, U, R> BiFunction<T, U, R> biFunction(String stage, BiFunction<T, U, R> function) {
+            return function;
+        }
+
+        @Override
+        public <T, R> Function<T, CompletableFuture<R>> compose(String stage,
+                                                              Function<T, CompletableFuture<R>> function) {
+            return function;
+        }
+
+        @Override
+        public void finish() {
+        }
+    }
+
+    private final class RecordingTrace implements Trace {
+        private final long id;
+        private final String requestName;
+        private final Queue<Span> spans = new ConcurrentLinkedQueue<>();
+        private volatile boolean finished;
+
+        RecordingTrace(long id, String requestName) {
+            this.id = id;
+            this.requestName = requestName;
+        }
+
+        @Override
+        public boolean isSampled() {
+            return true;
+        }
+
+        @Override
+        public Executor executor(Executor executor) {
+            return command -> {
+                long enqueued = System.nanoTime();
+                executor.execute(() -> {
+                    PENDING_ENQUEUE.set(enqueued);
+                    try {
+                        command.run();
+                    } finally {
+                        PENDING_ENQUEUE.remove();
+                    }
+                });
+            };
+        }
+
+        @Override
+        public <T> Supplier<T> supplier(String stage, Supplier<T> supplier) {
+            return () -> {
+                long start = System.nanoTime();
+                long enqueued = takeEnqueueTime(start);
+                try {
+                    return supplier.get();
+                } finally {
+                    addSpan(stage, enqueued, start);
+                }
+            };
+        }
+
+        @Override
+        public <T, R> Function<T, R> function(String stage, Function<T, R> function) {
+            return value -> {
+                long start = System.nanoTime();
+                long enqueued = takeEnqueueTime(start);
+                try {
+                    return function.apply(value);
+                } finally {
+                    addSpan(stage, enqueued, start);
+                }
+            };
+        }
+
+        @Override
+        public <T, U, R> BiFunction<T, U, R> biFunction(String stage, BiFunction<T, U, R> function) {
+            return (left, right) -> {
+                long start = System.nanoTime();
+                long enqueued = takeEnqueueTime(start);
+                try {
+                    return function.apply(left, right);
+                } finally {
+                    addSpan(stage, enqueued, start);
+                }
+            };
+        }
+
+        @Override
+        public <T, R> Function<T, CompletableFuture<R>> compose(String stage,
+                                                              Function<T, CompletableFuture<R>> function) {
+            return value -> {
+                long start = System.nanoTime();
+                long enqueued = takeEnqueueTime(start);
+                String thread = Thread.currentThread().getName();
+                long threadId = Thread.currentThread().getId();
+                return function.apply(value).whenComplete((result, error) ->
+                        addSpan(new Span(stage, enqueued, start, System.nanoTime(), thread, threadId)));
+            };
+        }
+
+        @Override
+        public void finish() {
+            if (!finished) {
+                finished = true;
+                record(new RecordedTrace(id, requestName, new ArrayList<>(spans)));
+            }
+        }
+
+        /**
+         * 取走本线程上待认领的入队时间；没有时说明是同步阶段，返回start（排队时间为0）
+         */
+        private long takeEnqueueTime(long start) {
+            Long enqueued = PENDING_ENQUEUE.get();
+            if (enqueued == null) {
+                return start;
+            }
+            PENDING_ENQUEUE.remove();
+            return enqueued;
+        }
+
+        private void addSpan(String stage, long enqueued, long start) {
+            Thread thread = Thread.currentThread();
+            addSpan(new Span(stage, enqueued, start, System.nanoTime(), thread.getName(), thread.getId()));
+        }
+
+        private void addSpan(Span span) {
+            if (!finished) {
+                spans.add(span);
+            }
+        }
+    }
+
+    private static final class Span {
+        final String name;
+        final long enqueueNanos;
+        final long startNanos;
+        final long endNanos;
+        final String threadName;
+        final long threadId;
+
+        Span(String name, long enqueueNanos, long startNanos, long endNanos, String threadName, long threadId) {
+            this.name = name;
+            this.enqueueNanos = enqueueNanos;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.threadName = threadName;
+            this.threadId = threadId;
+        }
+    }
+
+    private static final class RecordedTrace {
+        final long id;
+        final String requestName;
+        final List<Span> spans;
+
+        RecordedTrace(long id, String requestName, List<Span> spans) {
+            this.id = id;
+            this.requestName = requestName;
+            this.spans = spans;
+        }
+
+        /**
+         * 转为Chrome Trace Event：pid为请求序号，每个阶段一条泳道（按开始时间排序），
+         * 泳道上先画排队再画运行，执行线程放在事件名和args里
+         */
+        List<String> toEvents(long originNanos) {
+            List<Span> ordered = new ArrayList<>(spans);
+            ordered.sort(Comparator.comparingLong(span -> span.enqueueNanos));
+            List<String> events = new ArrayList<>();
+            events.add(String.format(Locale.ROOT, "{\"ph\":\"M\",\"pid\":%d,\"name\":\"process_name\",\"args\":{\"name\":\"%s #%d\"}}",
+                    id, escape(requestName), id));
+            int lane = 0;
+            for (Span span : ordered) {
+                lane++;
+                events.add(String.format(Locale.ROOT, "{\"ph\":\"M\",\"pid\":%d,\"tid\":%d,\"name\":\"thread_name\",\"args\":{\"name\":\"%s\"}}",
+                        id, lane, escape(span.name)));
+                long queued = span.startNanos - span.enqueueNanos;
+                if (queued > 0) {
+                    events.add(String.format(Locale.ROOT, "{\"ph\":\"X\",\"pid\":%d,\"tid\":%d,\"name\":\"排队\",\"cat\":\"queue\",\"ts\":%.3f,\"dur\":%.3f}",
+                            id, lane, micros(span.enqueueNanos - originNanos), micros(queued)));
+                }
+                events.add(String.format(Locale.ROOT, "{\"ph\":\"X\",\"pid\":%d,\"tid\":%d,\"name\":\"%s @%s\",\"cat\":\"stage\",\"ts\":%.3f,\"dur\":%.3f,"
+                                + "\"args\":{\"queue_ms\":%.3f,\"thread\":\"%s\",\"thread_id\":%d}}",
+                        id, lane, escape(span.name), escape(span.threadName), micros(span.startNanos - originNanos),
+                        micros(span.endNanos - span.startNanos), queued / 1_000_000.0, escape(span.threadName), span.threadId));
+            }
+            return events;
+        }
+
+        private static double micros(long nanos) {
+            return nanos / 1000.0;
+        }
+
+        private static String escape(String value) {
+            StringBuilder sb = new StringBuilder(value.length());
+            for (char c : value.toCharArray()) {
+                switch (c) {
+                    case '"':
+                        sb.append("\\\"");
+                        break;
+                    case '\\':
+                        sb.append("\\\\");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                        } else {
+                            sb.append(c);
+                        }
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.threadlearning.async;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地桩服务，代替真实的下游HTTP接口
+ *
+ * 基于JDK自带的com.sun.net.httpserver，绑定127.0.0.1的随机端口。每个路由可以配置延迟分布和错误率：
+ * 1. 处理器收到请求后立即返回，响应由定时线程在采样出的延迟之后写出，
+ *    等待期间不占线程，几个线程就能同时挂住上万个慢请求，客户端看到的是真实的网络等待
+ * 2. 按错误率返回500，其余返回200和一段短文本
+ *
+ * 用法：
+ * <pre>
+ * try (StubHttpServer server = StubHttpServer.start()) {
+ *     server.route("/api1", LatencyDistribution.uniform(1000, 3000), 0.0);
+ *     URI uri = server.uri("/api1");
+ * }
+ * </pre>
+ */
+public class StubHttpServer implements AutoCloseable {
+
+    private static final int BACKLOG = 16384;
+
+    private final HttpServer server;
+    private final ExecutorService dispatcher;
+    private final ScheduledExecutorService responder;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private StubHttpServer(HttpServer server) {
+        this.server = server;
+        this.dispatcher = Executors.newFixedThreadPool(2, namedThreads("stub-http-dispatcher"));
+        this.responder = Executors.newScheduledThreadPool(2, namedThreads("stub-http-responder"));
+        server.setExecutor(dispatcher);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * 在127.0.0.1的随机端口上启动
+     */
+    public static StubHttpServer start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), BACKLOG);
+        return new StubHttpServer(server);
+    }
+
+    /**
+     * 注册（或替换）一个路由
+     *
+     * @param errorRate 返回500的概率，0~1
+     */
+    public StubHttpServer route(String path, LatencyDistribution latency, double errorRate) {
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("errorRate必须在[0,1]之间: " + errorRate);
+        }
+        routes.put(path, new Route(latency, errorRate));
+        return this;
+    }
+
+    public URI uri(String path) {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path);
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        responder.shutdownNow();
+        dispatcher.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) {
+        requests.incrementAndGet();
+        Route route = routes.get(exchange.getRequestURI().getPath());
+        if (route == null) {
+            respond(exchange, 404, "no route");
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = route.latency.sampleMillis(random);
+        boolean fail = random.nextDouble() < route.errorRate;
+        responder.schedule(() -> {
+            if (fail) {
+                errors.incrementAndGet();
+                respond(exchange, 500, "simulated failure");
+            } else {
+                respond(exchange, 200, "Response from " + exchange.getRequestURI().getPath() + " (took " + delay + "ms)");
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            // 客户端已经断开（例如超时取消），丢弃响应即可
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Route {
+        final LatencyDistribution latency;
+        final double errorRate;
+
+        Route(LatencyDistribution latency, double errorRate) {
+            this.latency = latency;
+            this.errorRate = errorRate;
+        }
+    }
+
+    /**
+     * 响应延迟分布
+     */
+    @FunctionalInterface
+    public interface LatencyDistribution {
+
+        long sampleMillis(ThreadLocalRandom random);
+
+        static LatencyDistribution fixed(long millis) {
+            return random -> millis;
+        }
+
+        /**
+         * [minMillis, maxMillis]上的均匀分布
+         */
+        static LatencyDistribution uniform(long minMillis, long maxMillis) {
+            return random -> random.nextLong(minMillis, maxMillis + 1);
+        }
+
+        /**
+         * 对数正态分布，由中位数和p99确定，典型的长尾服务延迟
+         */
+        static LatencyDistribution logNormal(double medianMillis, double p99Millis) {
+            if (medianMillis <= 0 || p99Millis < medianMillis) {
+                throw new IllegalArgumentException("需要满足 0 < median <= p99");
+            }
+            double mu = Math.log(medianMillis);
+            // p99对应标准正态分位数2.326
+            double sigma = (Math.log(p99Millis) - mu) / 2.326;
+            return random -> Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package com.example.threadlearning.async;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 声明式任务图（DAG）执行器
+ *
+ * 用法：先用addTask注册任务及其依赖（依赖只能是已经注册过的任务句柄，所以图天然无环），
+ * 再调用execute在指定线程池上运行：
+ * 1. 没有依赖的任务立即提交；任务完成时给每个下游的"剩余依赖数"减一，减到0的下游立刻提交，
+ *    不存在按层等待，任何时刻能跑的任务都在跑
+ * 2. 任一任务失败或整个执行被取消后不再提交新任务，已在运行的任务结束后，
+ *    返回的Future以TaskGraphException失败，未运行的任务在报告中标记为SKIPPED
+ * 3. 执行结束后生成报告：每个任务的等待时间（就绪到开始，即在线程池队列里的时间）、运行时间，
+ *    以及关键路径——决定总耗时的那条依赖链
+ *
+ * TaskGraph本身只是定义，可以重复执行；每次execute的状态相互独立。
+ */
+public class TaskGraph {
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    /**
+     * 注册一个任务
+     *
+     * @param name         任务名称，用于报告
+     * @param action       任务逻辑，通过TaskInputs读取依赖任务的结果
+     * @param dependencies 依赖的任务
+     */
+    public synchronized <T> TaskHandle<T> addTask(String name, Function<TaskInputs, ? extends T> action,
+                                                  TaskHandle<?>... dependencies) {
+        Objects.requireNonNull(action);
+        int index = nodes.size();
+        int[] deps = new int[dependencies.length];
+        for (int i = 0; i < dependencies.length; i++) {
+            TaskHandle<?> dependency = dependencies[i];
+            if (dependency.graph != this) {
+                throw new IllegalArgumentException("依赖的任务不属于当前任务图: " + dependency.name);
+            }
+            deps[i] = dependency.index;
+        }
+        Node node = new Node(index, name, action, deps);
+        nodes.add(node);
+        for (int dep : deps) {
+            nodes.get(dep).dependents.add(index);
+        }
+        return new TaskHandle<>(this, index, name);
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * 在executor上执行整个任务图
+     * 取消返回的Future会停止提交新任务
+     */
+    public CompletableFuture<Result> execute(Executor executor) {
+        List<Node> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(nodes);
+        }
+        return new Execution(snapshot, executor).start();
+    }
+
+    /**
+     * 任务句柄，用来声明依赖和读取结果
+     */
+    public static final class TaskHandle<T> {
+        private final TaskGraph graph;
+        private final int index;
+        private final String name;
+
+        private TaskHandle(TaskGraph graph, int index, String name) {
+            this.graph = graph;
+            this.index = index;
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * 任务运行时可见的输入，只能读取声明过的依赖
+     */
+    public static final class TaskInputs {
+        private final Object[] results;
+        private final int[] dependencies;
+
+        private TaskInputs(Object[] results, int[] dependencies) {
+            this.results = results;
+            this.dependencies = dependencies;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> T get(TaskHandle<T> handle) {
+            for (int dependency : dependencies) {
+                if (dependency == handle.index) {
+                    return (T) results[handle.index];
+                }
+            }
+            throw new IllegalArgumentException("任务没有声明对 " + handle.name + " 的依赖");
+        }
+    }
+
+    public enum TaskState {
+        SUCCEEDED, FAILED, SKIPPED
+    }
+
+    /**
+     * 单个任务的执行统计
+     */
+    public static final class TaskStats {
+        private final String name;
+        private final TaskState state;
+        private final long waitNanos;
+        private final long runNanos;
+        private final long finishNanos;
+
+        TaskStats(String name, TaskState state, long waitNanos, long runNanos, long finishNanos) {
+            this.name = name;
+            this.state = state;
+            this.waitNanos = waitNanos;
+            this.runNanos = runNanos;
+            this.finishNanos = finishNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public TaskState getState() {
+            return state;
+        }
+
+        /**
+         * 依赖全部完成到开始运行之间的时间（在线程池队列中等待）
+         */
+        public double getWaitMillis() {
+            return waitNanos / 1_000_000.0;
+        }
+
+        public double getRunMillis() {
+            return runNanos / 1_000_000.0;
+        }
+
+        /**
+         * 相对整个执行开始的完成时刻
+         */
+        public double getFinishMillis() {
+            return finishNanos / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s[%s, 等待=%.1fms, 运行=%.1fms]", name, state, getWaitMillis(), getRunMillis());
+        }
+    }
+
+    /**
+     * 一次执行的报告
+     */
+    public static final class Report {
+        private final List<TaskStats> tasks;
+        private final List<TaskStats> criticalPath;
+        private final long totalNanos;
+
+        Report(List<TaskStats> tasks, List<TaskStats> criticalPath, long totalNanos) {
+            this.tasks = Collections.unmodifiableList(tasks);
+            this.criticalPath = Collections.unmodifiableList(criticalPath);
+            this.totalNanos = totalNanos;
+        }
+
+        public List<TaskStats> getTasks() {
+            return tasks;
+        }
+
+        /**
+         * 关键路径：从最后完成的任务出发，每一步回溯到最晚完成的那个依赖
+         */
+        public List<TaskStats> getCriticalPath() {
+            return criticalPath;
+        }
+
+        public double getTotalMillis() {
+            return totalNanos / 1_000_000.0;
+        }
+
+        /**
+         * 所有任务运行时间之和，即串行执行所需的时间
+         */
+        public double getSerialMillis() {
+            return tasks.stream().mapToDouble(TaskStats::getRunMillis).sum();
+        }
+
+        public String formatCriticalPath() {
+            StringBuilder sb = new StringBuilder();
+            double runTotal = 0;
+            double waitTotal = 0;
+            for (TaskStats stats : criticalPath) {
+                if (sb.length() > 0) {
+                    sb.append(" -> ");
+                }
+                sb.append(String.format("%s(%.1fms)", stats.getName(), stats.getRunMillis()));
+                runTotal += stats.getRunMillis();
+                waitTotal += stats.getWaitMillis();
+            }
+            return String.format("%s，运行合计 %.1fms，排队合计 %.1fms", sb, runTotal, waitTotal);
+        }
+    }
+
+    /**
+     * 执行结果：各任务的返回值和执行报告
+     */
+    public static final class Result {
+        private final Object[] results;
+        private final Report report;
+
+        Result(Object[] results, Report report) {
+            this.results = results;
+            this.report = report;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> T get(TaskHandle<T> handle) {
+            return (T) results[handle.index];
+        }
+
+        public Report getReport() {
+            return report;
+        }
+    }
+
+    /**
+     * 任务失败或执行被取消
+     */
+    public static class TaskGraphException extends RuntimeException {
+        private final transient Report report;
+
+        TaskGraphException(String message, Throwable cause, Report report) {
+            super(message, cause);
+            this.report = report;
+        }
+
+        public Report getReport() {
+            return report;
+        }
+    }
+
+    private static final class Node {
+        final int index;
+        final String name;
+        final Function<TaskInputs, ?> action;
+        final int[] dependencies;
+        final List<Integer> dependents = new ArrayList<>();
+
+        Node(int index, String name, Function<TaskInputs, ?> action, int[] dependencies) {
+            this.index = index;
+            this.name = name;
+            this.action = action;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /**
+     * 一次执行的全部状态
+     * 数组的每个下标只被对应任务的执行线程写入，读取发生在pending计数归零之后，
+     * AtomicInteger的递减提供了必要的happens-before
+     */
+    private static final class Execution {
+        private final List<Node> nodes;
+        private final Executor executor;
+        private final CompletableFuture<Result> future = new CompletableFuture<>();
+        private final Object[] results;
+        private final AtomicIntegerArray remaining;
+        private final TaskState[] states;
+        private final long[] readyAt;
+        private final long[] startAt;
+        private final long[] endAt;
+        // 已提交但还没结束的任务数
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private volatile String failedTask;
+        private long startNanos;
+
+        Execution(List<Node> nodes, Executor executor) {
+            int size = nodes.size();
+            this.nodes = nodes;
+            this.executor = executor;
+            this.results = new Object[size];
+            this.remaining = new AtomicIntegerArray(size);
+            this.states = new TaskState[size];
+            this.readyAt = new long[size];
+            this.startAt = new long[size];
+            this.endAt = new long[size];
+        }
+
+        CompletableFuture<Result> start() {
+            startNanos = System.nanoTime();
+            if (nodes.isEmpty()) {
+                future.complete(new Result(results, buildReport()));
+                return future;
+            }
+            future.whenComplete((result, error) -> {
+                if (future.isCancelled()) {
+                    failure.compareAndSet(null, new CancellationException("任务图执行被取消"));
+                }
+            });
+            List<Node> roots = new ArrayList<>();
+            for (Node node : nodes) {
+                remaining.set(node.index, node.dependencies.length);
+                if (node.dependencies.length == 0) {
+                    roots.add(node);
+                }
+            }
+            // 先把pending加到根任务数，避免第一个根任务完成时误判为全部结束
+            pending.addAndGet(roots.size());
+            for (Node root : roots) {
+                submit(root);
+            }
+            return future;
+        }
+
+        private void submit(Node node) {
+            readyAt[node.index] = System.nanoTime();
+            try {
+                executor.execute(() -> run(node));
+            } catch (RuntimeException e) {
+                // 提交被拒绝的任务没有运行，按拒绝时刻记录开始和结束，报告里等待时间为提交耗时、运行时间为0
+                long rejectedAt = System.nanoTime();
+                startAt[node.index] = rejectedAt;
+                endAt[node.index] = rejectedAt;
+                fail(node, e);
+                finishOne();
+            }
+        }
+
+        private void run(Node node) {
+            int index = node.index;
+            try {
+                if (failure.get() != null) {
+                    return;
+                }
+                startAt[index] = System.nanoTime();
+                try {
+                    results[index] = node.action.apply(new TaskInputs(results, node.dependencies));
+                } catch (Throwable e) {
+                    endAt[index] = System.nanoTime();
+                    fail(node, e);
+                    return;
+                }
+                endAt[index] = System.nanoTime();
+                states[index] = TaskState.SUCCEEDED;
+                succeeded.incrementAndGet();
+                for (int dependent : node.dependents) {
+                    if (remaining.decrementAndGet(dependent) == 0 && failure.get() == null) {
+                        pending.incrementAndGet();
+                        submit(nodes.get(dependent));
+                    }
+                }
+            } finally {
+                finishOne();
+            }
+        }
+
+        private void fail(Node node, Throwable error) {
+            states[node.index] = TaskState.FAILED;
+            if (failure.compareAndSet(null, error)) {
+                failedTask = node.name;
+            }
+        }
+
+        private void finishOne() {
+            if (pending.decrementAndGet() != 0) {
+                return;
+            }
+            Report report = buildReport();
+            Throwable error = failure.get();
+            if (error == null && succeeded.get() == nodes.size()) {
+                future.complete(new Result(results, report));
+            } else {
+                String message = failedTask != null
+                        ? "任务 " + failedTask + " 执行失败: " + error.getMessage()
+                        : "任务图执行被取消";
+                future.completeExceptionally(new TaskGraphException(message, error, report));
+            }
+        }
+
+        private Report buildReport() {
+            long finish = System.nanoTime();
+            List<TaskStats> tasks = new ArrayList<>(nodes.size());
+            int last = -1;
+            for (Node node : nodes) {
+                int i = node.index;
+                TaskState state = states[i] == null ? TaskState.SKIPPED : states[i];
+                long wait = state == TaskState.SKIPPED ? 0 : startAt[i] - readyAt[i];
+                long run = state == TaskState.SKIPPED ? 0 : endAt[i] - startAt[i];
+                long finished = state == TaskState.SKIPPED ? 0 : endAt[i] - startNanos;
+                tasks.add(new TaskStats(node.name, state, wait, run, finished));
+                if (state == TaskState.SUCCEEDED && (last < 0 || endAt[i] > endAt[last])) {
+                    last = i;
+                }
+            }
+
+            List<TaskStats> path = new ArrayList<>();
+            for (int current = last; current >= 0; ) {
+                path.add(tasks.get(current));
+                int next = -1;
+                for (int dependency : nodes.get(current).dependencies) {
+                    if (next < 0 || endAt[dependency] > endAt[next]) {
+                        next = dependency;
+                    }
+                }
+                current = next;
+            }
+            Collections.reverse(path);
+            return new Report(tasks, path, finish - startNanos);
+        }
+    }
+}
@@ -3,13 +3,20 @@ package com.example.threadlearning.concurrent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 /**
  * ConcurrentHashMap vs HashMap 并发安全性对比演示
@@ -22,6 +29,32 @@ public class ConcurrentMapDemo {
     private static final int THREAD_COUNT = 10;
     private static final int OPERATIONS_PER_THREAD = 1000;
 
+    // 热点计数压测参数
+    private static final int COUNTER_KEY_COUNT = 1000;
+    private static final int COUNTER_OPS_PER_THREAD = 200_000;
+
+    // 缓存压测参数：缓存容量为键空间的1%
+    private static final int CACHE_KEY_COUNT = 100_000;
+    private static final int CACHE_MAXIMUM_SIZE = 1_000;
+    private static final int CACHE_TRACE_LENGTH = 1_000_000;
+
+    // 读多写少压测参数
+    private static final int SNAPSHOT_KEY_COUNT = 10_000;
+    private static final int SNAPSHOT_OPS_PER_THREAD = 20_000;
+    // 每隔多少次读操作做一次完整遍历（模拟报表/导出类读者）
+    private static final int SNAPSHOT_SCAN_INTERVAL = 2_000;
+
+    // 热点键统计：跟踪Top-20，每64次访问采样1次，每采样10万次衰减一半
+    private static final int HEAVY_HITTER_CAPACITY = 20;
+    private static final int HEAVY_HITTER_SAMPLE_RATE = 64;
+    private static final long HEAVY_HITTER_DECAY_INTERVAL = 100_000;
+
+    /**
+     * 挂载了热点统计的共享Map，/concurrent-map/heavy-hitters 接口读取它的统计结果
+     */
+    private final HotKeyTrackingMap<String, Integer> trackedMap = new HotKeyTrackingMap<>(
+            new HeavyHitterTracker<>(HEAVY_HITTER_CAPACITY, HEAVY_HITTER_SAMPLE_RATE, HEAVY_HITTER_DECAY_INTERVAL));
+
     /**
      * 演示HashMap的线程不安全性
      */
@@ -193,6 +226,7 @@ public class ConcurrentMapDemo {
 
     /**
      * 性能对比测试
+     * 计时包含线程池创建和等待，只用于直观演示；严格的对比见 benchmark.ConcurrentMapBenchmark（mvn -Pbenchmarks）
      */
     public void performanceComparison() {
         log.info("\n=== HashMap vs ConcurrentHashMap 性能对比 ===");
@@ -345,4 +379,539 @@ public class ConcurrentMapDemo {
             executor.shutdown();
         }
     }
+
+    /**
+     * 演示StripedCounterMap：热点键计数场景下替代 ConcurrentHashMap&lt;String, AtomicInteger&gt;
+     */
+    public void demonstrateStripedCounterMap() {
+        log.info("\n=== StripedCounterMap热点计数演示 ===");
+
+        // 1. 基本用法：递增、快照、周期性刷出
+        StripedCounterMap<String> counterMap = new StripedCounterMap<>();
+        runCounterWorkload(key -> counterMap.increment(key), "counter-", 5, 100);
+        log.info("计数快照: {}", counterMap.snapshot());
+        log.info("计数总和: {} (预期 {})", counterMap.total(), THREAD_COUNT * 100);
+
+        Map<String, Long> flushed = counterMap.drain();
+        log.info("刷出并清零: {}", flushed);
+        log.info("清零后总和: {}", counterMap.total());
+
+        // 2. Zipfian热点分布下的性能对比
+        compareCounterThroughput();
+    }
+
+    /**
+     * Zipfian分布下三种计数写法的吞吐量对比
+     */
+    private void compareCounterThroughput() {
+        log.info("\n--- Zipfian热点分布计数性能对比 (theta={}, 键数={}, 线程数={}) ---",
+                ZipfianGenerator.DEFAULT_THETA, COUNTER_KEY_COUNT, THREAD_COUNT);
+
+        String[] keys = new String[COUNTER_KEY_COUNT];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "counter-" + i;
+        }
+        // 访问序列提前生成，压测循环里只剩下计数操作本身
+        ZipfianGenerator zipfian = new ZipfianGenerator(COUNTER_KEY_COUNT);
+        int[][] traces = new int[THREAD_COUNT][];
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            traces[i] = zipfian.generate(COUNTER_OPS_PER_THREAD);
+        }
+
+        final int warmupRounds = 2;
+        final int testRounds = 3;
+        long computeTotal = 0;
+        long atomicTotal = 0;
+        long stripedTotal = 0;
+
+        for (int round = 0; round < warmupRounds + testRounds; round++) {
+            ConcurrentHashMap<String, AtomicInteger> computeMap = new ConcurrentHashMap<>();
+            long computeTime = timeTraceWorkload(keys, traces, key ->
+                    computeMap.compute(key, (k, v) -> {
+                        if (v == null) {
+                            return new AtomicInteger(1);
+                        }
+                        v.incrementAndGet();
+                        return v;
+                    }));
+
+            ConcurrentHashMap<String, AtomicInteger> atomicMap = new ConcurrentHashMap<>();
+            long atomicTime = timeTraceWorkload(keys, traces, key ->
+                    atomicMap.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet());
+
+            StripedCounterMap<String> stripedMap = new StripedCounterMap<>();
+            long stripedTime = timeTraceWorkload(keys, traces, stripedMap::increment);
+
+            if (round >= warmupRounds) {
+                computeTotal += computeTime;
+                atomicTotal += atomicTime;
+                stripedTotal += stripedTime;
+                log.info("第 {} 轮: compute+AtomicInteger {} ms, computeIfAbsent+AtomicInteger {} ms, StripedCounterMap {} ms",
+                        round - warmupRounds + 1, computeTime / 1_000_000, atomicTime / 1_000_000, stripedTime / 1_000_000);
+            }
+        }
+
+        long totalOps = (long) THREAD_COUNT * COUNTER_OPS_PER_THREAD;
+        log.info("\n=== 计数性能测试结果 (每轮 {} 次递增) ===", totalOps);
+        log.info("compute + AtomicInteger:         {}", formatThroughput(totalOps, computeTotal / testRounds));
+        log.info("computeIfAbsent + AtomicInteger: {}", formatThroughput(totalOps, atomicTotal / testRounds));
+        log.info("StripedCounterMap(LongAdder):    {}", formatThroughput(totalOps, stripedTotal / testRounds));
+    }
+
+    /**
+     * 按预生成的访问序列执行计数，只统计所有线程从同时开跑到全部结束的时间（纳秒）
+     */
+    private long timeTraceWorkload(String[] keys, int[][] traces, Consumer<String> incrementer) {
+        int threadCount = traces.length;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch ready = new CountDownLatch(threadCount);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threadCount);
+
+        for (int i = 0; i < threadCount; i++) {
+            final int[] trace = traces[i];
+            executor.submit(() -> {
+                try {
+                    ready.countDown();
+                    start.await();
+                    for (int index : trace) {
+                        incrementer.accept(keys[index]);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        try {
+            ready.await();
+            long startTime = System.nanoTime();
+            start.countDown();
+            done.await();
+            return System.nanoTime() - startTime;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 多线程轮流对 prefix-0 ~ prefix-(keyCount-1) 计数
+     */
+    private void runCounterWorkload(Consumer<String> incrementer, String prefix, int keyCount, int opsPerThread) {
+        CountDownLatch latch = new CountDownLatch(THREAD_COUNT);
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            executor.submit(() -> {
+                try {
+                    for (int j = 0; j < opsPerThread; j++) {
+                        incrementer.accept(prefix + (j % keyCount));
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 演示TinyLfuCache：有界缓存的命中率与吞吐量
+     */
+    public void demonstrateTinyLfuCache() {
+        log.info("\n=== W-TinyLFU有界缓存演示 ===");
+
+        // 1. 写后过期
+        TinyLfuCache<String, String> expiringCache = new TinyLfuCache<>(100, 200, 0, TimeUnit.MILLISECONDS);
+        expiringCache.put("session", "token-123");
+        log.info("写入后立即读取: {}", expiringCache.getIfPresent("session"));
+        try {
+            Thread.sleep(300);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        log.info("300ms后读取(expireAfterWrite=200ms): {}", expiringCache.getIfPresent("session"));
+        log.info("过期缓存统计: {}", expiringCache.stats());
+
+        // 2. 命中率：纯Zipfian访问 & Zipfian中夹杂顺序扫描
+        ZipfianGenerator zipfian = new ZipfianGenerator(CACHE_KEY_COUNT);
+        int[] zipfTrace = zipfian.generate(CACHE_TRACE_LENGTH);
+        int[] scanTrace = withScans(zipfian.generate(CACHE_TRACE_LENGTH), 100_000, 5_000);
+        compareHitRatio("Zipfian(0.99)", zipfTrace);
+        compareHitRatio("Zipfian + 周期性扫描", scanTrace);
+
+        // 3. 多线程吞吐量
+        compareCacheThroughput(zipfian);
+    }
+
+    /**
+     * 每隔interval次访问插入一段长度为scanLength的顺序扫描，且扫描的键都是冷键
+     * LRU会被扫描冲掉热点，TinyLFU的准入过滤会拒绝这些只出现一次的键
+     */
+    private int[] withScans(int[] trace, int interval, int scanLength) {
+        int[] result = trace.clone();
+        int scanKey = CACHE_KEY_COUNT / 2;
+        for (int start = interval; start + scanLength <= result.length; start += interval) {
+            for (int i = 0; i < scanLength; i++) {
+                result[start + i] = scanKey++ % CACHE_KEY_COUNT;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 单线程回放访问序列，比较TinyLFU和LRU的命中率
+     */
+    private void compareHitRatio(String traceName, int[] trace) {
+        TinyLfuCache<Integer, Integer> tinyLfu = new TinyLfuCache<>(CACHE_MAXIMUM_SIZE);
+        Map<Integer, Integer> lru = newLruCache(CACHE_MAXIMUM_SIZE);
+        long lruHits = 0;
+
+        for (int key : trace) {
+            if (tinyLfu.getIfPresent(key) == null) {
+                tinyLfu.put(key, key);
+            }
+            if (lru.get(key) != null) {
+                lruHits++;
+            } else {
+                lru.put(key, key);
+            }
+        }
+
+        log.info("\n--- 命中率对比 [{}] 容量={}, 键空间={}, 访问次数={} ---",
+                traceName, CACHE_MAXIMUM_SIZE, CACHE_KEY_COUNT, trace.length);
+        log.info("W-TinyLFU: {}", tinyLfu.stats());
+        log.info("LRU:       hitRate={}", String.format("%.2f%%", lruHits * 100.0 / trace.length));
+    }
+
+    /**
+     * 多线程"读取，未命中则写入"的吞吐量对比
+     */
+    private void compareCacheThroughput(ZipfianGenerator zipfian) {
+        log.info("\n--- 缓存吞吐量对比 (线程数={}, 每线程访问{}次) ---", THREAD_COUNT, COUNTER_OPS_PER_THREAD);
+
+        String[] keys = new String[CACHE_KEY_COUNT];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key-" + i;
+        }
+        int[][] traces = new int[THREAD_COUNT][];
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            traces[i] = zipfian.generate(COUNTER_OPS_PER_THREAD);
+        }
+        long totalOps = (long) THREAD_COUNT * COUNTER_OPS_PER_THREAD;
+
+        for (int round = 0; round < 3; round++) {
+            TinyLfuCache<String, String> tinyLfu = new TinyLfuCache<>(CACHE_MAXIMUM_SIZE);
+            long tinyLfuTime = timeTraceWorkload(keys, traces, key -> {
+                if (tinyLfu.getIfPresent(key) == null) {
+                    tinyLfu.put(key, key);
+                }
+            });
+
+            Map<String, String> lru = Collections.synchronizedMap(newLruCache(CACHE_MAXIMUM_SIZE));
+            long lruTime = timeTraceWorkload(keys, traces, key -> {
+                if (lru.get(key) == null) {
+                    lru.put(key, key);
+                }
+            });
+
+            ConcurrentHashMap<String, String> unbounded = new ConcurrentHashMap<>();
+            long unboundedTime = timeTraceWorkload(keys, traces, key -> {
+                if (unbounded.get(key) == null) {
+                    unbounded.put(key, key);
+                }
+            });
+
+            // 第一轮作为预热不输出
+            if (round > 0) {
+                log.info("第 {} 轮:", round);
+                log.info("  W-TinyLFU:                {} | {}", formatThroughput(totalOps, tinyLfuTime), tinyLfu.stats());
+                log.info("  synchronized LRU:         {}", formatThroughput(totalOps, lruTime));
+                log.info("  ConcurrentHashMap(无界):  {} | 条目数={}", formatThroughput(totalOps, unboundedTime), unbounded.size());
+            }
+        }
+    }
+
+    /**
+     * 基于LinkedHashMap访问顺序的LRU缓存，作为对照组
+     */
+    private <K, V> Map<K, V> newLruCache(int maximumSize) {
+        return new LinkedHashMap<>(maximumSize * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * 演示VersionedMap：遍历期间并发写入也不会抛ConcurrentModificationException
+     */
+    public void demonstrateVersionedMap() {
+        log.info("\n=== VersionedMap快照遍历演示 ===");
+
+        VersionedMap<String, Integer> versionedMap = new VersionedMap<>();
+        for (int i = 0; i < 100; i++) {
+            versionedMap.put("key-" + i, i);
+        }
+
+        // 与demonstrateConcurrentModificationException相同的读写节奏
+        Thread readerThread = new Thread(() -> {
+            for (int round = 0; round < 5; round++) {
+                VersionedMap.Snapshot<String, Integer> snapshot = versionedMap.snapshot();
+                int count = 0;
+                long sum = 0;
+                for (Map.Entry<String, Integer> entry : snapshot.asMap().entrySet()) {
+                    count++;
+                    sum += entry.getValue();
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                log.info("第{}次遍历完成: 快照版本={}, 快照大小={}, 遍历条目数={}, 值之和={}, 此时最新版本={}",
+                        round + 1, snapshot.getVersion(), snapshot.size(), count, sum, versionedMap.version());
+            }
+        }, "VersionedMap-Reader");
+
+        Thread writerThread = new Thread(() -> {
+            for (int i = 100; i < 200; i++) {
+                versionedMap.put("new-key-" + i, i);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }, "VersionedMap-Writer");
+
+        readerThread.start();
+        writerThread.start();
+        try {
+            readerThread.join();
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        log.info("✅ 遍历过程中没有发生ConcurrentModificationException，最终大小: {}", versionedMap.size());
+
+        compareSnapshotMaps(99);
+        compareSnapshotMaps(90);
+    }
+
+    /**
+     * 按给定读比例对比三种结构
+     * 读操作：单键查询，每SNAPSHOT_SCAN_INTERVAL次读做一次完整遍历；写操作：随机键写入
+     */
+    private void compareSnapshotMaps(int readPercent) {
+        log.info("\n--- 读多写少性能对比 (读/写={}/{}, 键数={}, 线程数={}) ---",
+                readPercent, 100 - readPercent, SNAPSHOT_KEY_COUNT, THREAD_COUNT);
+
+        String[] keys = new String[SNAPSHOT_KEY_COUNT];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key-" + i;
+        }
+        long totalOps = (long) THREAD_COUNT * SNAPSHOT_OPS_PER_THREAD;
+
+        for (int round = 0; round < 3; round++) {
+            // ConcurrentHashMap：遍历是弱一致的，不是时间点快照，作为吞吐量上限参考
+            ConcurrentHashMap<String, Integer> chm = new ConcurrentHashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                chm.put(keys[i], i);
+            }
+            long chmTime = timeMixedWorkload(readPercent,
+                    index -> chm.get(keys[index]),
+                    index -> chm.put(keys[index], index),
+                    () -> sumValues(chm));
+
+            // copy-on-write：写时整表复制，读者拿到的引用就是一致快照
+            Map<String, Integer>[] cowHolder = newCopyOnWriteHolder(chm);
+            Object cowLock = new Object();
+            long cowTime = timeMixedWorkload(readPercent,
+                    index -> cowHolder[0].get(keys[index]),
+                    index -> {
+                        synchronized (cowLock) {
+                            Map<String, Integer> copy = new HashMap<>(cowHolder[0]);
+                            copy.put(keys[index], index);
+                            cowHolder[0] = Collections.unmodifiableMap(copy);
+                        }
+                    },
+                    () -> sumValues(cowHolder[0]));
+
+            // VersionedMap：写时只复制HAMT路径，快照O(1)
+            VersionedMap<String, Integer> versioned = new VersionedMap<>();
+            versioned.putAll(chm);
+            long versionedTime = timeMixedWorkload(readPercent,
+                    index -> versioned.get(keys[index]),
+                    index -> versioned.put(keys[index], index),
+                    () -> sumValues(versioned.snapshot().asMap()));
+
+            if (round > 0) {
+                log.info("第 {} 轮:", round);
+                log.info("  ConcurrentHashMap(弱一致遍历): {}", formatThroughput(totalOps, chmTime));
+                log.info("  Copy-On-Write HashMap:         {}", formatThroughput(totalOps, cowTime));
+                log.info("  VersionedMap(HAMT快照):        {}", formatThroughput(totalOps, versionedTime));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Integer>[] newCopyOnWriteHolder(Map<String, Integer> initial) {
+        // 数组元素只在cowLock内写入；读线程读到的可能是旧引用，但引用指向的Map本身不可变
+        Map<String, Integer>[] holder = new Map[1];
+        holder[0] = Collections.unmodifiableMap(new HashMap<>(initial));
+        return holder;
+    }
+
+    private long sumValues(Map<String, Integer> map) {
+        long sum = 0;
+        for (Integer value : map.values()) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * 多线程执行读写混合负载，返回总耗时（纳秒）
+     */
+    private long timeMixedWorkload(int readPercent, IntConsumer reader, IntConsumer writer, Runnable scanner) {
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        CountDownLatch ready = new CountDownLatch(THREAD_COUNT);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREAD_COUNT);
+
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            executor.submit(() -> {
+                try {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    ready.countDown();
+                    start.await();
+                    int reads = 0;
+                    for (int j = 0; j < SNAPSHOT_OPS_PER_THREAD; j++) {
+                        int index = random.nextInt(SNAPSHOT_KEY_COUNT);
+                        if (random.nextInt(100) < readPercent) {
+                            if (++reads % SNAPSHOT_SCAN_INTERVAL == 0) {
+                                scanner.run();
+                            } else {
+                                reader.accept(index);
+                            }
+                        } else {
+                            writer.accept(index);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        try {
+            ready.await();
+            long startTime = System.nanoTime();
+            start.countDown();
+            done.await();
+            return System.nanoTime() - startTime;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 演示热点键识别：Zipfian访问打到共享Map上，用Count-Min Sketch找出Top-K热点
+     */
+    public void demonstrateHeavyHitterDetection() {
+        log.info("\n=== 热点键识别演示 (采样率=1/{}, Top-{}) ===", HEAVY_HITTER_SAMPLE_RATE, HEAVY_HITTER_CAPACITY);
+
+        String[] keys = new String[COUNTER_KEY_COUNT];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key-" + i;
+            trackedMap.put(keys[i], i);
+        }
+        ZipfianGenerator zipfian = new ZipfianGenerator(COUNTER_KEY_COUNT);
+        int[][] traces = new int[THREAD_COUNT][];
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            traces[i] = zipfian.generate(COUNTER_OPS_PER_THREAD);
+        }
+
+        // 1. 在共享Map上跑一遍负载，输出识别出的热点（下标越小越热，应当排在前面）
+        timeTraceWorkload(keys, traces, key -> trackedMap.merge(key, 1, Integer::sum));
+        log.info("采样次数: {}", trackedMap.getTracker().getSampledCount());
+        log.info("当前热点: {}", getHeavyHitters(10));
+
+        // 2. 统计开销：与不带统计的ConcurrentHashMap对比读多写少负载的吞吐量
+        // 前两轮用于JIT预热，不输出
+        long totalOps = (long) THREAD_COUNT * COUNTER_OPS_PER_THREAD;
+        for (int round = 0; round < 5; round++) {
+            ConcurrentHashMap<String, Integer> plain = new ConcurrentHashMap<>(trackedMap);
+            long plainTime = timeTraceWorkload(keys, traces, key -> readMostly(plain, key));
+
+            HotKeyTrackingMap<String, Integer> sampled = new HotKeyTrackingMap<>(
+                    new HeavyHitterTracker<>(HEAVY_HITTER_CAPACITY, HEAVY_HITTER_SAMPLE_RATE, HEAVY_HITTER_DECAY_INTERVAL));
+            sampled.putAll(plain);
+            long sampledTime = timeTraceWorkload(keys, traces, key -> readMostly(sampled, key));
+
+            HotKeyTrackingMap<String, Integer> unsampled = new HotKeyTrackingMap<>(
+                    new HeavyHitterTracker<>(HEAVY_HITTER_CAPACITY, 1, HEAVY_HITTER_DECAY_INTERVAL));
+            unsampled.putAll(plain);
+            long unsampledTime = timeTraceWorkload(keys, traces, key -> readMostly(unsampled, key));
+
+            if (round >= 2) {
+                log.info("第 {} 轮:", round - 1);
+                log.info("  ConcurrentHashMap:          {}", formatThroughput(totalOps, plainTime));
+                log.info("  热点统计(采样1/{}):         {} 开销 {}", HEAVY_HITTER_SAMPLE_RATE,
+                        formatThroughput(totalOps, sampledTime), formatOverhead(plainTime, sampledTime));
+                log.info("  热点统计(不采样):           {} 开销 {}",
+                        formatThroughput(totalOps, unsampledTime), formatOverhead(plainTime, unsampledTime));
+            }
+        }
+    }
+
+    /**
+     * 共享Map上当前识别出的热点键
+     */
+    public List<HeavyHitterTracker.HeavyHitter> getHeavyHitters(int limit) {
+        return trackedMap.getTracker().topK(limit);
+    }
+
+    /**
+     * 9读1写
+     */
+    private void readMostly(Map<String, Integer> map, String key) {
+        if (ThreadLocalRandom.current().nextInt(10) == 0) {
+            map.put(key, 0);
+        } else {
+            map.get(key);
+        }
+    }
+
+    private String formatOverhead(long baselineNanos, long nanos) {
+        return String.format("%+.2f%%", (nanos - baselineNanos) * 100.0 / baselineNanos);
+    }
+
+    private String formatThroughput(long operations, long nanos) {
+        if (nanos <= 0) {
+            return "N/A";
+        }
+        return String.format("%.2f ms, %.2f Mops/s", nanos / 1_000_000.0, operations * 1000.0 / nanos);
+    }
 }
\ No newline at end of file
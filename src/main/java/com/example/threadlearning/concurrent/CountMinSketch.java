@@ -0,0 +1,94 @@
+package com.example.threadlearning.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁Count-Min Sketch
+ *
+ * depth行 × width列的计数矩阵，每个键在每一行映射到一列，计数时每行各自原子加，
+ * 估算时取各行的最小值。估计值只会偏大不会偏小，误差上界约为 总计数 × e / width。
+ *
+ * 所有计数器放在一个AtomicLongArray里，递增是普通的getAndAdd，不需要任何锁；
+ * 与FrequencySketch（4位计数、只在锁内使用）不同，这里的计数是64位的，适合做精确一些的热点统计。
+ */
+public class CountMinSketch {
+
+    private static final long[] SEEDS = {
+            0x9e3779b97f4a7c15L, 0xbf58476d1ce4e5b9L, 0x94d049bb133111ebL, 0xd6e8feb86659fd93L,
+            0xa0761d6478bd642fL, 0xe7037ed1a0b428dbL, 0x8ebc6af09c88c6e3L, 0x589965cc75374cc3L
+    };
+
+    private final AtomicLongArray counters;
+    private final int depth;
+    private final int width;
+    private final int widthMask;
+
+    /**
+     * @param depth 行数（哈希函数个数），1~8
+     * @param width 每行的列数，会向上取整为2的幂
+     */
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || depth > SEEDS.length) {
+            throw new IllegalArgumentException("depth必须在1~" + SEEDS.length + "之间: " + depth);
+        }
+        if (width < 1) {
+            throw new IllegalArgumentException("width必须大于0: " + width);
+        }
+        this.depth = depth;
+        this.width = width == 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+        this.widthMask = this.width - 1;
+        this.counters = new AtomicLongArray(depth * this.width);
+    }
+
+    /**
+     * 计数并返回加完之后的估计值
+     */
+    public long add(Object key, long count) {
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            long value = counters.addAndGet(indexOf(hash, row), count);
+            estimate = Math.min(estimate, value);
+        }
+        return estimate;
+    }
+
+    /**
+     * 估算键的计数
+     */
+    public long estimate(Object key) {
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(indexOf(hash, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * 所有计数减半，用于让历史热点随时间衰减
+     * 与并发递增交错时可能丢失少量递增，这对热点识别可以接受
+     */
+    public void halve() {
+        for (int i = 0; i < counters.length(); i++) {
+            long value;
+            do {
+                value = counters.get(i);
+            } while (value != 0 && !counters.compareAndSet(i, value, value >>> 1));
+        }
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) & (SEEDS.length - 1)];
+        h ^= h >>> 29;
+        return row * width + ((int) h & widthMask);
+    }
+}
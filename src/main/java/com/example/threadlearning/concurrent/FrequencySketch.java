@@ -0,0 +1,106 @@
+package com.example.threadlearning.concurrent;
+
+/**
+ * TinyLFU使用的访问频率估算器（4位计数的Count-Min Sketch）
+ *
+ * 每个long拆成16个4位计数器，计数上限15；每个键映射到4个计数器，取最小值作为频率估计。
+ * 累计递增次数达到采样窗口（10倍最大容量）后所有计数器减半，让旧热点逐渐"冷却"。
+ *
+ * 注意：本类不是线程安全的，只在TinyLfuCache持有淘汰锁时调用，
+ * 读操作的频率记录先进入读缓冲区，再批量回放到这里。
+ */
+class FrequencySketch {
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(long maximumSize) {
+        int size = tableSizeFor((int) Math.min(Math.max(maximumSize, 16), 1 << 30));
+        this.table = new long[size];
+        this.tableMask = size - 1;
+        this.sampleSize = (int) Math.min(10L * Math.max(maximumSize, 16), Integer.MAX_VALUE);
+    }
+
+    /**
+     * 估算键的访问频率，范围[0, 15]
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int offset = counterOffset(hash, i);
+            int count = (int) ((table[index] >>> offset) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 记录一次访问，4个计数器各自加1（已经是15的不再增加）
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), counterOffset(hash, i));
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int offset) {
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 所有计数器减半（老化），奇数计数减半时的舍入误差从additions里扣除
+     */
+    private void reset() {
+        int oddCount = 0;
+        for (int i = 0; i < table.length; i++) {
+            oddCount += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = (additions - (oddCount >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int hash, int depth) {
+        long h = (hash + SEEDS[depth]) * SEEDS[depth];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    /**
+     * 4个计数器分别使用long里不同的4位段：depth决定高2位，hash决定低2位
+     */
+    private int counterOffset(int hash, int depth) {
+        int slot = (depth << 2) + ((hash >>> (depth << 3)) & 3);
+        return slot << 2;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int tableSizeFor(int n) {
+        int size = Integer.highestOneBit(n - 1) << 1;
+        return Math.max(size, 16);
+    }
+}
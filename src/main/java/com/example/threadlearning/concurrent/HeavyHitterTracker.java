@@ -0,0 +1,182 @@
+package com.example.threadlearning.concurrent;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 热点键（Heavy Hitter）识别器：Count-Min Sketch + Top-K候选集
+ *
+ * 记录路径：
+ * 1. 按1/sampleRate的概率采样，未采中的访问只花一次ThreadLocalRandom调用
+ * 2. 采中后在CountMinSketch上无锁计数
+ * 3. 已经是候选者的键只做一次ConcurrentHashMap.get；新键的估计值超过准入门槛才加入候选集
+ * 4. 候选集超过2K时，抢到tryLock的线程按最新估计值裁剪回K个并更新门槛，抢不到的线程直接返回
+ *
+ * 每采样decayInterval次，所有计数减半，让"当前"的热点浮上来，历史热点逐渐退出。
+ */
+public class HeavyHitterTracker<K> {
+
+    private final CountMinSketch sketch;
+    private final int capacity;
+    private final int sampleRate;
+    private final long decayInterval;
+
+    private final ConcurrentHashMap<K, Boolean> candidates = new ConcurrentHashMap<>();
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+    private final AtomicLong sampledCount = new AtomicLong();
+    // 与sketch同步衰减的采样总数，用于计算占比
+    private final AtomicLong windowCount = new AtomicLong();
+    private volatile long admissionThreshold;
+
+    /**
+     * @param capacity      需要跟踪的热点数量K
+     * @param sampleRate    采样率的倒数，1表示每次访问都记录，64表示平均每64次记录1次
+     * @param decayInterval 每采样多少次做一次衰减，0表示不衰减
+     */
+    public HeavyHitterTracker(int capacity, int sampleRate, long decayInterval) {
+        if (capacity <= 0 || sampleRate <= 0 || decayInterval < 0) {
+            throw new IllegalArgumentException("capacity、sampleRate必须大于0，decayInterval不能为负数");
+        }
+        this.capacity = capacity;
+        this.sampleRate = sampleRate;
+        this.decayInterval = decayInterval;
+        // 宽度取候选数的64倍，误差相对热点计数可以忽略
+        this.sketch = new CountMinSketch(4, Math.max(1024, capacity * 64));
+    }
+
+    /**
+     * 记录一次对key的访问
+     */
+    public void record(K key) {
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+        long estimate = sketch.add(key, 1);
+        long sampled = sampledCount.incrementAndGet();
+        windowCount.incrementAndGet();
+
+        if (!candidates.containsKey(key)
+                && (candidates.size() < capacity || estimate > admissionThreshold)) {
+            candidates.putIfAbsent(key, Boolean.TRUE);
+            if (candidates.size() > capacity * 2) {
+                prune();
+            }
+        }
+        if (decayInterval > 0 && sampled % decayInterval == 0) {
+            decay();
+        }
+    }
+
+    /**
+     * 当前估计频率最高的limit个键，按估计访问次数降序排列
+     *
+     * @throws IllegalArgumentException limit小于1
+     */
+    public List<HeavyHitter> topK(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit必须大于0: " + limit);
+        }
+        List<HeavyHitter> result = new ArrayList<>(candidates.size());
+        long total = Math.max(1, windowCount.get());
+        for (K key : candidates.keySet()) {
+            long estimate = sketch.estimate(key);
+            result.add(new HeavyHitter(String.valueOf(key), estimate * sampleRate, (double) estimate / total));
+        }
+        result.sort(Comparator.comparingLong(HeavyHitter::getEstimatedCount).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * 估算某个键的访问次数（已按采样率放大）
+     */
+    public long estimate(K key) {
+        return sketch.estimate(key) * sampleRate;
+    }
+
+    public long getSampledCount() {
+        return sampledCount.get();
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * 按最新估计值把候选集裁剪回capacity个，并把门槛设为留下来的最小估计值
+     */
+    private void prune() {
+        if (!maintenanceLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Map.Entry<K, Long>> ranked = new ArrayList<>(candidates.size());
+            for (K key : candidates.keySet()) {
+                ranked.add(Map.entry(key, sketch.estimate(key)));
+            }
+            ranked.sort(Map.Entry.<K, Long>comparingByValue().reversed());
+            for (int i = capacity; i < ranked.size(); i++) {
+                candidates.remove(ranked.get(i).getKey());
+            }
+            admissionThreshold = ranked.get(Math.min(capacity, ranked.size()) - 1).getValue();
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    private void decay() {
+        if (!maintenanceLock.tryLock()) {
+            return;
+        }
+        try {
+            sketch.halve();
+            windowCount.getAndUpdate(count -> count >>> 1);
+            admissionThreshold >>>= 1;
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * 热点键及其估计频率
+     */
+    public static final class HeavyHitter {
+        private final String key;
+        private final long estimatedCount;
+        private final double share;
+
+        HeavyHitter(String key, long estimatedCount, double share) {
+            this.key = key;
+            this.estimatedCount = estimatedCount;
+            this.share = share;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * 估计访问次数（已按采样率放大）
+         */
+        public long getEstimatedCount() {
+            return estimatedCount;
+        }
+
+        /**
+         * 占当前统计窗口内访问总数的比例
+         */
+        public double getShare() {
+            return share;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s=%d(%.2f%%)", key, estimatedCount, share * 100);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.threadlearning.concurrent;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 带热点键统计的ConcurrentHashMap
+ * 在常用的单键读写操作前把键交给HeavyHitterTracker采样记录，其余行为与ConcurrentHashMap完全一致，
+ * 可以直接替换现有的ConcurrentHashMap字段，让热点竞争变得"看得见"
+ */
+public class HotKeyTrackingMap<K, V> extends ConcurrentHashMap<K, V> {
+
+    private final transient HeavyHitterTracker<K> tracker;
+
+    public HotKeyTrackingMap(HeavyHitterTracker<K> tracker) {
+        this.tracker = tracker;
+    }
+
+    public HeavyHitterTracker<K> getTracker() {
+        return tracker;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        // 只有K类型的键才可能命中，类型不符时ConcurrentHashMap本身也只会返回null
+        tracker.record((K) key);
+        return super.get(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        tracker.record(key);
+        return super.put(key, value);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        tracker.record(key);
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        tracker.record((K) key);
+        return super.remove(key);
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        tracker.record(key);
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        tracker.record(key);
+        return super.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        tracker.record(key);
+        return super.compute(key, remappingFunction);
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        tracker.record(key);
+        return super.merge(key, value, remappingFunction);
+    }
+}
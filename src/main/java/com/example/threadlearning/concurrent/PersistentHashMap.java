@@ -0,0 +1,384 @@
+package com.example.threadlearning.concurrent;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 不可变的持久化哈希Map（HAMT，Hash Array Mapped Trie）
+ *
+ * 哈希值每5位作为一层的下标，每个节点用32位bitmap记录哪些槽位有数据，数组只存放实际存在的槽位。
+ * plus/minus不修改原Map，而是只复制从根到目标叶子路径上的节点（最多7层），其余子树与旧版本共享，
+ * 因此每次写入的复制代价是O(log32 n)，而不是copy-on-write的O(n)。
+ *
+ * 对象一旦构造完成就不会再变化，可以在任意线程间自由传递和并发遍历，不会出现ConcurrentModificationException。
+ * 不允许null键和null值（null在节点数组里用来标记子节点）。
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * 把普通Map一次性转换为PersistentHashMap
+     */
+    public static <K, V> PersistentHashMap<K, V> copyOf(Map<? extends K, ? extends V> source) {
+        PersistentHashMap<K, V> result = empty();
+        for (Entry<? extends K, ? extends V> entry : source.entrySet()) {
+            result = result.plus(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * 返回包含新映射的Map，原Map保持不变；值未变化时直接返回this
+     */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key和value都不能为null");
+        }
+        boolean[] added = new boolean[1];
+        Node base = root == null ? BitmapNode.EMPTY : root;
+        Node newRoot = base.assoc(0, hash(key), key, value, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * 返回删除了key的Map，原Map保持不变；key不存在时直接返回this
+     */
+    public PersistentHashMap<K, V> minus(Object key) {
+        if (key == null || root == null) {
+            return this;
+        }
+        Node newRoot = root.without(0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null || root == null) {
+            return null;
+        }
+        return (V) root.find(0, hash(key), key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator<>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    // ==================== Trie节点 ====================
+
+    /**
+     * 节点数组统一按[key0, value0, key1, value1, ...]排列；
+     * key为null时对应的value是子节点
+     */
+    private interface Node {
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added);
+
+        Node without(int shift, int hash, Object key);
+
+        Object find(int shift, int hash, Object key);
+
+        Object[] array();
+    }
+
+    private static final class BitmapNode implements Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        public Object[] array() {
+            return array;
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int idx = index(bit);
+            Object keyOrNull = array[2 * idx];
+            Object valueOrNode = array[2 * idx + 1];
+            if (keyOrNull == null) {
+                return ((Node) valueOrNode).find(shift + 5, hash, key);
+            }
+            return key.equals(keyOrNull) ? valueOrNode : null;
+        }
+
+        @Override
+        public Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bitpos(hash, shift);
+            int idx = index(bit);
+            if ((bitmap & bit) == 0) {
+                // 槽位为空：插入一对新的key/value
+                int n = Integer.bitCount(bitmap);
+                Object[] newArray = new Object[2 * (n + 1)];
+                System.arraycopy(array, 0, newArray, 0, 2 * idx);
+                newArray[2 * idx] = key;
+                newArray[2 * idx + 1] = value;
+                System.arraycopy(array, 2 * idx, newArray, 2 * (idx + 1), 2 * (n - idx));
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+
+            Object keyOrNull = array[2 * idx];
+            Object valueOrNode = array[2 * idx + 1];
+            if (keyOrNull == null) {
+                Node child = ((Node) valueOrNode).assoc(shift + 5, hash, key, value, added);
+                return child == valueOrNode ? this : withSlot(2 * idx + 1, child);
+            }
+            if (key.equals(keyOrNull)) {
+                return value == valueOrNode ? this : withSlot(2 * idx + 1, value);
+            }
+            // 同一槽位上是另一个key：下沉成子节点
+            added[0] = true;
+            Node child = createNode(shift + 5, keyOrNull, valueOrNode, hash, key, value);
+            Object[] newArray = array.clone();
+            newArray[2 * idx] = null;
+            newArray[2 * idx + 1] = child;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        @Override
+        public Node without(int shift, int hash, Object key) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int idx = index(bit);
+            Object keyOrNull = array[2 * idx];
+            Object valueOrNode = array[2 * idx + 1];
+            if (keyOrNull == null) {
+                Node child = ((Node) valueOrNode).without(shift + 5, hash, key);
+                if (child == valueOrNode) {
+                    return this;
+                }
+                if (child != null) {
+                    return withSlot(2 * idx + 1, child);
+                }
+                return bitmap == bit ? null : removePair(bit, idx);
+            }
+            if (key.equals(keyOrNull)) {
+                return bitmap == bit ? null : removePair(bit, idx);
+            }
+            return this;
+        }
+
+        private BitmapNode withSlot(int slot, Object value) {
+            Object[] newArray = array.clone();
+            newArray[slot] = value;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        private BitmapNode removePair(int bit, int idx) {
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, 2 * idx);
+            System.arraycopy(array, 2 * (idx + 1), newArray, 2 * idx, newArray.length - 2 * idx);
+            return new BitmapNode(bitmap ^ bit, newArray);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+    }
+
+    /**
+     * 哈希值完全相同的key放在同一个冲突节点里线性查找
+     */
+    private static final class CollisionNode implements Node {
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        public Object[] array() {
+            return array;
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int idx = findIndex(key);
+            return idx < 0 ? null : array[idx + 1];
+        }
+
+        @Override
+        public Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // 新key的哈希不同：用一个bitmap节点把当前冲突节点包起来再插入
+                Node wrapper = new BitmapNode(bitpos(this.hash, shift), new Object[]{null, this});
+                return wrapper.assoc(shift, hash, key, value, added);
+            }
+            int idx = findIndex(key);
+            if (idx >= 0) {
+                if (array[idx + 1] == value) {
+                    return this;
+                }
+                Object[] newArray = array.clone();
+                newArray[idx + 1] = value;
+                return new CollisionNode(hash, newArray);
+            }
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        public Node without(int shift, int hash, Object key) {
+            int idx = findIndex(key);
+            if (idx < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, idx);
+            System.arraycopy(array, idx + 2, newArray, idx, array.length - idx - 2);
+            return new CollisionNode(hash, newArray);
+        }
+
+        private int findIndex(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static Node createNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+        int hash1 = hash(key1);
+        if (hash1 == hash2) {
+            return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+        }
+        boolean[] added = new boolean[1];
+        return BitmapNode.EMPTY
+                .assoc(shift, hash1, key1, value1, added)
+                .assoc(shift, hash2, key2, value2, added);
+    }
+
+    private static int bitpos(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    /**
+     * 深度优先遍历，栈里保存每一层节点数组和当前位置
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+        private final Deque<Object[]> arrays = new ArrayDeque<>();
+        private final Deque<Integer> positions = new ArrayDeque<>();
+        private Entry<K, V> next;
+
+        EntryIterator(Node root) {
+            if (root != null) {
+                arrays.push(root.array());
+                positions.push(0);
+            }
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (!arrays.isEmpty()) {
+                Object[] array = arrays.peek();
+                int pos = positions.pop();
+                if (pos >= array.length) {
+                    arrays.pop();
+                    continue;
+                }
+                positions.push(pos + 2);
+                Object keyOrNull = array[pos];
+                Object valueOrNode = array[pos + 1];
+                if (keyOrNull == null) {
+                    arrays.push(((Node) valueOrNode).array());
+                    positions.push(0);
+                } else {
+                    next = new SimpleImmutableEntry<>((K) keyOrNull, (V) valueOrNode);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> result = next;
+            advance();
+            return result;
+        }
+    }
+}
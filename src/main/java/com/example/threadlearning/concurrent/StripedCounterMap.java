@@ -0,0 +1,129 @@
+package com.example.threadlearning.concurrent;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 高并发计数器Map
+ * 用于替代 ConcurrentHashMap&lt;String, AtomicInteger&gt; 的计数写法
+ *
+ * AtomicInteger在热点键上的问题：所有线程对同一个value做CAS，
+ * 同一条缓存行在各个核心之间来回失效，线程越多CAS失败重试越多。
+ * 这里的value换成LongAdder：竞争出现时自动分裂出多个Cell（每个Cell独占缓存行），
+ * 不同线程落在不同Cell上累加，读取时再把所有Cell求和。
+ *
+ * 特点：
+ * 1. 递增无锁：键已存在时只有一次get + Cell上的CAS，不会进入ConcurrentHashMap的桶锁
+ * 2. 快照读"足够一致"：单个键的值是调用时刻附近的累加结果，并发递增可能部分计入
+ * 3. 支持 reset-and-get，适合周期性把计数刷到监控系统或数据库
+ */
+public class StripedCounterMap<K> {
+
+    private final ConcurrentHashMap<K, LongAdder> counters;
+
+    public StripedCounterMap() {
+        this.counters = new ConcurrentHashMap<>();
+    }
+
+    public StripedCounterMap(int initialCapacity) {
+        this.counters = new ConcurrentHashMap<>(initialCapacity);
+    }
+
+    /**
+     * 计数加1
+     */
+    public void increment(K key) {
+        adderFor(key).increment();
+    }
+
+    /**
+     * 计数加delta
+     */
+    public void add(K key, long delta) {
+        adderFor(key).add(delta);
+    }
+
+    /**
+     * 读取单个键当前的计数，不存在时返回0
+     */
+    public long get(K key) {
+        LongAdder adder = counters.get(key);
+        return adder == null ? 0L : adder.sum();
+    }
+
+    /**
+     * 读取并清零单个键的计数
+     * 与并发递增同时发生时，递增要么计入本次返回值，要么留到下一次，不会丢失也不会重复
+     */
+    public long resetAndGet(K key) {
+        LongAdder adder = counters.get(key);
+        return adder == null ? 0L : adder.sumThenReset();
+    }
+
+    /**
+     * 所有键计数的快照
+     * 遍历过程中不加锁，返回的是弱一致视图：每个键的值取自遍历到它的那一刻
+     */
+    public Map<K, Long> snapshot() {
+        Map<K, Long> result = new HashMap<>(Math.max(16, counters.size() * 2));
+        counters.forEach((key, adder) -> result.put(key, adder.sum()));
+        return result;
+    }
+
+    /**
+     * 读取所有键的计数并清零，用于周期性刷出
+     * 计数为0的键不会出现在结果中；键本身保留，避免下一轮递增重新创建LongAdder
+     */
+    public Map<K, Long> drain() {
+        Map<K, Long> result = new HashMap<>(Math.max(16, counters.size() * 2));
+        counters.forEach((key, adder) -> {
+            long value = adder.sumThenReset();
+            if (value != 0) {
+                result.put(key, value);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 所有键计数之和
+     */
+    public long total() {
+        long sum = 0;
+        for (LongAdder adder : counters.values()) {
+            sum += adder.sum();
+        }
+        return sum;
+    }
+
+    /**
+     * 删除一个键，返回删除时的计数
+     */
+    public long remove(K key) {
+        LongAdder adder = counters.remove(key);
+        return adder == null ? 0L : adder.sum();
+    }
+
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(counters.keySet());
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * 先无锁get，命中时不会触碰桶锁；只有首次出现的键才走computeIfAbsent
+     */
+    private LongAdder adderFor(K key) {
+        LongAdder adder = counters.get(key);
+        if (adder == null) {
+            adder = counters.computeIfAbsent(key, k -> new LongAdder());
+        }
+        return adder;
+    }
+}
@@ -0,0 +1,701 @@
+package com.example.threadlearning.concurrent;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 基于ConcurrentHashMap的有界并发缓存，使用W-TinyLFU准入与淘汰策略
+ *
+ * 结构：
+ * 1. 数据存放在ConcurrentHashMap中，读操作只做一次无锁get
+ * 2. 淘汰策略由三段LRU队列组成：窗口区(1%) + 主区的试用段(probation)和保护段(protected, 主区的80%)
+ *    新条目先进入窗口区；被挤出窗口区的条目作为候选者，与试用段队头的受害者比较访问频率，频率高者留下
+ * 3. 访问频率由FrequencySketch估算，定期老化，只占用很少的内存
+ * 4. 读操作的"访问记录"先写入分段的有损环形缓冲区，缓冲区满时由抢到淘汰锁的线程批量回放，
+ *    因此读路径不加锁；缓冲区竞争激烈时直接丢弃记录，只影响策略精度，不影响正确性
+ * 5. 写操作（put/remove）在更新Map后短暂持有淘汰锁维护队列，写比读少得多，这里不再额外缓冲
+ *
+ * 支持写后过期(expireAfterWrite)和访问后过期(expireAfterAccess)，并统计命中、未命中、淘汰次数。
+ */
+public class TinyLfuCache<K, V> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final int READ_BUFFER_SIZE = 16;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int READ_BUFFER_STRIPES =
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) << 1;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data;
+    private final long maximumSize;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+
+    // 以下字段只在持有evictionLock时访问
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final AccessOrderDeque<K, V> windowDeque = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, V> probationDeque = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, V> protectedDeque = new AccessOrderDeque<>();
+    private final WriteOrderDeque<K, V> writeOrderDeque = new WriteOrderDeque<>();
+    private long windowSize;
+    private long protectedSize;
+    private long totalSize;
+
+    private final ReadBuffer<K, V>[] readBuffers;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+
+    public TinyLfuCache(long maximumSize) {
+        this(maximumSize, 0, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param maximumSize       最大条目数
+     * @param expireAfterWrite  写入后多久过期，0表示不过期
+     * @param expireAfterAccess 最后一次访问后多久过期，0表示不过期
+     * @param unit              过期时间单位
+     */
+    @SuppressWarnings("unchecked")
+    public TinyLfuCache(long maximumSize, long expireAfterWrite, long expireAfterAccess, TimeUnit unit) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize必须大于0: " + maximumSize);
+        }
+        if (expireAfterWrite < 0 || expireAfterAccess < 0) {
+            throw new IllegalArgumentException("过期时间不能为负数");
+        }
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = (long) ((maximumSize - windowMaximum) * 0.8);
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.expireAfterAccessNanos = unit.toNanos(expireAfterAccess);
+        this.data = new ConcurrentHashMap<>((int) Math.min(maximumSize, 1 << 20));
+        this.sketch = new FrequencySketch(maximumSize);
+        this.readBuffers = new ReadBuffer[READ_BUFFER_STRIPES];
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer<>();
+        }
+    }
+
+    /**
+     * 查询缓存，不存在或已过期时返回null
+     * 读路径：一次ConcurrentHashMap.get + 一次环形缓冲区写入，不获取任何锁
+     */
+    public V getIfPresent(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+        long now = System.nanoTime();
+        if (hasExpired(node, now)) {
+            missCount.increment();
+            removeExpired(node);
+            return null;
+        }
+        if (expireAfterAccessNanos > 0) {
+            node.accessTime = now;
+        }
+        hitCount.increment();
+        recordRead(node);
+        return node.value;
+    }
+
+    /**
+     * 查询缓存，未命中时用loader加载并放入缓存
+     * 同一个键的并发加载只会执行一次（加载在ConcurrentHashMap.compute内完成，同一个桶串行）
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        long now = System.nanoTime();
+        Node<K, V>[] holder = newNodeHolder();
+        Node<K, V> node = data.compute(key, (k, existing) -> {
+            if (existing != null && !hasExpired(existing, now)) {
+                return existing;
+            }
+            V loaded = loader.apply(k);
+            if (loaded == null) {
+                return existing;
+            }
+            holder[0] = new Node<>(k, loaded, now);
+            holder[1] = existing;
+            return holder[0];
+        });
+        if (holder[0] != null) {
+            afterWrite(holder[0], holder[1]);
+        } else if (node != null && !hasExpired(node, now)) {
+            recordRead(node);
+        } else {
+            return null;
+        }
+        return node.value;
+    }
+
+    /**
+     * 写入缓存，已存在时覆盖值并刷新写入时间
+     */
+    public void put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key和value都不能为null");
+        }
+        long now = System.nanoTime();
+        Node<K, V>[] holder = newNodeHolder();
+        // compute与淘汰线程的data.remove(key, node)在同一个桶锁上串行，不会把值写进已被淘汰的条目
+        Node<K, V> node = data.compute(key, (k, existing) -> {
+            if (existing == null || hasExpired(existing, now)) {
+                holder[0] = new Node<>(k, value, now);
+                holder[1] = existing;
+                return holder[0];
+            }
+            existing.value = value;
+            existing.writeTime = now;
+            existing.accessTime = now;
+            return existing;
+        });
+        if (holder[0] != null) {
+            afterWrite(holder[0], holder[1]);
+        } else {
+            afterUpdate(node);
+        }
+    }
+
+    /**
+     * 删除缓存条目
+     */
+    public V remove(K key) {
+        Node<K, V> node = data.remove(key);
+        if (node == null) {
+            return null;
+        }
+        node.retired = true;
+        evictionLock.lock();
+        try {
+            unlink(node);
+        } finally {
+            evictionLock.unlock();
+        }
+        return node.value;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            for (Node<K, V> node : data.values()) {
+                if (data.remove(node.key, node)) {
+                    node.retired = true;
+                    unlink(node);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 立即执行一次维护：回放读缓冲区、清理过期条目、淘汰超出容量的条目
+     */
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 当前条目数（可能包含尚未清理的过期条目）
+     */
+    public long size() {
+        return data.size();
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), expirationCount.sum());
+    }
+
+    // ==================== 读缓冲与维护 ====================
+
+    private void recordRead(Node<K, V> node) {
+        int index = (int) Thread.currentThread().getId() & (READ_BUFFER_STRIPES - 1);
+        if (readBuffers[index].offer(node) == ReadBuffer.FULL) {
+            // 缓冲区满：尝试抢锁回放，抢不到说明已有线程在做维护，直接返回
+            if (evictionLock.tryLock()) {
+                try {
+                    maintenance();
+                } finally {
+                    evictionLock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * 新条目进入窗口区；如果替换掉了一个已过期的旧条目，同时把旧条目从队列中摘除
+     */
+    private void afterWrite(Node<K, V> node, Node<K, V> replaced) {
+        evictionLock.lock();
+        try {
+            if (replaced != null) {
+                replaced.retired = true;
+                if (replaced.queue >= 0) {
+                    unlink(replaced);
+                    expirationCount.increment();
+                }
+            }
+            if (!node.retired && node.queue < 0) {
+                sketch.increment(node.key);
+                node.queue = WINDOW;
+                windowDeque.addLast(node);
+                writeOrderDeque.addLast(node);
+                windowSize++;
+                totalSize++;
+            }
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void afterUpdate(Node<K, V> node) {
+        evictionLock.lock();
+        try {
+            if (!node.retired && node.queue >= 0) {
+                onAccess(node);
+                writeOrderDeque.moveToBack(node);
+            }
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void maintenance() {
+        drainReadBuffers();
+        expireEntries();
+        evictEntries();
+    }
+
+    private void drainReadBuffers() {
+        for (ReadBuffer<K, V> buffer : readBuffers) {
+            buffer.drainTo(this::onAccess);
+        }
+    }
+
+    /**
+     * 回放一次访问：窗口区/保护段内移到队尾；试用段命中则晋升到保护段
+     */
+    private void onAccess(Node<K, V> node) {
+        if (node.retired || node.queue < 0) {
+            return;
+        }
+        sketch.increment(node.key);
+        switch (node.queue) {
+            case WINDOW -> windowDeque.moveToBack(node);
+            case PROBATION -> {
+                probationDeque.remove(node);
+                node.queue = PROTECTED;
+                protectedDeque.addLast(node);
+                protectedSize++;
+                // 保护段超出上限时，把最久未访问的条目降级回试用段
+                while (protectedSize > protectedMaximum) {
+                    Node<K, V> demoted = protectedDeque.pollFirst();
+                    if (demoted == null) {
+                        break;
+                    }
+                    protectedSize--;
+                    demoted.queue = PROBATION;
+                    probationDeque.addLast(demoted);
+                }
+            }
+            case PROTECTED -> protectedDeque.moveToBack(node);
+            default -> throw new IllegalStateException("未知队列: " + node.queue);
+        }
+    }
+
+    private void expireEntries() {
+        if (expireAfterWriteNanos <= 0 && expireAfterAccessNanos <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (expireAfterWriteNanos > 0) {
+            Node<K, V> node;
+            while ((node = writeOrderDeque.peekFirst()) != null && now - node.writeTime >= expireAfterWriteNanos) {
+                evictEntry(node, true);
+            }
+        }
+        if (expireAfterAccessNanos > 0) {
+            expireAccessOrder(windowDeque, now);
+            expireAccessOrder(probationDeque, now);
+            expireAccessOrder(protectedDeque, now);
+        }
+    }
+
+    private void expireAccessOrder(AccessOrderDeque<K, V> deque, long now) {
+        Node<K, V> node;
+        while ((node = deque.peekFirst()) != null && now - node.accessTime >= expireAfterAccessNanos) {
+            evictEntry(node, true);
+        }
+    }
+
+    /**
+     * W-TinyLFU淘汰：窗口区溢出的条目进入试用段队尾成为候选者，
+     * 总量超限时候选者与试用段队头（受害者）比较频率，输的一方被淘汰
+     */
+    private void evictEntries() {
+        Node<K, V> candidate = null;
+        while (windowSize > windowMaximum) {
+            Node<K, V> node = windowDeque.pollFirst();
+            if (node == null) {
+                break;
+            }
+            windowSize--;
+            node.queue = PROBATION;
+            probationDeque.addLast(node);
+            if (candidate == null) {
+                candidate = node;
+            }
+        }
+
+        while (totalSize > maximumSize) {
+            Node<K, V> victim = probationDeque.peekFirst();
+            if (victim == null) {
+                victim = protectedDeque.peekFirst();
+            }
+            if (victim == null) {
+                victim = windowDeque.peekFirst();
+            }
+            if (victim == null) {
+                break;
+            }
+            if (candidate == null || candidate == victim) {
+                if (candidate == victim) {
+                    candidate = candidate.next;
+                }
+                evictEntry(victim, false);
+                continue;
+            }
+            if (admit(candidate.key, victim.key)) {
+                evictEntry(victim, false);
+            } else {
+                Node<K, V> rejected = candidate;
+                candidate = candidate.next;
+                evictEntry(rejected, false);
+            }
+        }
+    }
+
+    /**
+     * TinyLFU准入判断：候选者频率更高才允许替换受害者
+     * 频率相同且较高时以很小概率放行，防止攻击者用哈希冲突把热点"钉死"在缓存里
+     */
+    private boolean admit(K candidateKey, K victimKey) {
+        int candidateFreq = sketch.frequency(candidateKey);
+        int victimFreq = sketch.frequency(victimKey);
+        if (candidateFreq > victimFreq) {
+            return true;
+        }
+        if (candidateFreq <= 5) {
+            return false;
+        }
+        return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    private void evictEntry(Node<K, V> node, boolean expired) {
+        data.remove(node.key, node);
+        node.retired = true;
+        unlink(node);
+        if (expired) {
+            expirationCount.increment();
+        } else {
+            evictionCount.increment();
+        }
+    }
+
+    private void removeExpired(Node<K, V> node) {
+        if (data.remove(node.key, node)) {
+            node.retired = true;
+            evictionLock.lock();
+            try {
+                if (node.queue >= 0) {
+                    unlink(node);
+                    expirationCount.increment();
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void unlink(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW -> {
+                windowDeque.remove(node);
+                windowSize--;
+            }
+            case PROBATION -> probationDeque.remove(node);
+            case PROTECTED -> {
+                protectedDeque.remove(node);
+                protectedSize--;
+            }
+            default -> {
+                return;
+            }
+        }
+        writeOrderDeque.remove(node);
+        node.queue = -1;
+        totalSize--;
+    }
+
+    private boolean hasExpired(Node<K, V> node, long now) {
+        return (expireAfterWriteNanos > 0 && now - node.writeTime >= expireAfterWriteNanos)
+                || (expireAfterAccessNanos > 0 && now - node.accessTime >= expireAfterAccessNanos);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V>[] newNodeHolder() {
+        return new Node[2];
+    }
+
+    // ==================== 内部数据结构 ====================
+
+    /**
+     * 缓存条目
+     * value/时间戳是volatile，读线程无锁读取；队列指针只在持有淘汰锁时修改
+     */
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        volatile long writeTime;
+        volatile long accessTime;
+        volatile boolean retired;
+
+        int queue = -1;
+        Node<K, V> prev;
+        Node<K, V> next;
+        Node<K, V> writePrev;
+        Node<K, V> writeNext;
+
+        Node(K key, V value, long now) {
+            this.key = key;
+            this.value = value;
+            this.writeTime = now;
+            this.accessTime = now;
+        }
+    }
+
+    /**
+     * 按访问顺序排列的侵入式双向链表（使用Node的prev/next）
+     */
+    private static final class AccessOrderDeque<K, V> {
+        private Node<K, V> head;
+        private Node<K, V> tail;
+
+        Node<K, V> peekFirst() {
+            return head;
+        }
+
+        Node<K, V> pollFirst() {
+            Node<K, V> first = head;
+            if (first != null) {
+                remove(first);
+            }
+            return first;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+    }
+
+    /**
+     * 按写入顺序排列的侵入式双向链表（使用Node的writePrev/writeNext），用于写后过期
+     */
+    private static final class WriteOrderDeque<K, V> {
+        private Node<K, V> head;
+        private Node<K, V> tail;
+
+        Node<K, V> peekFirst() {
+            return head;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.writePrev = tail;
+            node.writeNext = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.writeNext = node;
+            }
+            tail = node;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.writePrev == null) {
+                head = node.writeNext;
+            } else {
+                node.writePrev.writeNext = node.writeNext;
+            }
+            if (node.writeNext == null) {
+                tail = node.writePrev;
+            } else {
+                node.writeNext.writePrev = node.writePrev;
+            }
+            node.writePrev = null;
+            node.writeNext = null;
+        }
+    }
+
+    /**
+     * 有损的多生产者环形缓冲区
+     * 生产者CAS抢占写下标后发布元素；抢占失败或缓冲区已满时直接丢弃本次访问记录。
+     * 消费者（持有淘汰锁的线程）按顺序读取，遇到尚未发布的槽位就停止，下次再继续。
+     */
+    private static final class ReadBuffer<K, V> {
+        static final int SUCCESS = 0;
+        static final int FAILED = 1;
+        static final int FULL = 2;
+
+        private final AtomicLong writeCounter = new AtomicLong();
+        private final AtomicReferenceArray<Node<K, V>> buffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        private volatile long readCounter;
+
+        int offer(Node<K, V> node) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            if (tail - head >= READ_BUFFER_SIZE) {
+                return FULL;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet((int) (tail & READ_BUFFER_MASK), node);
+                return SUCCESS;
+            }
+            return FAILED;
+        }
+
+        void drainTo(Consumer<Node<K, V>> consumer) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            while (head < tail) {
+                int index = (int) (head & READ_BUFFER_MASK);
+                Node<K, V> node = buffer.get(index);
+                if (node == null) {
+                    break;
+                }
+                buffer.lazySet(index, null);
+                consumer.accept(node);
+                head++;
+            }
+            readCounter = head;
+        }
+    }
+
+    /**
+     * 缓存统计快照
+     */
+    public static final class CacheStats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long expirationCount;
+
+        CacheStats(long hitCount, long missCount, long evictionCount, long expirationCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.expirationCount = expirationCount;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public long getExpirationCount() {
+            return expirationCount;
+        }
+
+        public long getRequestCount() {
+            return hitCount + missCount;
+        }
+
+        public double getHitRate() {
+            long requests = getRequestCount();
+            return requests == 0 ? 1.0 : (double) hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("CacheStats{hits=%d, misses=%d, hitRate=%.2f%%, evictions=%d, expirations=%d}",
+                    hitCount, missCount, getHitRate() * 100, evictionCount, expirationCount);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.threadlearning.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 支持O(1)快照的版本化并发Map，适合读多写少的场景
+ *
+ * 内部只有一个指向"当前版本"的原子引用，每个版本是不可变的PersistentHashMap：
+ * 1. 读：直接读取当前版本，无锁
+ * 2. 快照：返回当前版本对象本身，O(1)且之后永远不会变化，可以放心长时间遍历
+ * 3. 写：基于当前版本构造新版本（HAMT路径复制，O(log32 n)），再CAS替换引用；
+ *    多个写线程并发时失败方重试，不会互相阻塞
+ *
+ * 与HashMap遍历时并发写入抛ConcurrentModificationException、
+ * 以及"每次读取都整表复制"的做法相比，读者拿到的始终是某个时间点上完整一致的数据。
+ */
+public class VersionedMap<K, V> {
+
+    private final AtomicReference<Snapshot<K, V>> current =
+            new AtomicReference<>(new Snapshot<>(PersistentHashMap.empty(), 0));
+
+    public V get(Object key) {
+        return current.get().map.get(key);
+    }
+
+    public boolean containsKey(Object key) {
+        return current.get().map.containsKey(key);
+    }
+
+    /**
+     * 写入映射，返回旧值
+     */
+    public V put(K key, V value) {
+        for (;;) {
+            Snapshot<K, V> snapshot = current.get();
+            PersistentHashMap<K, V> updated = snapshot.map.plus(key, value);
+            V previous = snapshot.map.get(key);
+            if (updated == snapshot.map || current.compareAndSet(snapshot, snapshot.next(updated))) {
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * key不存在时才写入，返回已存在的值或null
+     */
+    public V putIfAbsent(K key, V value) {
+        for (;;) {
+            Snapshot<K, V> snapshot = current.get();
+            V existing = snapshot.map.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            if (current.compareAndSet(snapshot, snapshot.next(snapshot.map.plus(key, value)))) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 删除映射，返回旧值
+     */
+    public V remove(Object key) {
+        for (;;) {
+            Snapshot<K, V> snapshot = current.get();
+            PersistentHashMap<K, V> updated = snapshot.map.minus(key);
+            if (updated == snapshot.map) {
+                return null;
+            }
+            V previous = snapshot.map.get(key);
+            if (current.compareAndSet(snapshot, snapshot.next(updated))) {
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * 批量写入，所有映射在同一个新版本里原子地可见
+     */
+    public void putAll(Map<? extends K, ? extends V> entries) {
+        for (;;) {
+            Snapshot<K, V> snapshot = current.get();
+            PersistentHashMap<K, V> updated = snapshot.map;
+            for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+                updated = updated.plus(entry.getKey(), entry.getValue());
+            }
+            if (updated == snapshot.map || current.compareAndSet(snapshot, snapshot.next(updated))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 获取当前时间点的不可变快照，O(1)
+     */
+    public Snapshot<K, V> snapshot() {
+        return current.get();
+    }
+
+    public int size() {
+        return current.get().map.size();
+    }
+
+    public long version() {
+        return current.get().version;
+    }
+
+    /**
+     * 某一版本的只读视图
+     */
+    public static final class Snapshot<K, V> {
+        private final PersistentHashMap<K, V> map;
+        private final long version;
+
+        private Snapshot(PersistentHashMap<K, V> map, long version) {
+            this.map = map;
+            this.version = version;
+        }
+
+        private Snapshot<K, V> next(PersistentHashMap<K, V> updated) {
+            return new Snapshot<>(updated, version + 1);
+        }
+
+        public V get(Object key) {
+            return map.get(key);
+        }
+
+        public int size() {
+            return map.size();
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * 以不可变Map的形式访问快照，put/remove会抛UnsupportedOperationException
+         */
+        public Map<K, V> asMap() {
+            return map;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.threadlearning.concurrent;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zipfian分布的键下标生成器
+ * 模拟真实业务中"少数热点键承载大部分访问"的场景，用于并发容器的压测
+ *
+ * 算法参考 Gray 等人的 "Quickly Generating Billion-Record Synthetic Databases"（YCSB同款），
+ * 构造时预先计算zeta常数，之后每次生成只需要一次随机数和少量浮点运算。
+ * 构造完成后对象不可变，随机源使用ThreadLocalRandom，因此可以被多个线程共享。
+ */
+public class ZipfianGenerator {
+
+    /**
+     * 常用的倾斜系数，0.99时前1%的键大约承载一半以上的访问
+     */
+    public static final double DEFAULT_THETA = 0.99;
+
+    private final int itemCount;
+    private final double theta;
+    private final double alpha;
+    private final double zetaN;
+    private final double eta;
+    private final double halfPowTheta;
+
+    public ZipfianGenerator(int itemCount) {
+        this(itemCount, DEFAULT_THETA);
+    }
+
+    public ZipfianGenerator(int itemCount, double theta) {
+        if (itemCount <= 0) {
+            throw new IllegalArgumentException("itemCount必须大于0: " + itemCount);
+        }
+        if (theta <= 0 || theta >= 1) {
+            throw new IllegalArgumentException("theta必须在(0, 1)区间内: " + theta);
+        }
+        this.itemCount = itemCount;
+        this.theta = theta;
+        this.alpha = 1.0 / (1.0 - theta);
+        this.zetaN = zeta(itemCount, theta);
+        double zeta2 = zeta(2, theta);
+        this.eta = (1 - Math.pow(2.0 / itemCount, 1 - theta)) / (1 - zeta2 / zetaN);
+        this.halfPowTheta = 1 + Math.pow(0.5, theta);
+    }
+
+    /**
+     * 生成下一个下标，范围[0, itemCount)，下标越小越热
+     */
+    public int nextInt() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        double uz = u * zetaN;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < halfPowTheta) {
+            return 1;
+        }
+        int index = (int) (itemCount * Math.pow(eta * u - eta + 1, alpha));
+        return Math.min(index, itemCount - 1);
+    }
+
+    /**
+     * 预先生成一段访问序列，压测时按下标循环读取，避免把随机数生成的开销算进被测操作里
+     */
+    public int[] generate(int length) {
+        int[] trace = new int[length];
+        for (int i = 0; i < length; i++) {
+            trace[i] = nextInt();
+        }
+        return trace;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public double getTheta() {
+        return theta;
+    }
+
+    private static double zeta(int n, double theta) {
+        double sum = 0;
+        for (int i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
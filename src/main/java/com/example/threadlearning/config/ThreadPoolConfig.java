@@ -1,5 +1,6 @@
 package com.example.threadlearning.config;
 
+import com.example.threadlearning.threadlocal.FastThreadLocalThreadFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -56,6 +57,25 @@ public class ThreadPoolConfig {
     @Value("${thread.pool.io.await-termination-seconds:60}")
     private int ioAwaitTerminationSeconds;
 
+    // 缓存加载线程池配置
+    @Value("${thread.pool.cache-loader.core-pool-size:4}")
+    private int cacheLoaderCorePoolSize;
+
+    @Value("${thread.pool.cache-loader.max-pool-size:8}")
+    private int cacheLoaderMaxPoolSize;
+
+    @Value("${thread.pool.cache-loader.queue-capacity:500}")
+    private int cacheLoaderQueueCapacity;
+
+    @Value("${thread.pool.cache-loader.keep-alive-seconds:60}")
+    private int cacheLoaderKeepAliveSeconds;
+
+    @Value("${thread.pool.cache-loader.thread-name-prefix:CacheLoader-}")
+    private String cacheLoaderThreadNamePrefix;
+
+    @Value("${thread.pool.cache-loader.await-termination-seconds:30}")
+    private int cacheLoaderAwaitTerminationSeconds;
+
     // 默认线程池配置（Spring默认异步执行器）
     @Value("${thread.pool.default.core-pool-size:8}")
     private int defaultCorePoolSize;
@@ -95,6 +115,9 @@ public class ThreadPoolConfig {
         // 线程名称前缀，便于日志识别
         executor.setThreadNamePrefix(customThreadNamePrefix);
         
+        // 线程工厂：创建FastThreadLocalThread，池内任务使用FastThreadLocal时按下标直接访问
+        executor.setThreadFactory(new FastThreadLocalThreadFactory(customThreadNamePrefix));
+        
         // 线程空闲时间：当线程数超过核心线程数时，多余的线程空闲时间超过此值将被回收
         executor.setKeepAliveSeconds(customKeepAliveSeconds);
         
@@ -137,6 +160,9 @@ public class ThreadPoolConfig {
         // 线程名称前缀
         executor.setThreadNamePrefix(ioThreadNamePrefix);
         
+        // 线程工厂（FastThreadLocalThread）
+        executor.setThreadFactory(new FastThreadLocalThreadFactory(ioThreadNamePrefix));
+        
         // 空闲时间
         executor.setKeepAliveSeconds(ioKeepAliveSeconds);
         
@@ -152,6 +178,48 @@ public class ThreadPoolConfig {
         return executor;
     }
 
+    /**
+     * 创建缓存加载专用线程池
+     * 供AsyncLoadingCache发起加载和后台刷新使用，与业务线程池隔离，
+     * 避免刷新任务挤占业务线程，也避免业务高峰时刷新排不上队导致条目过期
+     * 所有参数均可通过配置文件动态调整
+     * 
+     * @return Executor 缓存加载线程池执行器
+     */
+    @Bean("cacheLoaderThreadPool")
+    public Executor cacheLoaderThreadPool() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        
+        // 核心线程数
+        executor.setCorePoolSize(cacheLoaderCorePoolSize);
+        
+        // 最大线程数
+        executor.setMaxPoolSize(cacheLoaderMaxPoolSize);
+        
+        // 队列容量
+        executor.setQueueCapacity(cacheLoaderQueueCapacity);
+        
+        // 线程名称前缀
+        executor.setThreadNamePrefix(cacheLoaderThreadNamePrefix);
+        
+        // 线程工厂（FastThreadLocalThread）
+        executor.setThreadFactory(new FastThreadLocalThreadFactory(cacheLoaderThreadNamePrefix));
+        
+        // 空闲时间
+        executor.setKeepAliveSeconds(cacheLoaderKeepAliveSeconds);
+        
+        // 拒绝策略：由调用线程执行加载，宁可让本次读取变慢也不丢弃加载
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        
+        // 优雅关闭
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(cacheLoaderAwaitTerminationSeconds);
+        
+        executor.initialize();
+        
+        return executor;
+    }
+
     /**
      * 配置Spring默认异步执行器
      * 用于处理@Async注解的默认线程池
@@ -175,6 +243,9 @@ public class ThreadPoolConfig {
         // 线程名称前缀
         executor.setThreadNamePrefix(defaultThreadNamePrefix);
         
+        // 线程工厂（FastThreadLocalThread）
+        executor.setThreadFactory(new FastThreadLocalThreadFactory(defaultThreadNamePrefix));
+        
         // 空闲时间
         executor.setKeepAliveSeconds(defaultKeepAliveSeconds);
         
@@ -1,10 +1,12 @@
 package com.example.threadlearning.controller;
 
+import com.example.threadlearning.lock.LockProfiler;
 import com.example.threadlearning.lock.LockUpgradeDemo;
 import com.example.threadlearning.monitor.ThreadPoolMonitorDemo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 /**
@@ -51,6 +53,69 @@ public class AdvancedConcurrencyController {
         return "读写锁优势演示已完成，请查看日志了解详情";
     }
 
+    /**
+     * 乐观读与序列锁演示
+     * 访问地址: GET /advanced/optimistic-read
+     */
+    @GetMapping("/optimistic-read")
+    public String testOptimisticRead() {
+        lockUpgradeDemo.demonstrateOptimisticRead();
+        return "乐观读与序列锁演示已完成，请查看日志对比三种实现的耗时和慢路径次数";
+    }
+
+    /**
+     * 偏向读者的读写锁演示（BRAVO）
+     * 访问地址: GET /advanced/reader-biased-lock
+     */
+    @GetMapping("/reader-biased-lock")
+    public String testReaderBiasedLock() {
+        lockUpgradeDemo.demonstrateReaderBiasedLock();
+        return "偏向读者的读写锁演示已完成，请查看日志对比读吞吐量和撤销偏向的次数";
+    }
+
+    /**
+     * 锁竞争分析演示
+     * 访问地址: GET /advanced/lock-profiling
+     */
+    @GetMapping("/lock-profiling")
+    public String testLockProfiling() {
+        lockUpgradeDemo.demonstrateLockProfiling();
+        return "锁竞争分析演示已完成，请查看日志或访问 /advanced/lock-profile 查看各个锁的等待时间和持有者";
+    }
+
+    /**
+     * 锁竞争报告：经LockProfiler包装的锁和采样到的synchronized监视器
+     * 访问地址: GET /advanced/lock-profile?reset=true（reset为true时返回后清空统计）
+     */
+    @GetMapping("/lock-profile")
+    public LockProfiler.Report getLockProfile(@RequestParam(defaultValue = "false") boolean reset) {
+        LockProfiler.Report report = LockProfiler.global().snapshot();
+        if (reset) {
+            LockProfiler.global().reset();
+        }
+        return report;
+    }
+
+    /**
+     * 分段锁演示
+     * 访问地址: GET /advanced/striped-lock
+     */
+    @GetMapping("/striped-lock")
+    public String testStripedLock() {
+        lockUpgradeDemo.demonstrateStripedLock();
+        return "分段锁演示已完成，请查看日志对比全局锁、分段锁和每键一把锁的转账耗时";
+    }
+
+    /**
+     * 自适应自旋锁演示
+     * 访问地址: GET /advanced/adaptive-spin-lock
+     */
+    @GetMapping("/adaptive-spin-lock")
+    public String testAdaptiveSpinLock() {
+        lockUpgradeDemo.demonstrateAdaptiveSpinLock();
+        return "自适应自旋锁演示已完成，请查看日志对比不同临界区长度下的耗时和自旋/挂起次数";
+    }
+
     /**
      * 可重入锁演示
      * 访问地址: GET /advanced/reentrant-lock
@@ -98,6 +163,21 @@ public class AdvancedConcurrencyController {
                 lockUpgradeDemo.demonstrateReadWriteLockAdvantage();
                 Thread.sleep(8000);
                 
+                lockUpgradeDemo.demonstrateOptimisticRead();
+                Thread.sleep(2000);
+                
+                lockUpgradeDemo.demonstrateReaderBiasedLock();
+                Thread.sleep(2000);
+                
+                lockUpgradeDemo.demonstrateLockProfiling();
+                Thread.sleep(2000);
+                
+                lockUpgradeDemo.demonstrateStripedLock();
+                Thread.sleep(2000);
+                
+                lockUpgradeDemo.demonstrateAdaptiveSpinLock();
+                Thread.sleep(2000);
+                
                 lockUpgradeDemo.demonstrateLockPerformanceComparison();
                 Thread.sleep(5000);
                 
@@ -4,6 +4,7 @@ import com.example.threadlearning.async.CompletableFutureDemo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 /**
@@ -37,6 +38,26 @@ public class CompletableFutureController {
         return "CompletableFuture链式操作演示已完成，请查看日志了解详情";
     }
 
+    /**
+     * 阶段级延迟追踪演示
+     * 访问地址: GET /completable-future/stage-tracing
+     */
+    @GetMapping("/stage-tracing")
+    public String testStageTracing() {
+        completableFutureDemo.demonstrateStageTracing();
+        return "阶段级延迟追踪演示已完成，请查看日志中各阶段的排队与运行时间以及Chrome Trace文件路径";
+    }
+
+    /**
+     * 异步加载缓存演示
+     * 访问地址: GET /completable-future/async-loading-cache
+     */
+    @GetMapping("/async-loading-cache")
+    public String testAsyncLoadingCache() {
+        completableFutureDemo.demonstrateAsyncLoadingCache();
+        return "异步加载缓存演示已完成，请查看日志了解刷新与过期行为";
+    }
+
     /**
      * 组合多个CompletableFuture演示
      * 访问地址: GET /completable-future/combining
@@ -47,6 +68,16 @@ public class CompletableFutureController {
         return "CompletableFuture组合操作演示已完成，请查看日志了解详情";
     }
 
+    /**
+     * 任务图执行演示
+     * 访问地址: GET /completable-future/task-graph
+     */
+    @GetMapping("/task-graph")
+    public String testTaskGraph() {
+        completableFutureDemo.demonstrateTaskGraph();
+        return "任务图执行演示已完成，请查看日志了解关键路径和各任务的等待/运行时间";
+    }
+
     /**
      * 异常处理演示
      * 访问地址: GET /completable-future/exception-handling
@@ -67,6 +98,26 @@ public class CompletableFutureController {
         return "CompletableFuture超时处理演示已完成，请查看日志了解详情";
     }
 
+    /**
+     * 结构化扇出演示
+     * 访问地址: GET /completable-future/fan-out-scope
+     */
+    @GetMapping("/fan-out-scope")
+    public String testFanOutScope() {
+        completableFutureDemo.demonstrateFanOutScope();
+        return "结构化扇出演示已完成，请查看日志对比失败后仍在运行的线程数";
+    }
+
+    /**
+     * 熔断器与自适应超时演示
+     * 访问地址: GET /completable-future/circuit-breaker
+     */
+    @GetMapping("/circuit-breaker")
+    public String testCircuitBreaker() {
+        completableFutureDemo.demonstrateCircuitBreaker();
+        return "熔断器演示已完成，请查看日志对比线程池占用与状态变化";
+    }
+
     /**
      * 并行处理演示
      * 访问地址: GET /completable-future/parallel-processing
@@ -77,6 +128,31 @@ public class CompletableFutureController {
         return "CompletableFuture并行处理演示已完成，请查看日志了解详情";
     }
 
+    /**
+     * HTTP扇出阻塞与异步对比演示
+     * 访问地址: GET /completable-future/http-fan-out?maxConcurrency=1000（10~10000）
+     */
+    @GetMapping("/http-fan-out")
+    public String testHttpFanOut(@RequestParam(defaultValue = "1000") int maxConcurrency) {
+        if (maxConcurrency < CompletableFutureDemo.MIN_HTTP_FAN_OUT
+                || maxConcurrency > CompletableFutureDemo.MAX_HTTP_FAN_OUT) {
+            return "maxConcurrency必须在" + CompletableFutureDemo.MIN_HTTP_FAN_OUT + "~"
+                    + CompletableFutureDemo.MAX_HTTP_FAN_OUT + "之间，阻塞方式每个并发调用占用一个线程";
+        }
+        completableFutureDemo.demonstrateHttpFanOut(maxConcurrency);
+        return "HTTP扇出对比演示已完成，请查看日志对比阻塞与异步方式的线程数、内存和延迟";
+    }
+
+    /**
+     * 限流异步map演示
+     * 访问地址: GET /completable-future/bounded-async-map
+     */
+    @GetMapping("/bounded-async-map")
+    public String testBoundedAsyncMap() {
+        completableFutureDemo.demonstrateBoundedAsyncMap();
+        return "限流异步map演示已完成，请查看日志对比在途数量与耗时";
+    }
+
     /**
      * anyOf竞速演示
      * 访问地址: GET /completable-future/any-of
@@ -87,6 +163,36 @@ public class CompletableFutureController {
         return "CompletableFuture.anyOf竞速演示已完成，请查看日志了解详情";
     }
 
+    /**
+     * 可中断取消演示
+     * 访问地址: GET /completable-future/cancellable
+     */
+    @GetMapping("/cancellable")
+    public String testCancellableTasks() {
+        completableFutureDemo.demonstrateCancellableTasks();
+        return "可中断取消演示已完成，请查看日志对比取消后线程池的可用线程";
+    }
+
+    /**
+     * 单飞请求合并演示
+     * 访问地址: GET /completable-future/single-flight
+     */
+    @GetMapping("/single-flight")
+    public String testSingleFlight() {
+        completableFutureDemo.demonstrateSingleFlight();
+        return "单飞请求合并演示已完成，请查看日志对比后端调用次数";
+    }
+
+    /**
+     * 对冲请求演示
+     * 访问地址: GET /completable-future/hedged-requests
+     */
+    @GetMapping("/hedged-requests")
+    public String testHedgedRequests() {
+        completableFutureDemo.demonstrateHedgedRequests();
+        return "对冲请求演示已完成，请查看日志对比直接调用与对冲调用的p99";
+    }
+
     /**
      * 运行所有CompletableFuture演示
      * 访问地址: GET /completable-future/all
@@ -101,21 +207,51 @@ public class CompletableFutureController {
                 completableFutureDemo.demonstrateChaining();
                 Thread.sleep(3000);
                 
+                completableFutureDemo.demonstrateStageTracing();
+                Thread.sleep(2000);
+                
+                completableFutureDemo.demonstrateAsyncLoadingCache();
+                Thread.sleep(2000);
+                
                 completableFutureDemo.demonstrateCombining();
                 Thread.sleep(4000);
                 
+                completableFutureDemo.demonstrateTaskGraph();
+                Thread.sleep(2000);
+                
                 completableFutureDemo.demonstrateExceptionHandling();
                 Thread.sleep(3000);
                 
                 completableFutureDemo.demonstrateTimeout();
                 Thread.sleep(7000);
                 
+                completableFutureDemo.demonstrateCircuitBreaker();
+                Thread.sleep(2000);
+                
                 completableFutureDemo.demonstrateParallelProcessing();
                 Thread.sleep(5000);
                 
+                completableFutureDemo.demonstrateHttpFanOut(1000);
+                Thread.sleep(2000);
+                
+                completableFutureDemo.demonstrateFanOutScope();
+                Thread.sleep(2000);
+                
+                completableFutureDemo.demonstrateBoundedAsyncMap();
+                Thread.sleep(2000);
+                
                 completableFutureDemo.demonstrateAnyOf();
                 Thread.sleep(3000);
                 
+                completableFutureDemo.demonstrateCancellableTasks();
+                Thread.sleep(2000);
+                
+                completableFutureDemo.demonstrateSingleFlight();
+                Thread.sleep(2000);
+                
+                completableFutureDemo.demonstrateHedgedRequests();
+                Thread.sleep(2000);
+                
                 completableFutureDemo.cleanup();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -1,11 +1,15 @@
 package com.example.threadlearning.controller;
 
 import com.example.threadlearning.concurrent.ConcurrentMapDemo;
+import com.example.threadlearning.concurrent.HeavyHitterTracker;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 /**
  * 并发集合演示控制器
  * 提供API接口来测试ConcurrentHashMap vs HashMap的并发安全性
@@ -67,6 +71,55 @@ public class ConcurrentMapController {
         return "ConcurrentHashMap原子操作演示已完成，请查看日志了解详情";
     }
 
+    /**
+     * 演示StripedCounterMap热点计数及Zipfian分布下的性能对比
+     * 访问地址: GET /concurrent-map/striped-counter
+     */
+    @GetMapping("/striped-counter")
+    public String testStripedCounterMap() {
+        concurrentMapDemo.demonstrateStripedCounterMap();
+        return "StripedCounterMap热点计数演示已完成，请查看日志了解详情";
+    }
+
+    /**
+     * 演示W-TinyLFU有界缓存的过期、命中率和吞吐量
+     * 访问地址: GET /concurrent-map/tinylfu-cache
+     */
+    @GetMapping("/tinylfu-cache")
+    public String testTinyLfuCache() {
+        concurrentMapDemo.demonstrateTinyLfuCache();
+        return "W-TinyLFU有界缓存演示已完成，请查看日志了解详情";
+    }
+
+    /**
+     * 演示VersionedMap快照遍历及读多写少场景的性能对比
+     * 访问地址: GET /concurrent-map/versioned-map
+     */
+    @GetMapping("/versioned-map")
+    public String testVersionedMap() {
+        concurrentMapDemo.demonstrateVersionedMap();
+        return "VersionedMap快照遍历演示已完成，请查看日志了解详情";
+    }
+
+    /**
+     * 演示热点键识别及统计开销
+     * 访问地址: GET /concurrent-map/heavy-hitter-detection
+     */
+    @GetMapping("/heavy-hitter-detection")
+    public String testHeavyHitterDetection() {
+        concurrentMapDemo.demonstrateHeavyHitterDetection();
+        return "热点键识别演示已完成，请查看日志了解详情，热点列表可通过 /concurrent-map/heavy-hitters 查询";
+    }
+
+    /**
+     * 查询共享Map当前的热点键及估计访问次数
+     * 访问地址: GET /concurrent-map/heavy-hitters?limit=10（小于1时按1处理）
+     */
+    @GetMapping("/heavy-hitters")
+    public List<HeavyHitterTracker.HeavyHitter> getHeavyHitters(@RequestParam(defaultValue = "10") int limit) {
+        return concurrentMapDemo.getHeavyHitters(Math.max(1, limit));
+    }
+
     /**
      * 运行所有并发集合演示
      * 访问地址: GET /concurrent-map/all
@@ -86,6 +139,18 @@ public class ConcurrentMapController {
                 
                 concurrentMapDemo.demonstrateAtomicOperations();
                 Thread.sleep(2000);
+
+                concurrentMapDemo.demonstrateStripedCounterMap();
+                Thread.sleep(2000);
+
+                concurrentMapDemo.demonstrateTinyLfuCache();
+                Thread.sleep(2000);
+
+                concurrentMapDemo.demonstrateVersionedMap();
+                Thread.sleep(2000);
+
+                concurrentMapDemo.demonstrateHeavyHitterDetection();
+                Thread.sleep(2000);
                 
                 concurrentMapDemo.performanceComparison();
             } catch (InterruptedException e) {
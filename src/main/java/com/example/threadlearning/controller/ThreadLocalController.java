@@ -1,9 +1,11 @@
 package com.example.threadlearning.controller;
 
+import com.example.threadlearning.service.ThreadLocalLeakDetector;
 import com.example.threadlearning.threadlocal.ThreadLocalDemo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 /**
@@ -17,6 +19,9 @@ public class ThreadLocalController {
     @Autowired
     private ThreadLocalDemo threadLocalDemo;
 
+    @Autowired
+    private ThreadLocalLeakDetector threadLocalLeakDetector;
+
     /**
      * ThreadLocal基础使用演示
      * 访问地址: GET /thread-local/basic-usage
@@ -47,6 +52,25 @@ public class ThreadLocalController {
         return "ThreadLocal内存泄漏演示已完成，请查看日志了解详情";
     }
 
+    /**
+     * ThreadLocal泄漏检测演示
+     * 访问地址: GET /thread-local/leak-detection
+     */
+    @GetMapping("/leak-detection")
+    public String testLeakDetection() {
+        threadLocalDemo.demonstrateLeakDetection();
+        return "ThreadLocal泄漏检测演示已完成，请查看日志中各线程的stale条目与清理结果";
+    }
+
+    /**
+     * 立即检查所有Spring线程池工作线程的ThreadLocal，按线程和value类型汇总
+     * 访问地址: GET /thread-local/leak-report?purge=false
+     */
+    @GetMapping("/leak-report")
+    public ThreadLocalLeakDetector.Report getLeakReport(@RequestParam(defaultValue = "false") boolean purge) {
+        return threadLocalLeakDetector.scan(purge);
+    }
+
     /**
      * InheritableThreadLocal演示
      * 访问地址: GET /thread-local/inheritable
@@ -57,6 +81,16 @@ public class ThreadLocalController {
         return "InheritableThreadLocal演示已完成，请查看日志了解详情";
     }
 
+    /**
+     * 作用域请求上下文演示（InheritableThreadLocal的替代方案）
+     * 访问地址: GET /thread-local/scoped-context
+     */
+    @GetMapping("/scoped-context")
+    public String testScopedRequestContext() {
+        threadLocalDemo.demonstrateScopedRequestContext();
+        return "作用域请求上下文演示已完成，请查看日志对比线程池中的上下文传递和扇出开销";
+    }
+
     /**
      * DateFormat线程安全演示
      * 访问地址: GET /thread-local/dateformat-safety
@@ -67,6 +101,36 @@ public class ThreadLocalController {
         return "ThreadLocal实现DateFormat线程安全演示已完成，请查看日志了解详情";
     }
 
+    /**
+     * 按秒缓存的时间戳格式化演示
+     * 访问地址: GET /thread-local/cached-timestamp-formatter
+     */
+    @GetMapping("/cached-timestamp-formatter")
+    public String testCachedTimestampFormatter() {
+        threadLocalDemo.demonstrateCachedTimestampFormatter();
+        return "按秒缓存的时间戳格式化演示已完成，请查看日志对比三种格式化方式的耗时";
+    }
+
+    /**
+     * FastThreadLocal演示
+     * 访问地址: GET /thread-local/fast-thread-local
+     */
+    @GetMapping("/fast-thread-local")
+    public String testFastThreadLocal() {
+        threadLocalDemo.demonstrateFastThreadLocal();
+        return "FastThreadLocal演示已完成，请查看日志对比1/16/256个变量时的读取耗时";
+    }
+
+    /**
+     * 每线程缓冲区池演示
+     * 访问地址: GET /thread-local/buffer-arena
+     */
+    @GetMapping("/buffer-arena")
+    public String testBufferArena() {
+        threadLocalDemo.demonstrateBufferArena();
+        return "每线程缓冲区池演示已完成，请查看日志对比每个任务的分配字节数和缓存统计";
+    }
+
     /**
      * ThreadLocal性能对比演示
      * 访问地址: GET /thread-local/performance-comparison
@@ -94,12 +158,27 @@ public class ThreadLocalController {
                 threadLocalDemo.demonstrateInheritableThreadLocal();
                 Thread.sleep(2000);
                 
+                threadLocalDemo.demonstrateScopedRequestContext();
+                Thread.sleep(2000);
+                
                 threadLocalDemo.demonstrateDateFormatSafety();
                 Thread.sleep(3000);
                 
+                threadLocalDemo.demonstrateCachedTimestampFormatter();
+                Thread.sleep(2000);
+                
                 threadLocalDemo.demonstrateMemoryLeak();
                 Thread.sleep(6000);
                 
+                threadLocalDemo.demonstrateLeakDetection();
+                Thread.sleep(2000);
+                
+                threadLocalDemo.demonstrateFastThreadLocal();
+                Thread.sleep(2000);
+                
+                threadLocalDemo.demonstrateBufferArena();
+                Thread.sleep(2000);
+                
                 threadLocalDemo.demonstratePerformanceComparison();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
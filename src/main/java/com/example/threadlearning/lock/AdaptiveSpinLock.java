@@ -0,0 +1,251 @@
+package com.example.threadlearning.lock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 先自旋、再挂起的自适应可重入锁
+ *
+ * ReentrantLock拿不到锁时几乎立刻进入AQS队列park，一次park/unpark涉及系统调用和线程切换，
+ * 要几微秒到几十微秒；像sharedCounter++这样几十纳秒的临界区，等持有者释放远比挂起再唤醒便宜。
+ * 而Java 17里synchronized的自旋策略由JVM决定，无法调整。这里把等待分成两段：
+ * 1. 自旋：用Thread.onSpinWait()忙等锁空出来，时长取最近持有时间的SPIN_FACTOR倍，上限maxSpinNanos
+ * 2. 挂起：自旋期限到了还没拿到，进入AQS队列park，与ReentrantLock相同
+ *
+ * 持有时间每HOLD_SAMPLE_INTERVAL次获取抽样一次，用指数移动平均（权重1/8）学习；
+ * 平均持有时间超过maxSpinNanos说明临界区太长，自旋只会白白占用CPU，此时直接挂起。
+ * 单核机器上持有者在等待者自旋期间不可能运行，默认不自旋。
+ *
+ * 非公平：自旋中的线程可能抢在已经park的线程之前拿到锁。
+ * Condition.await期间锁已释放，但被抽样的那次持有时间会把await的时间算进去，
+ * 频繁await的锁学到的持有时间偏长，会更早放弃自旋。
+ */
+public class AdaptiveSpinLock implements Lock {
+
+    /**
+     * 默认自旋上限，大致是一次park/unpark往返的成本
+     */
+    public static final long DEFAULT_MAX_SPIN_NANOS = 20_000;
+
+    private static final int SPIN_FACTOR = 2;
+    private static final int HOLD_SAMPLE_INTERVAL = 16;
+    private static final int EWMA_SHIFT = 3;
+
+    private final Sync sync = new Sync();
+    private final long maxSpinNanos;
+
+    /**
+     * 持有时间的指数移动平均，只由持有者更新
+     */
+    private volatile long averageHoldNanos;
+
+    /**
+     * 以下字段只由持有者读写
+     */
+    private int acquireCount;
+    private long holdStart;
+
+    private final LongAdder spinAcquires = new LongAdder();
+    private final LongAdder parkAcquires = new LongAdder();
+
+    public AdaptiveSpinLock() {
+        this(Runtime.getRuntime().availableProcessors() > 1 ? DEFAULT_MAX_SPIN_NANOS : 0);
+    }
+
+    /**
+     * @param maxSpinNanos 自旋时长上限，0表示从不自旋
+     */
+    public AdaptiveSpinLock(long maxSpinNanos) {
+        if (maxSpinNanos < 0) {
+            throw new IllegalArgumentException("maxSpinNanos不能为负数: " + maxSpinNanos);
+        }
+        this.maxSpinNanos = maxSpinNanos;
+    }
+
+    @Override
+    public void lock() {
+        if (!sync.tryAcquire(1) && !spin(Long.MAX_VALUE) && !sync.tryAcquire(1)) {
+            sync.acquire(1);
+            parkAcquires.increment();
+        }
+        afterAcquire();
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (!sync.tryAcquire(1) && !spin(Long.MAX_VALUE) && !sync.tryAcquire(1)) {
+            sync.acquireInterruptibly(1);
+            parkAcquires.increment();
+        }
+        afterAcquire();
+    }
+
+    @Override
+    public boolean tryLock() {
+        if (sync.tryAcquire(1)) {
+            afterAcquire();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(time);
+        if (sync.tryAcquire(1) || spin(deadline - System.nanoTime()) || sync.tryAcquire(1)) {
+            afterAcquire();
+            return true;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining > 0 && sync.tryAcquireNanos(1, remaining)) {
+            parkAcquires.increment();
+            afterAcquire();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void unlock() {
+        if (sync.holds() == 1 && sync.isHeldExclusively() && holdStart != 0) {
+            long held = System.nanoTime() - holdStart;
+            long average = averageHoldNanos;
+            averageHoldNanos = average + ((held - average) >> EWMA_SHIFT);
+            holdStart = 0;
+        }
+        sync.release(1);
+    }
+
+    @Override
+    public Condition newCondition() {
+        return sync.newCondition();
+    }
+
+    public boolean isLocked() {
+        return sync.holds() != 0;
+    }
+
+    public boolean isHeldByCurrentThread() {
+        return sync.isHeldExclusively();
+    }
+
+    /**
+     * 当前的自旋时长：平均持有时间的SPIN_FACTOR倍；超过上限时为0（直接挂起）
+     */
+    public long getSpinLimitNanos() {
+        long spin = averageHoldNanos * SPIN_FACTOR;
+        return spin > maxSpinNanos ? 0 : spin;
+    }
+
+    public long getAverageHoldNanos() {
+        return averageHoldNanos;
+    }
+
+    /**
+     * 第一次尝试失败后靠自旋拿到锁的次数
+     */
+    public long getSpinAcquires() {
+        return spinAcquires.sum();
+    }
+
+    /**
+     * 自旋失败、进入AQS队列等待后才拿到锁的次数
+     * 进队前会再试一次，立即拿到的不计入；进队后AQS在park前还会重试几次，极少数计入的获取其实没有park
+     */
+    public long getParkAcquires() {
+        return parkAcquires.sum();
+    }
+
+    /**
+     * 在学到的时长内自旋，先读state再CAS，避免所有自旋线程反复CAS同一缓存行
+     * 还没有抽样到持有时间时（平均值为0）按上限自旋一次，否则永远学不到
+     *
+     * @param maxNanos 调用方剩余的等待时间，tryLock(time, unit)不能自旋到期限之后
+     */
+    private boolean spin(long maxNanos) {
+        long limit = Math.min(averageHoldNanos == 0 ? maxSpinNanos : getSpinLimitNanos(), maxNanos);
+        if (limit <= 0) {
+            return false;
+        }
+        long deadline = System.nanoTime() + limit;
+        do {
+            Thread.onSpinWait();
+            if (sync.holds() == 0 && sync.tryAcquire(1)) {
+                spinAcquires.increment();
+                return true;
+            }
+        } while (System.nanoTime() - deadline < 0);
+        return false;
+    }
+
+    /**
+     * 最外层获取时按间隔决定是否记录这次的持有时间
+     */
+    private void afterAcquire() {
+        if (sync.holds() == 1 && ++acquireCount % HOLD_SAMPLE_INTERVAL == 0) {
+            holdStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * 与ReentrantLock非公平模式相同的AQS同步器，state为重入次数
+     */
+    private static final class Sync extends AbstractQueuedSynchronizer {
+
+        @Override
+        protected boolean tryAcquire(int acquires) {
+            Thread current = Thread.currentThread();
+            int state = getState();
+            if (state == 0) {
+                if (compareAndSetState(0, acquires)) {
+                    setExclusiveOwnerThread(current);
+                    return true;
+                }
+            } else if (current == getExclusiveOwnerThread()) {
+                int next = state + acquires;
+                if (next < 0) {
+                    throw new Error("超过最大重入次数");
+                }
+                setState(next);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        protected boolean tryRelease(int releases) {
+            if (getExclusiveOwnerThread() != Thread.currentThread()) {
+                throw new IllegalMonitorStateException();
+            }
+            int state = getState() - releases;
+            boolean free = state == 0;
+            if (free) {
+                setExclusiveOwnerThread(null);
+            }
+            setState(state);
+            return free;
+        }
+
+        @Override
+        protected boolean isHeldExclusively() {
+            return getExclusiveOwnerThread() == Thread.currentThread();
+        }
+
+        int holds() {
+            return getState();
+        }
+
+        Condition newCondition() {
+            return new ConditionObject();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.threadlearning.lock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 偏向读者的读写锁（BRAVO：Biased Locking for Reader-Writer Locks）
+ *
+ * ReentrantReadWriteLock的每次读锁获取/释放都CAS同一个state字段，核数一多，读者全在抢这一个缓存行。
+ * BRAVO在它前面加一层：
+ * 1. 读偏向开启时，读者按线程id散列到可见读者表的一个槽位，CAS把自己的Thread放进去就算拿到读锁，
+ *    各读者写的是不同的缓存行（每个槽位独占128字节），互不干扰
+ * 2. 写者先拿底层写锁（挡住慢路径读者），关闭读偏向，再等表中所有快路径读者离开
+ * 3. 撤销偏向的耗时乘以INHIBIT_MULTIPLIER作为禁用期，期间读者都走底层读锁；禁用期过后由慢路径读者重新开启偏向。
+ *    写多的时候偏向基本处于关闭状态，退化为底层读写锁本身，撤销成本被摊薄到可控范围
+ *
+ * 限制：
+ * - 写锁不支持newCondition()：await会在不经过撤销流程的情况下释放并重新获取底层写锁
+ * - 写锁的tryLock也可能等待快路径读者离开（读临界区应当很短）
+ * - 每个锁实例的读者表占用 槽位数 × 128 字节，适合少量热点锁，不适合按对象大量创建
+ */
+public class BravoReadWriteLock implements ReadWriteLock {
+
+    /**
+     * 撤销耗时的倍数作为禁用读偏向的时长，论文中取9，对应撤销开销不超过写锁总耗时的约10%
+     */
+    private static final long INHIBIT_MULTIPLIER = 9;
+
+    private static final int REVOKE_SPINS = 256;
+
+    /**
+     * 相邻槽位间隔32个引用（压缩指针下128字节），覆盖相邻缓存行预取
+     */
+    private static final int STRIDE = 32;
+
+    private final ReentrantReadWriteLock underlying;
+    private final AtomicReferenceArray<Thread> visibleReaders;
+    /**
+     * 槽位持有者的重入次数（不含第一次），只由占用该槽位的线程读写
+     */
+    private final int[] reentrantHolds;
+    private final int slotMask;
+    private final ReadLock readLock = new ReadLock();
+    private final WriteLock writeLock = new WriteLock();
+
+    private volatile boolean readBias = true;
+    private volatile long inhibitUntil;
+
+    private final LongAdder slowReads = new LongAdder();
+    private final LongAdder revocations = new LongAdder();
+    private final LongAdder revocationNanos = new LongAdder();
+
+    public BravoReadWriteLock() {
+        this(new ReentrantReadWriteLock(), Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param underlying 慢路径和写者使用的读写锁
+     * @param slots      可见读者表槽位数，向上取整到2的幂，至少16
+     */
+    public BravoReadWriteLock(ReentrantReadWriteLock underlying, int slots) {
+        int size = Math.max(16, Integer.highestOneBit(Math.max(1, slots - 1)) << 1);
+        this.underlying = underlying;
+        this.visibleReaders = new AtomicReferenceArray<>(size * STRIDE);
+        this.reentrantHolds = new int[size * STRIDE];
+        this.slotMask = size - 1;
+    }
+
+    @Override
+    public Lock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public Lock writeLock() {
+        return writeLock;
+    }
+
+    public boolean isReadBiased() {
+        return readBias;
+    }
+
+    /**
+     * 走底层读锁的读次数（快路径读不计数，避免在快路径上写共享计数器）
+     */
+    public long getSlowReads() {
+        return slowReads.sum();
+    }
+
+    public long getRevocations() {
+        return revocations.sum();
+    }
+
+    public long getRevocationNanos() {
+        return revocationNanos.sum();
+    }
+
+    private int slotIndex(Thread thread) {
+        long mixed = thread.getId() * 0x9E3779B97F4A7C15L;
+        return ((int) (mixed >>> 32) & slotMask) * STRIDE;
+    }
+
+    /**
+     * 快路径：占用槽位后再确认偏向仍然开启，与写者的“关闭偏向、扫描槽位”构成Dekker式握手
+     * 已经占着槽位的线程重入时只加计数：此时写者可能正拿着底层写锁等这个槽位，不能再去排底层读锁
+     */
+    private boolean tryFastRead(Thread thread) {
+        int index = slotIndex(thread);
+        if (visibleReaders.get(index) == thread) {
+            reentrantHolds[index]++;
+            return true;
+        }
+        if (!readBias) {
+            return false;
+        }
+        if (visibleReaders.get(index) != null || !visibleReaders.compareAndSet(index, null, thread)) {
+            return false;
+        }
+        if (readBias) {
+            return true;
+        }
+        visibleReaders.set(index, null);
+        return false;
+    }
+
+    /**
+     * 慢路径拿到底层读锁之后：禁用期已过则重新开启偏向
+     * 当前线程持有写锁时（锁降级）不能开启，否则其他读者会在写锁持有期间走快路径进来
+     */
+    private void afterSlowRead() {
+        slowReads.increment();
+        if (!readBias && System.nanoTime() - inhibitUntil >= 0 && !underlying.isWriteLockedByCurrentThread()) {
+            readBias = true;
+        }
+    }
+
+    /**
+     * 拿到底层写锁后关闭偏向，并等待所有快路径读者离开
+     */
+    private void revokeBias() {
+        if (!readBias) {
+            return;
+        }
+        readBias = false;
+        long start = System.nanoTime();
+        for (int index = 0; index < visibleReaders.length(); index += STRIDE) {
+            int spins = 0;
+            while (visibleReaders.get(index) != null) {
+                // 读者可能刚好被调度出去，短暂自旋后让出CPU，核数少时不至于空转一整个时间片
+                if (++spins < REVOKE_SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+        long now = System.nanoTime();
+        inhibitUntil = now + (now - start) * INHIBIT_MULTIPLIER;
+        revocations.increment();
+        revocationNanos.add(now - start);
+    }
+
+    private final class ReadLock implements Lock {
+
+        @Override
+        public void lock() {
+            if (tryFastRead(Thread.currentThread())) {
+                return;
+            }
+            underlying.readLock().lock();
+            afterSlowRead();
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (tryFastRead(Thread.currentThread())) {
+                return;
+            }
+            underlying.readLock().lockInterruptibly();
+            afterSlowRead();
+        }
+
+        @Override
+        public boolean tryLock() {
+            if (tryFastRead(Thread.currentThread())) {
+                return true;
+            }
+            if (underlying.readLock().tryLock()) {
+                afterSlowRead();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            if (tryFastRead(Thread.currentThread())) {
+                return true;
+            }
+            if (underlying.readLock().tryLock(time, unit)) {
+                afterSlowRead();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 槽位里是当前线程就先减重入计数、再释放槽位，否则释放底层读锁
+         * 同一线程可能同时以两种方式持有读锁（先走慢路径、重入时走快路径），先释放哪一种都不影响总计数
+         */
+        @Override
+        public void unlock() {
+            Thread thread = Thread.currentThread();
+            int index = slotIndex(thread);
+            if (visibleReaders.get(index) == thread) {
+                if (reentrantHolds[index] > 0) {
+                    reentrantHolds[index]--;
+                } else {
+                    visibleReaders.set(index, null);
+                }
+                return;
+            }
+            underlying.readLock().unlock();
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException("读锁不支持Condition");
+        }
+    }
+
+    private final class WriteLock implements Lock {
+
+        @Override
+        public void lock() {
+            underlying.writeLock().lock();
+            revokeBias();
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            underlying.writeLock().lockInterruptibly();
+            revokeBias();
+        }
+
+        @Override
+        public boolean tryLock() {
+            if (underlying.writeLock().tryLock()) {
+                revokeBias();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            if (underlying.writeLock().tryLock(time, unit)) {
+                revokeBias();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void unlock() {
+            underlying.writeLock().unlock();
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException("BRAVO写锁不支持Condition");
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.example.threadlearning.lock;
+
+import com.example.threadlearning.async.LatencyTracker;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * 锁竞争分析器
+ *
+ * 通过wrap()把Lock/ReadWriteLock包装成带统计的版本，按名字汇总：
+ * - 获取次数、竞争次数（不等待的第一次尝试失败才算竞争）、等待时间分布、等待最长的时间
+ * - 持有时间分布（按sampleRate抽样，只统计排他锁）
+ * - 竞争时正在持有锁的线程、竞争时等待者的调用栈（按sampleRate抽样）
+ * synchronized没有Lock接口可包装，也不引入Java agent，由MonitorContentionSampler定期采样线程状态代替。
+ *
+ * 无竞争的获取只多一次零超时的tryLock和一个LongAdder计数；等待时间只在竞争时记录，那时线程本来就要阻塞。
+ */
+public final class LockProfiler {
+
+    private static final LockProfiler GLOBAL = new LockProfiler(0.05);
+
+    private static final int WINDOW_SIZE = 4096;
+    private static final int MAX_KEYS = 256;
+    private static final int STACK_DEPTH = 6;
+    private static final int TOP_N = 5;
+
+    private final double sampleRate;
+    private final ConcurrentMap<String, LockStats> locks = new ConcurrentHashMap<>();
+    private final MonitorContentionSampler monitors = new MonitorContentionSampler();
+
+    /**
+     * @param sampleRate 持有时间和等待调用栈的抽样比例，0~1
+     */
+    public LockProfiler(double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate必须在0~1之间: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * 全局分析器，/advanced/lock-profile 接口输出的就是它的结果
+     */
+    public static LockProfiler global() {
+        return GLOBAL;
+    }
+
+    public ProfiledLock wrap(String name, Lock delegate) {
+        return new ProfiledLock(delegate, stats(name), this, true, null);
+    }
+
+    /**
+     * 读锁和写锁分别以 name.read / name.write 统计
+     */
+    public ProfiledReadWriteLock wrap(String name, ReadWriteLock delegate) {
+        return new ProfiledReadWriteLock(delegate, stats(name + ".read"), stats(name + ".write"), this);
+    }
+
+    /**
+     * synchronized监视器的采样器，需要时调用start
+     */
+    public MonitorContentionSampler monitors() {
+        return monitors;
+    }
+
+    public Report snapshot() {
+        List<LockReport> reports = new ArrayList<>();
+        locks.forEach((name, stats) -> reports.add(stats.report(name)));
+        reports.sort(Comparator.comparingLong(LockReport::getTotalWaitMicros).reversed());
+        return new Report(sampleRate, reports, monitors.report());
+    }
+
+    /**
+     * 清空所有统计，已包装的锁继续记录到新的计数中
+     */
+    public void reset() {
+        locks.values().forEach(LockStats::reset);
+        monitors.reset();
+    }
+
+    LockStats stats(String name) {
+        return locks.computeIfAbsent(name, key -> new LockStats());
+    }
+
+    boolean sample() {
+        return sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    /**
+     * 调用栈转成一行，跳过分析器自身和lambda的合成帧，只保留最上面STACK_DEPTH帧
+     */
+    static String callerStack(StackTraceElement[] frames) {
+        StringBuilder builder = new StringBuilder();
+        int kept = 0;
+        for (StackTraceElement frame : frames) {
+            String className = frame.getClassName();
+            if (className.equals(LockProfiler.class.getName()) || className.startsWith(ProfiledLock.class.getName())
+                    || className.startsWith(ProfiledReadWriteLock.class.getName())
+                    || className.equals(Thread.class.getName()) || className.contains("$$Lambda")) {
+                continue;
+            }
+            if (kept > 0) {
+                builder.append(" <- ");
+            }
+            builder.append(frame.getClassName(), frame.getClassName().lastIndexOf('.') + 1, frame.getClassName().length())
+                    .append('.').append(frame.getMethodName()).append(':').append(frame.getLineNumber());
+            if (++kept == STACK_DEPTH) {
+                break;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 计数表，超过MAX_KEYS个不同的key后新key计入“其他”，避免调用栈种类太多时无限增长
+     */
+    static void count(ConcurrentMap<String, LongAdder> counts, String key) {
+        LongAdder adder = counts.get(key);
+        if (adder == null) {
+            adder = counts.size() < MAX_KEYS ? counts.computeIfAbsent(key, k -> new LongAdder())
+                    : counts.computeIfAbsent("其他", k -> new LongAdder());
+        }
+        adder.increment();
+    }
+
+    static List<CountEntry> top(Map<String, LongAdder> counts) {
+        List<CountEntry> entries = new ArrayList<>();
+        counts.forEach((key, adder) -> entries.add(new CountEntry(key, adder.sum())));
+        entries.sort(Comparator.comparingLong(CountEntry::getCount).reversed());
+        return entries.size() > TOP_N ? new ArrayList<>(entries.subList(0, TOP_N)) : entries;
+    }
+
+    /**
+     * 一个命名锁的统计
+     */
+    static final class LockStats {
+        private volatile State state = new State();
+
+        void recordAcquire() {
+            state.acquisitions.increment();
+        }
+
+        void recordContended(long waitNanos, String holder, String stack) {
+            State current = state;
+            current.acquisitions.increment();
+            current.contended.increment();
+            current.totalWaitNanos.add(waitNanos);
+            current.maxWaitNanos.accumulate(waitNanos);
+            current.waits.record(waitNanos);
+            count(current.holders, holder);
+            if (stack != null) {
+                count(current.stacks, stack);
+            }
+        }
+
+        void recordHold(long holdNanos) {
+            state.holds.record(holdNanos);
+        }
+
+        void reset() {
+            state = new State();
+        }
+
+        LockReport report(String name) {
+            State current = state;
+            long[] waits = current.waits.percentiles(0.5, 0.99);
+            long[] holds = current.holds.percentiles(0.5, 0.99);
+            return new LockReport(name, current.acquisitions.sum(), current.contended.sum(),
+                    current.totalWaitNanos.sum() / 1000, waits[0] / 1000, waits[1] / 1000,
+                    current.maxWaitNanos.get() / 1000, current.holds.getCount(), holds[0], holds[1],
+                    top(current.holders), top(current.stacks));
+        }
+
+        /**
+         * reset时整体替换，避免逐个清零时与正在记录的线程交错
+         */
+        private static final class State {
+            final LongAdder acquisitions = new LongAdder();
+            final LongAdder contended = new LongAdder();
+            final LongAdder totalWaitNanos = new LongAdder();
+            final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+            final LatencyTracker waits = new LatencyTracker(WINDOW_SIZE);
+            final LatencyTracker holds = new LatencyTracker(WINDOW_SIZE);
+            final ConcurrentMap<String, LongAdder> holders = new ConcurrentHashMap<>();
+            final ConcurrentMap<String, LongAdder> stacks = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * 分析结果
+     */
+    public static final class Report {
+        private final LocalDateTime generatedAt = LocalDateTime.now();
+        private final double sampleRate;
+        private final List<LockReport> locks;
+        private final List<MonitorContentionSampler.MonitorReport> monitors;
+
+        Report(double sampleRate, List<LockReport> locks, List<MonitorContentionSampler.MonitorReport> monitors) {
+            this.sampleRate = sampleRate;
+            this.locks = locks;
+            this.monitors = monitors;
+        }
+
+        public LocalDateTime getGeneratedAt() {
+            return generatedAt;
+        }
+
+        public double getSampleRate() {
+            return sampleRate;
+        }
+
+        /**
+         * 按总等待时间从大到小
+         */
+        public List<LockReport> getLocks() {
+            return locks;
+        }
+
+        public List<MonitorContentionSampler.MonitorReport> getMonitors() {
+            return monitors;
+        }
+    }
+
+    /**
+     * 单个锁的统计结果，时间单位：等待为微秒，持有为纳秒（临界区通常很短）
+     */
+    public static final class LockReport {
+        private final String name;
+        private final long acquisitions;
+        private final long contended;
+        private final long totalWaitMicros;
+        private final long waitP50Micros;
+        private final long waitP99Micros;
+        private final long maxWaitMicros;
+        private final long holdSamples;
+        private final long holdP50Nanos;
+        private final long holdP99Nanos;
+        private final List<CountEntry> topHolders;
+        private final List<CountEntry> topWaitingStacks;
+
+        LockReport(String name, long acquisitions, long contended, long totalWaitMicros, long waitP50Micros,
+                   long waitP99Micros, long maxWaitMicros, long holdSamples, long holdP50Nanos, long holdP99Nanos,
+                   List<CountEntry> topHolders, List<CountEntry> topWaitingStacks) {
+            this.name = name;
+            this.acquisitions = acquisitions;
+            this.contended = contended;
+            this.totalWaitMicros = totalWaitMicros;
+            this.waitP50Micros = waitP50Micros;
+            this.waitP99Micros = waitP99Micros;
+            this.maxWaitMicros = maxWaitMicros;
+            this.holdSamples = holdSamples;
+            this.holdP50Nanos = holdP50Nanos;
+            this.holdP99Nanos = holdP99Nanos;
+            this.topHolders = topHolders;
+            this.topWaitingStacks = topWaitingStacks;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getAcquisitions() {
+            return acquisitions;
+        }
+
+        public long getContended() {
+            return contended;
+        }
+
+        public double getContentionRate() {
+            return acquisitions == 0 ? 0 : (double) contended / acquisitions;
+        }
+
+        public long getTotalWaitMicros() {
+            return totalWaitMicros;
+        }
+
+        public long getWaitP50Micros() {
+            return waitP50Micros;
+        }
+
+        public long getWaitP99Micros() {
+            return waitP99Micros;
+        }
+
+        public long getMaxWaitMicros() {
+            return maxWaitMicros;
+        }
+
+        public long getHoldSamples() {
+            return holdSamples;
+        }
+
+        public long getHoldP50Nanos() {
+            return holdP50Nanos;
+        }
+
+        public long getHoldP99Nanos() {
+            return holdP99Nanos;
+        }
+
+        /**
+         * 发生竞争时持有锁的线程
+         */
+        public List<CountEntry> getTopHolders() {
+            return topHolders;
+        }
+
+        /**
+         * 抽样到的等待者调用栈
+         */
+        public List<CountEntry> getTopWaitingStacks() {
+            return topWaitingStacks;
+        }
+    }
+
+    /**
+     * 计数项：线程名或调用栈，及其出现次数
+     */
+    public static final class CountEntry {
+        private final String key;
+        private final long count;
+
+        CountEntry(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
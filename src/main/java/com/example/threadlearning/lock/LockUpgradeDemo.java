@@ -3,16 +3,25 @@ package com.example.threadlearning.lock;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
 
 /**
  * 锁升级过程演示
  * 演示偏向锁 -> 轻量级锁 -> 重量级锁的升级过程
  * 以及不同锁机制的性能对比
+ * 注意：JDK 15起偏向锁默认关闭（JEP 374），Java 17上无竞争的synchronized直接走轻量级锁
  */
 @Slf4j
 @Component
@@ -121,6 +130,9 @@ public class LockUpgradeDemo {
         int operationsPerThread = 125000;
         CountDownLatch latch = new CountDownLatch(threadCount);
         ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        // 采样期间阻塞在lockObject上的线程，结束后报告谁在等、谁持有
+        MonitorContentionSampler sampler = new MonitorContentionSampler();
+        sampler.start(10);
         
         long startTime = System.nanoTime();
         
@@ -155,8 +167,10 @@ public class LockUpgradeDemo {
         }
         
         long endTime = System.nanoTime();
+        sampler.stop();
         log.info("重量级锁场景 - 执行时间: {} ms, 最终计数: {}", 
                (endTime - startTime) / 1_000_000, sharedCounter);
+        logMonitorReports(sampler);
         
         executor.shutdown();
         sharedCounter = 0; // 重置计数器
@@ -313,6 +327,388 @@ public class LockUpgradeDemo {
         executor.shutdown();
     }
 
+    /**
+     * 乐观读与序列锁演示
+     * 三种SharedPoint实现在相同负载下对比：写者始终写入 (v, -v)，读者检查 x + y == 0，
+     * 不一致的读取次数必须为0；同时给出耗时和读操作走慢路径的次数
+     */
+    public void demonstrateOptimisticRead() {
+        log.info("\n=== 乐观读与序列锁演示 ===");
+
+        int threadCount = 4;
+        int operationsPerThread = 500000;
+        for (int readPercent : new int[]{50, 99}) {
+            log.info("读比例 {}%:", readPercent);
+            for (SharedPoint point : new SharedPoint[]{
+                    new ReadWriteLockPoint(), new StampedLockPoint(), new SeqLockPoint()}) {
+                testSharedPoint(point, threadCount, operationsPerThread, readPercent);
+            }
+        }
+    }
+
+    /**
+     * 每个线程按固定节奏混合读写，每100次操作中前readPercent次为读
+     */
+    private void testSharedPoint(SharedPoint point, int threadCount, int operationsPerThread, int readPercent) {
+        CountDownLatch latch = new CountDownLatch(threadCount);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        AtomicLong inconsistentReads = new AtomicLong();
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < threadCount; i++) {
+            final int threadId = i;
+            executor.submit(() -> {
+                try {
+                    long inconsistent = 0;
+                    for (int j = 0; j < operationsPerThread; j++) {
+                        if (j % 100 < readPercent) {
+                            if (point.read((x, y) -> x + y) != 0) {
+                                inconsistent++;
+                            }
+                        } else {
+                            double value = threadId * 1_000_000.0 + j;
+                            point.write(value, -value);
+                        }
+                    }
+                    inconsistentReads.addAndGet(inconsistent);
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long duration = (System.nanoTime() - startTime) / 1_000_000;
+        executor.shutdown();
+
+        log.info("  {} - 耗时: {} ms, 不一致读取: {}, 读慢路径次数: {}",
+                point.getClass().getSimpleName(), duration, inconsistentReads.get(), point.readRetries());
+    }
+
+    /**
+     * 偏向读者的读写锁演示（BRAVO）
+     * 读者线程数等于核数，分两轮：只有读者；另加一个每毫秒写一次的写者。
+     * 对比ReentrantReadWriteLock与BravoReadWriteLock在同样时间内完成的读次数，并检查读到的两个字段始终相等。
+     * 读者数超过核数时，持有槽位的读者可能被调度出去，写者撤销偏向要等一个时间片，BRAVO不适合这种超订场景
+     */
+    public void demonstrateReaderBiasedLock() {
+        log.info("\n=== 偏向读者的读写锁演示（BRAVO）===");
+
+        int readerCount = Runtime.getRuntime().availableProcessors();
+        long durationMillis = 1000;
+        for (boolean withWriter : new boolean[]{false, true}) {
+            log.info(withWriter ? "读者 + 每毫秒一次写:" : "只有读者:");
+            testReadWriteLockScaling("ReentrantReadWriteLock", new ReentrantReadWriteLock(),
+                    readerCount, withWriter, durationMillis);
+            BravoReadWriteLock bravo = new BravoReadWriteLock();
+            testReadWriteLockScaling("BravoReadWriteLock", bravo, readerCount, withWriter, durationMillis);
+            log.info("  BravoReadWriteLock - 慢路径读: {}, 撤销偏向: {} 次, 撤销总耗时: {} μs",
+                    bravo.getSlowReads(), bravo.getRevocations(), bravo.getRevocationNanos() / 1000);
+        }
+    }
+
+    /**
+     * readerCount个读者持续读（withWriter时另有一个写者每毫秒写一次），运行durationMillis毫秒
+     */
+    private void testReadWriteLockScaling(String lockType, ReadWriteLock lock, int readerCount, boolean withWriter,
+                                          long durationMillis) {
+        long[] pair = new long[2];
+        AtomicLong reads = new AtomicLong();
+        AtomicLong inconsistent = new AtomicLong();
+        AtomicLong writes = new AtomicLong();
+        long deadline = System.nanoTime() + durationMillis * 1_000_000;
+        CountDownLatch latch = new CountDownLatch(readerCount + (withWriter ? 1 : 0));
+        ExecutorService executor = Executors.newFixedThreadPool(readerCount + 1);
+
+        for (int i = 0; i < readerCount; i++) {
+            executor.submit(() -> {
+                try {
+                    long count = 0;
+                    long bad = 0;
+                    while ((count & 1023) != 0 || System.nanoTime() < deadline) {
+                        lock.readLock().lock();
+                        try {
+                            if (pair[0] != pair[1]) {
+                                bad++;
+                            }
+                        } finally {
+                            lock.readLock().unlock();
+                        }
+                        count++;
+                    }
+                    reads.addAndGet(count);
+                    inconsistent.addAndGet(bad);
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        if (withWriter) {
+            executor.submit(() -> {
+                try {
+                    while (System.nanoTime() < deadline) {
+                        lock.writeLock().lock();
+                        try {
+                            pair[0]++;
+                            pair[1]++;
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
+                        writes.incrementAndGet();
+                        Thread.sleep(1);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdown();
+        log.info("  {} - {}个读者: {} 次读/ms, 写 {} 次, 不一致读取: {}",
+                lockType, readerCount, reads.get() / durationMillis, writes.get(), inconsistent.get());
+    }
+
+    /**
+     * 锁竞争分析演示
+     * 1. 计数器锁：4个线程累加，每5000次里有一次在锁内“刷盘”1毫秒，看等待时间的长尾和持有者
+     * 2. 读写锁：3个读者 + 每毫秒一次的写者，读锁、写锁分开统计
+     * 3. synchronized：无法包装，用MonitorContentionSampler采样阻塞线程
+     * 结果同时记录在LockProfiler.global()中，可以通过 /advanced/lock-profile 查看
+     */
+    public void demonstrateLockProfiling() {
+        log.info("\n=== 锁竞争分析演示 ===");
+
+        LockProfiler profiler = LockProfiler.global();
+        Lock counterLock = profiler.wrap("demo.counterLock", new ReentrantLock());
+        testLockPerformance("ProfiledLock(demo.counterLock)", 4, 50000, () -> {
+            counterLock.lock();
+            try {
+                sharedCounter++;
+                if (sharedCounter % 5000 == 0) {
+                    flushUnderLock();
+                }
+            } finally {
+                counterLock.unlock();
+            }
+        });
+        sharedCounter = 0;
+
+        testReadWriteLockScaling("ProfiledReadWriteLock(demo.config)",
+                profiler.wrap("demo.config", new ReentrantReadWriteLock()), 3, true, 500);
+
+        MonitorContentionSampler monitors = profiler.monitors();
+        monitors.start(5);
+        testLockPerformance("synchronized(lockObject)", 4, 200, () -> {
+            synchronized (lockObject) {
+                sharedCounter++;
+                flushUnderLock();
+            }
+        });
+        monitors.stop();
+        sharedCounter = 0;
+
+        LockProfiler.Report report = profiler.snapshot();
+        log.info("\n锁竞争报告（抽样比例 {}）:", report.getSampleRate());
+        for (LockProfiler.LockReport lock : report.getLocks()) {
+            log.info("  {} - 获取 {} 次, 竞争 {} 次 ({}%), 等待 p50/p99/最大: {}/{}/{} μs, 总等待 {} ms, "
+                            + "持有 p50/p99: {}/{} ns ({} 个样本)",
+                    lock.getName(), lock.getAcquisitions(), lock.getContended(),
+                    String.format("%.2f", lock.getContentionRate() * 100), lock.getWaitP50Micros(),
+                    lock.getWaitP99Micros(), lock.getMaxWaitMicros(), lock.getTotalWaitMicros() / 1000,
+                    lock.getHoldP50Nanos(), lock.getHoldP99Nanos(), lock.getHoldSamples());
+            if (!lock.getTopHolders().isEmpty()) {
+                log.info("    竞争时的持有者: {} ({} 次)", lock.getTopHolders().get(0).getKey(),
+                        lock.getTopHolders().get(0).getCount());
+            }
+            if (!lock.getTopWaitingStacks().isEmpty()) {
+                log.info("    最常见的等待位置: {}", lock.getTopWaitingStacks().get(0).getKey());
+            }
+        }
+        logMonitorReports(monitors);
+    }
+
+    /**
+     * 模拟在锁内做的慢操作
+     */
+    private void flushUnderLock() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void logMonitorReports(MonitorContentionSampler sampler) {
+        log.info("synchronized监视器采样（{} 轮）:", sampler.getRounds());
+        for (MonitorContentionSampler.MonitorReport monitor : sampler.report()) {
+            log.info("  {} - 阻塞样本 {} 个, 估计阻塞 {} ms", monitor.getMonitor(), monitor.getBlockedSamples(),
+                    monitor.getEstimatedBlockedMillis());
+            if (!monitor.getTopOwners().isEmpty()) {
+                log.info("    持有者: {} ({} 次)", monitor.getTopOwners().get(0).getKey(),
+                        monitor.getTopOwners().get(0).getCount());
+            }
+            if (!monitor.getTopWaitingStacks().isEmpty()) {
+                log.info("    最常见的等待位置: {}", monitor.getTopWaitingStacks().get(0).getKey());
+            }
+        }
+    }
+
+    /**
+     * 分段锁演示：账户间转账
+     * 同样的随机转账分别用全局锁、64段分段锁、百万段的延迟弱引用分段锁、每个账户一把锁（ConcurrentHashMap）保护，
+     * 转账要同时锁住两个账户，后三种都按固定顺序加锁避免死锁，最后检查总余额不变。
+     * 核数很少时并行度用不上，全局锁只加一次锁反而最快；核数越多，分段锁的优势越明显。
+     */
+    public void demonstrateStripedLock() {
+        log.info("\n=== 分段锁演示 ===");
+
+        int accountCount = 1024;
+        int threadCount = 4;
+        int transfersPerThread = 100000;
+
+        testTransfers("全局ReentrantLock", accountCount, threadCount, transfersPerThread, (from, to) -> {
+            reentrantLock.lock();
+            return reentrantLock::unlock;
+        });
+
+        StripedLock<Lock> stripes = StripedLock.lock(64);
+        testTransfers("StripedLock(64段)", accountCount, threadCount, transfersPerThread,
+                (from, to) -> StripedLock.lockAll(stripes.bulkGet(List.of(from, to))));
+
+        StripedLock<Lock> lazyStripes = StripedLock.lazyWeakLock(1 << 20);
+        testTransfers("StripedLock(延迟弱引用, 2^20段)", accountCount, threadCount, transfersPerThread,
+                (from, to) -> StripedLock.lockAll(lazyStripes.bulkGet(List.of(from, to))));
+
+        ConcurrentHashMap<Integer, Lock> perKeyLocks = new ConcurrentHashMap<>();
+        testTransfers("每账户一把锁(ConcurrentHashMap)", accountCount, threadCount, transfersPerThread, (from, to) -> {
+            Lock first = perKeyLocks.computeIfAbsent(Math.min(from, to), key -> new ReentrantLock());
+            Lock second = perKeyLocks.computeIfAbsent(Math.max(from, to), key -> new ReentrantLock());
+            return StripedLock.lockAll(List.of(first, second));
+        });
+        log.info("每账户一把锁 - 锁对象数量: {}（随账户数增长，不会回收）", perKeyLocks.size());
+
+        // 只要还有人引用，段锁就不会被回收；其余没人引用的段锁随GC消失
+        List<Lock> inUse = lazyStripes.bulkGet(List.of(1, 2, 3, 4, 5, 6, 7, 8));
+        log.info("延迟弱引用分段锁 - 段数: {}, 当前存活: {}", lazyStripes.size(), lazyStripes.createdStripes());
+        System.gc();
+        log.info("延迟弱引用分段锁 - GC之后存活: {}（仍被引用的 {} 个）", lazyStripes.createdStripes(), inUse.size());
+    }
+
+    /**
+     * 多线程随机转账，lockPair负责锁住两个账户并返回解锁句柄
+     */
+    private void testTransfers(String lockType, int accountCount, int threadCount, int transfersPerThread,
+                               BiFunction<Integer, Integer, StripedLock.Unlocker> lockPair) {
+        long[] balances = new long[accountCount];
+        Arrays.fill(balances, 1000);
+        long expectedTotal = 1000L * accountCount;
+        CountDownLatch latch = new CountDownLatch(threadCount);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < threadCount; i++) {
+            executor.submit(() -> {
+                try {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int j = 0; j < transfersPerThread; j++) {
+                        int from = random.nextInt(accountCount);
+                        int to = (from + 1 + random.nextInt(accountCount - 1)) % accountCount;
+                        try (StripedLock.Unlocker ignored = lockPair.apply(from, to)) {
+                            long amount = Math.min(balances[from], random.nextInt(100));
+                            balances[from] -= amount;
+                            balances[to] += amount;
+                        }
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long duration = (System.nanoTime() - startTime) / 1_000_000;
+        executor.shutdown();
+        log.info("{} - {} 次转账耗时: {} ms, 总余额: {} (期望 {})", lockType,
+                (long) threadCount * transfersPerThread, duration, Arrays.stream(balances).sum(), expectedTotal);
+    }
+
+    /**
+     * 自适应自旋锁演示
+     * 同样的计数任务分别用synchronized、ReentrantLock、AdaptiveSpinLock保护，临界区分为极短（只有sharedCounter++）
+     * 和较长（额外约几微秒的计算）两种；AdaptiveSpinLock在短临界区上靠自旋拿锁，长临界区上学到的持有时间变长后改为直接挂起。
+     * 单核机器上默认不自旋，这里的对比只有在多核上才有意义。
+     */
+    public void demonstrateAdaptiveSpinLock() {
+        log.info("\n=== 自适应自旋锁演示 ===");
+        log.info("CPU核数: {}", Runtime.getRuntime().availableProcessors());
+
+        int threadCount = 4;
+        for (int work : new int[]{0, 2000}) {
+            int operationsPerThread = work == 0 ? 250000 : 10000;
+            log.info(work == 0 ? "极短临界区（sharedCounter++）:" : "较长临界区（sharedCounter++ 之外再做 {} 次计算）:", work);
+
+            long syncTime = testLockPerformance("synchronized", threadCount, operationsPerThread, () -> {
+                synchronized (lockObject) {
+                    sharedCounter += 1 + busyWork(work);
+                }
+            });
+            sharedCounter = 0;
+
+            long reentrantTime = testLockPerformance("ReentrantLock", threadCount, operationsPerThread, () -> {
+                reentrantLock.lock();
+                try {
+                    sharedCounter += 1 + busyWork(work);
+                } finally {
+                    reentrantLock.unlock();
+                }
+            });
+            sharedCounter = 0;
+
+            AdaptiveSpinLock adaptiveLock = new AdaptiveSpinLock();
+            long adaptiveTime = testLockPerformance("AdaptiveSpinLock", threadCount, operationsPerThread, () -> {
+                adaptiveLock.lock();
+                try {
+                    sharedCounter += 1 + busyWork(work);
+                } finally {
+                    adaptiveLock.unlock();
+                }
+            });
+            sharedCounter = 0;
+
+            log.info("  耗时 synchronized / ReentrantLock / AdaptiveSpinLock: {} / {} / {} ms",
+                    syncTime, reentrantTime, adaptiveTime);
+            log.info("  AdaptiveSpinLock - 平均持有 {} ns, 当前自旋时长 {} ns, 自旋拿到 {} 次, 挂起后拿到 {} 次",
+                    adaptiveLock.getAverageHoldNanos(), adaptiveLock.getSpinLimitNanos(),
+                    adaptiveLock.getSpinAcquires(), adaptiveLock.getParkAcquires());
+        }
+    }
+
+    /**
+     * 模拟临界区里的计算，返回值总是0，避免被JIT当作死代码消除
+     */
+    private static int busyWork(int iterations) {
+        long x = iterations;
+        for (int i = 0; i < iterations; i++) {
+            x = x * 6364136223846793005L + 1442695040888963407L;
+        }
+        return x == 42 ? 1 : 0;
+    }
+
     /**
      * 共享资源类，演示读写锁的使用
      */
@@ -0,0 +1,180 @@
+package com.example.threadlearning.lock;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * synchronized监视器的竞争采样器
+ *
+ * synchronized不经过Lock接口，逐次记录等待时间需要Java agent改写字节码。这里改用采样：
+ * 后台线程每隔intervalMillis用ThreadMXBean抓一次所有线程，处于BLOCKED状态的线程说明正在等某个监视器，
+ * 按监视器（类名@identityHashCode）累计被采到的次数、当时的持有者和等待者的调用栈。
+ * 采样次数 × 采样间隔 ≈ 所有线程在该监视器上阻塞的总时长，间隔越大开销越小、短暂的阻塞越容易漏掉。
+ *
+ * dumpAllThreads会短暂进入安全点，采样间隔不宜小于几毫秒。
+ */
+@Slf4j
+public final class MonitorContentionSampler {
+
+    private static final int STACK_DEPTH = 8;
+
+    /**
+     * 监视器按对象区分，长期运行时不同的对象会越来越多；超过这个数量后新出现的监视器都计入“其他”
+     */
+    private static final int MAX_MONITORS = 256;
+    private static final String OTHER_MONITORS = "其他";
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final ConcurrentMap<String, MonitorStats> monitors = new ConcurrentHashMap<>();
+    private final LongAdder rounds = new LongAdder();
+
+    private volatile Thread samplerThread;
+    private volatile long intervalMillis;
+
+    /**
+     * 启动后台采样；已经在运行时只更新采样间隔
+     */
+    public synchronized void start(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("采样间隔必须大于0: " + intervalMillis);
+        }
+        this.intervalMillis = intervalMillis;
+        if (samplerThread != null) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "MonitorContentionSampler");
+        thread.setDaemon(true);
+        samplerThread = thread;
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        Thread thread = samplerThread;
+        samplerThread = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return samplerThread != null;
+    }
+
+    /**
+     * 立即采样一次，返回本次采到的阻塞线程数
+     */
+    public int sampleOnce() {
+        long interval = Math.max(1, intervalMillis);
+        int blocked = 0;
+        for (ThreadInfo info : threadMXBean.dumpAllThreads(false, false, STACK_DEPTH)) {
+            if (info == null || info.getThreadState() != Thread.State.BLOCKED || info.getLockName() == null) {
+                continue;
+            }
+            MonitorStats stats = statsFor(info.getLockName());
+            stats.samples.increment();
+            stats.blockedMillis.add(interval);
+            String owner = info.getLockOwnerName();
+            LockProfiler.count(stats.owners, owner == null ? "(未知)" : owner);
+            LockProfiler.count(stats.stacks, LockProfiler.callerStack(info.getStackTrace()));
+            blocked++;
+        }
+        rounds.increment();
+        return blocked;
+    }
+
+    private MonitorStats statsFor(String lockName) {
+        MonitorStats stats = monitors.get(lockName);
+        if (stats != null) {
+            return stats;
+        }
+        String key = monitors.size() < MAX_MONITORS ? lockName : OTHER_MONITORS;
+        return monitors.computeIfAbsent(key, k -> new MonitorStats());
+    }
+
+    public List<MonitorReport> report() {
+        List<MonitorReport> reports = new ArrayList<>();
+        monitors.forEach((name, stats) -> reports.add(new MonitorReport(name, stats.samples.sum(),
+                stats.blockedMillis.sum(), LockProfiler.top(stats.owners), LockProfiler.top(stats.stacks))));
+        reports.sort(Comparator.comparingLong(MonitorReport::getEstimatedBlockedMillis).reversed());
+        return reports;
+    }
+
+    public long getRounds() {
+        return rounds.sum();
+    }
+
+    public void reset() {
+        monitors.clear();
+        rounds.reset();
+    }
+
+    private void run() {
+        Thread self = Thread.currentThread();
+        while (samplerThread == self) {
+            try {
+                sampleOnce();
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.warn("监视器采样失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static final class MonitorStats {
+        final LongAdder samples = new LongAdder();
+        final LongAdder blockedMillis = new LongAdder();
+        final ConcurrentMap<String, LongAdder> owners = new ConcurrentHashMap<>();
+        final ConcurrentMap<String, LongAdder> stacks = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 单个监视器的采样结果
+     */
+    public static final class MonitorReport {
+        private final String monitor;
+        private final long blockedSamples;
+        private final long estimatedBlockedMillis;
+        private final List<LockProfiler.CountEntry> topOwners;
+        private final List<LockProfiler.CountEntry> topWaitingStacks;
+
+        MonitorReport(String monitor, long blockedSamples, long estimatedBlockedMillis,
+                      List<LockProfiler.CountEntry> topOwners, List<LockProfiler.CountEntry> topWaitingStacks) {
+            this.monitor = monitor;
+            this.blockedSamples = blockedSamples;
+            this.estimatedBlockedMillis = estimatedBlockedMillis;
+            this.topOwners = topOwners;
+            this.topWaitingStacks = topWaitingStacks;
+        }
+
+        public String getMonitor() {
+            return monitor;
+        }
+
+        public long getBlockedSamples() {
+            return blockedSamples;
+        }
+
+        public long getEstimatedBlockedMillis() {
+            return estimatedBlockedMillis;
+        }
+
+        public List<LockProfiler.CountEntry> getTopOwners() {
+            return topOwners;
+        }
+
+        public List<LockProfiler.CountEntry> getTopWaitingStacks() {
+            return topWaitingStacks;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.threadlearning.lock;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 记录竞争情况的Lock包装，由LockProfiler.wrap创建
+ *
+ * 获取时先用tryLock(0, NANOSECONDS)试一次，成功就是无竞争获取；失败才记下当时的持有者、开始计时并调用真正的阻塞获取。
+ * 不用tryLock()：它会无视公平锁的排队顺序，读锁的tryLock()也不会给排队中的写者让路，包装后锁的行为就变了。
+ * 排他锁在最外层获取时按抽样决定是否统计这一次的持有时间，重入只增加深度。
+ * 共享锁（读锁）可以被多个线程同时持有，不统计持有时间，竞争时的“持有者”取对应写锁的持有者。
+ *
+ * newCondition()包装被包装锁的Condition：await会释放真正的锁，所以等待前先结束这一段持有时间的统计、
+ * 清掉重入深度和持有者，醒来重新拿到锁后再恢复（与AQS保存和恢复state的做法相同）。
+ * 等待时间不算持有时间，醒来时的重新获取也不计入获取次数和竞争。
+ */
+public class ProfiledLock implements Lock {
+
+    private static final String UNKNOWN_HOLDER = "(已释放或读者持有)";
+
+    private final Lock delegate;
+    private final LockProfiler.LockStats stats;
+    private final LockProfiler profiler;
+    private final boolean exclusive;
+    private final ProfiledLock writeSide;
+
+    /**
+     * 当前持有者，只用于竞争时报告，不参与同步
+     */
+    private volatile Thread owner;
+
+    /**
+     * 以下字段只由持有排他锁的线程读写
+     */
+    private int depth;
+    private boolean holdSampled;
+    private long holdStart;
+
+    ProfiledLock(Lock delegate, LockProfiler.LockStats stats, LockProfiler profiler, boolean exclusive,
+                 ProfiledLock writeSide) {
+        this.delegate = delegate;
+        this.stats = stats;
+        this.profiler = profiler;
+        this.exclusive = exclusive;
+        this.writeSide = writeSide;
+    }
+
+    @Override
+    public void lock() {
+        if (tryAcquireNow()) {
+            acquired();
+            return;
+        }
+        String holder = holderName();
+        long start = System.nanoTime();
+        delegate.lock();
+        contendedAcquired(System.nanoTime() - start, holder);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (delegate.tryLock(0, TimeUnit.NANOSECONDS)) {
+            acquired();
+            return;
+        }
+        String holder = holderName();
+        long start = System.nanoTime();
+        delegate.lockInterruptibly();
+        contendedAcquired(System.nanoTime() - start, holder);
+    }
+
+    @Override
+    public boolean tryLock() {
+        if (delegate.tryLock()) {
+            acquired();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (delegate.tryLock(0, TimeUnit.NANOSECONDS)) {
+            acquired();
+            return true;
+        }
+        String holder = holderName();
+        long start = System.nanoTime();
+        if (delegate.tryLock(time, unit)) {
+            contendedAcquired(System.nanoTime() - start, holder);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 只有当前线程是记录中的持有者时才更新深度和持有时间；
+     * 不持有锁的线程调用时直接交给被包装的锁抛IllegalMonitorStateException，不能先改掉真正持有者的记录
+     */
+    @Override
+    public void unlock() {
+        if (exclusive && owner == Thread.currentThread() && --depth == 0) {
+            if (holdSampled) {
+                stats.recordHold(System.nanoTime() - holdStart);
+            }
+            owner = null;
+        }
+        delegate.unlock();
+    }
+
+    @Override
+    public Condition newCondition() {
+        return new ProfiledCondition(delegate.newCondition());
+    }
+
+    /**
+     * lock()不响应中断：线程带着中断标记进来时tryLock(0)会直接抛异常，恢复标记后按竞争处理，交给阻塞获取
+     */
+    private boolean tryAcquireNow() {
+        try {
+            return delegate.tryLock(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void acquired() {
+        stats.recordAcquire();
+        enter();
+    }
+
+    private void contendedAcquired(long waitNanos, String holder) {
+        String stack = profiler.sample() ? LockProfiler.callerStack(new Throwable().getStackTrace()) : null;
+        stats.recordContended(waitNanos, holder, stack);
+        enter();
+    }
+
+    private void enter() {
+        if (exclusive && depth++ == 0) {
+            owner = Thread.currentThread();
+            holdSampled = profiler.sample();
+            if (holdSampled) {
+                holdStart = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * await前调用：记下这一段持有时间，返回保存的重入深度；当前线程不是持有者时返回0，交给被包装的Condition抛异常
+     */
+    private int suspend() {
+        if (!exclusive || owner != Thread.currentThread()) {
+            return 0;
+        }
+        int saved = depth;
+        if (holdSampled) {
+            stats.recordHold(System.nanoTime() - holdStart);
+        }
+        depth = 0;
+        holdSampled = false;
+        owner = null;
+        return saved;
+    }
+
+    /**
+     * await返回后（已经重新拿到锁）恢复重入深度，重新开始一段持有时间
+     */
+    private void resume(int savedDepth) {
+        if (savedDepth == 0) {
+            return;
+        }
+        depth = savedDepth;
+        owner = Thread.currentThread();
+        holdSampled = profiler.sample();
+        if (holdSampled) {
+            holdStart = System.nanoTime();
+        }
+    }
+
+    private String holderName() {
+        Thread holder = exclusive ? owner : (writeSide != null ? writeSide.owner : null);
+        return holder == null ? UNKNOWN_HOLDER : holder.getName();
+    }
+
+    /**
+     * 在await前后保存和恢复持有记录的Condition
+     */
+    private final class ProfiledCondition implements Condition {
+
+        private final Condition condition;
+
+        ProfiledCondition(Condition condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        public void await() throws InterruptedException {
+            int saved = suspend();
+            try {
+                condition.await();
+            } finally {
+                resume(saved);
+            }
+        }
+
+        @Override
+        public void awaitUninterruptibly() {
+            int saved = suspend();
+            try {
+                condition.awaitUninterruptibly();
+            } finally {
+                resume(saved);
+            }
+        }
+
+        @Override
+        public long awaitNanos(long nanosTimeout) throws InterruptedException {
+            int saved = suspend();
+            try {
+                return condition.awaitNanos(nanosTimeout);
+            } finally {
+                resume(saved);
+            }
+        }
+
+        @Override
+        public boolean await(long time, TimeUnit unit) throws InterruptedException {
+            int saved = suspend();
+            try {
+                return condition.await(time, unit);
+            } finally {
+                resume(saved);
+            }
+        }
+
+        @Override
+        public boolean awaitUntil(Date deadline) throws InterruptedException {
+            int saved = suspend();
+            try {
+                return condition.awaitUntil(deadline);
+            } finally {
+                resume(saved);
+            }
+        }
+
+        @Override
+        public void signal() {
+            condition.signal();
+        }
+
+        @Override
+        public void signalAll() {
+            condition.signalAll();
+        }
+    }
+}
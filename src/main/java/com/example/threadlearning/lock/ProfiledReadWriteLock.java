@@ -0,0 +1,30 @@
+package com.example.threadlearning.lock;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * 记录竞争情况的ReadWriteLock包装，由LockProfiler.wrap创建
+ * 读锁、写锁分别统计；读者被阻塞时报告的持有者是当时的写者
+ */
+public class ProfiledReadWriteLock implements ReadWriteLock {
+
+    private final ProfiledLock readLock;
+    private final ProfiledLock writeLock;
+
+    ProfiledReadWriteLock(ReadWriteLock delegate, LockProfiler.LockStats readStats,
+                          LockProfiler.LockStats writeStats, LockProfiler profiler) {
+        this.writeLock = new ProfiledLock(delegate.writeLock(), writeStats, profiler, true, null);
+        this.readLock = new ProfiledLock(delegate.readLock(), readStats, profiler, false, writeLock);
+    }
+
+    @Override
+    public Lock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public Lock writeLock() {
+        return writeLock;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.threadlearning.lock;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 用ReentrantReadWriteLock保护的SharedPoint，与LockUpgradeDemo.SharedResource的做法相同
+ * 读锁的获取和释放都要CAS同一个state字段，读者多时这一个缓存行在各核之间来回传递
+ */
+public class ReadWriteLockPoint implements SharedPoint {
+
+    private final ReentrantReadWriteLock.ReadLock readLock;
+    private final ReentrantReadWriteLock.WriteLock writeLock;
+    private double x;
+    private double y;
+
+    public ReadWriteLockPoint() {
+        ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+        this.readLock = rwLock.readLock();
+        this.writeLock = rwLock.writeLock();
+    }
+
+    @Override
+    public double read(PointFunction function) {
+        readLock.lock();
+        try {
+            return function.apply(x, y);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void write(double x, double y) {
+        writeLock.lock();
+        try {
+            this.x = x;
+            this.y = y;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void move(double dx, double dy) {
+        writeLock.lock();
+        try {
+            x += dx;
+            y += dy;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public long readRetries() {
+        return 0;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.threadlearning.lock;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 序列锁（SeqLock）版本的SharedPoint
+ *
+ * sequence为偶数表示没有写者，奇数表示正在写：
+ * - 写者：CAS把sequence从偶数加1变为奇数（同时起到写者互斥的作用），写字段，再加1变回偶数
+ * - 读者：读sequence（偶数才继续），复制字段，loadLoadFence后再读一次sequence，两次相同说明复制的是一致的值，否则重试
+ *
+ * 没有写者时读者不写任何共享内存，也从不阻塞写者；撞上写者的read只在第一次重试时给重试计数加1，
+ * 不会在自旋期间反复写计数器。代价是写者之间自旋互斥、读者在写频繁时反复重试，
+ * 所以只用于复制成本很低的小值、写很少且很短的场景。
+ */
+public class SeqLockPoint implements SharedPoint {
+
+    private static final VarHandle SEQUENCE;
+
+    static {
+        try {
+            SEQUENCE = MethodHandles.lookup().findVarHandle(SeqLockPoint.class, "sequence", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final LongAdder retries = new LongAdder();
+    private volatile long sequence;
+    private double x;
+    private double y;
+
+    @Override
+    public double read(PointFunction function) {
+        boolean retried = false;
+        while (true) {
+            long before = sequence;
+            if ((before & 1) == 0) {
+                double currentX = x;
+                double currentY = y;
+                VarHandle.loadLoadFence();
+                if (sequence == before) {
+                    return function.apply(currentX, currentY);
+                }
+            }
+            if (!retried) {
+                retries.increment();
+                retried = true;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    @Override
+    public void write(double x, double y) {
+        long start = beginWrite();
+        this.x = x;
+        this.y = y;
+        sequence = start + 2;
+    }
+
+    @Override
+    public void move(double dx, double dy) {
+        long start = beginWrite();
+        x += dx;
+        y += dy;
+        sequence = start + 2;
+    }
+
+    @Override
+    public long readRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * 自旋直到把sequence从偶数改为奇数，返回改之前的偶数
+     */
+    private long beginWrite() {
+        while (true) {
+            long current = sequence;
+            if ((current & 1) == 0 && SEQUENCE.compareAndSet(this, current, current + 1)) {
+                // 字段写入不能重排到奇数版本号之前
+                VarHandle.storeStoreFence();
+                return current;
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.threadlearning.lock;
+
+/**
+ * 由两个double组成的共享小值对象
+ *
+ * x、y必须成对一致地读写，不同实现用不同的方式保护：
+ * - ReadWriteLockPoint：ReentrantReadWriteLock，每次读都要CAS修改共享的读者计数
+ * - StampedLockPoint：StampedLock乐观读，读期间没有写入时不写任何共享变量
+ * - SeqLockPoint：序列锁，读者只读版本号，适合字段少、复制成本低的值
+ */
+public interface SharedPoint {
+
+    /**
+     * 读取x、y时的计算
+     * 各实现先把x、y复制到局部变量并确认是一致的一对值，再调用一次函数：每次read只调用一次，参数总是一致的；
+     * 乐观读和序列锁的重试只重新复制字段，不会重复调用函数
+     */
+    @FunctionalInterface
+    interface PointFunction {
+        double apply(double x, double y);
+    }
+
+    /**
+     * 一致地读取x、y并计算
+     */
+    double read(PointFunction function);
+
+    void write(double x, double y);
+
+    /**
+     * 基于当前值平移，读和写在同一个写锁内完成
+     */
+    void move(double dx, double dy);
+
+    /**
+     * 读操作走慢路径的次数：乐观读校验失败、序列锁需要重试的read（每次read最多计1次），读写锁恒为0
+     */
+    long readRetries();
+
+    default double distanceFromOrigin() {
+        return read((x, y) -> Math.sqrt(x * x + y * y));
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.threadlearning.lock;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * StampedLock乐观读版本的SharedPoint
+ * 1. tryOptimisticRead()只读取版本号，不修改锁状态，把字段复制到局部变量
+ * 2. validate()确认期间没有写锁被获取过，成功就用局部变量计算
+ * 3. 失败说明读到的可能是写到一半的值，退化为普通读锁重新读取
+ * StampedLock不可重入，也不支持Condition，只适合这种短小、不回调外部代码的临界区
+ */
+public class StampedLockPoint implements SharedPoint {
+
+    private final StampedLock lock = new StampedLock();
+    private final LongAdder fallbacks = new LongAdder();
+    private double x;
+    private double y;
+
+    @Override
+    public double read(PointFunction function) {
+        long stamp = lock.tryOptimisticRead();
+        double currentX = x;
+        double currentY = y;
+        if (!lock.validate(stamp)) {
+            fallbacks.increment();
+            stamp = lock.readLock();
+            try {
+                currentX = x;
+                currentY = y;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return function.apply(currentX, currentY);
+    }
+
+    @Override
+    public void write(double x, double y) {
+        long stamp = lock.writeLock();
+        try {
+            this.x = x;
+            this.y = y;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void move(double dx, double dy) {
+        long stamp = lock.writeLock();
+        try {
+            x += dx;
+            y += dy;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public long readRetries() {
+        return fallbacks.sum();
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.threadlearning.lock;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * 分段锁：把任意多个键映射到固定数量（2的幂）的锁上
+ *
+ * 一把全局锁让互不相干的键也要排队；每个键一把锁（ConcurrentHashMap&lt;K, Lock&gt;）又要在每次访问时查表，
+ * 并且锁对象只增不减。分段锁介于两者之间：键的哈希值打散后取低位，落在同一段的键共享一把锁，
+ * 段数决定了最大并行度，与键的数量无关。
+ *
+ * 两种模式：
+ * 1. 预先分配（lock / readWriteLock）：构造时创建全部锁，每个锁对象带填充字段，
+ *    相邻段的同步状态不会落在同一缓存行上，适合段数不大（几十到几千）的热点数据
+ * 2. 延迟弱引用（lazyWeakLock / lazyWeakReadWriteLock）：某段第一次被访问时才创建锁，
+ *    调用方不再引用锁对象后它可以被GC回收，适合段数很大（上百万）而同时活跃的键很少的场景。
+ *    注意持有锁的线程并不引用锁对象：调用方必须一直持有get/bulkGet返回的锁对象直到解锁，
+ *    解锁时用同一个对象，不能再次调用get(key)去取——锁在持有期间被回收后，get会创建一把新锁，
+ *    其他线程能立刻拿到它，互斥被悄悄破坏，旧锁也无法再解锁（与Guava Striped.lazyWeakLock的约定相同）
+ *
+ * 多键操作（如转账）要用bulkGet：返回的锁按段下标排序并去重，所有线程按同一顺序加锁，不会互相等待成环。
+ * 同一个键永远映射到同一段，但不同的键也可能落在同一段，持有一段锁时不能假设只锁住了一个键。
+ */
+public abstract class StripedLock<L> {
+
+    /**
+     * 预先分配模式允许的最大段数，更大的段数应使用延迟弱引用模式
+     */
+    private static final int MAX_EAGER_STRIPES = 1 << 16;
+
+    private static final int MAX_STRIPES = 1 << 30;
+
+    final int mask;
+
+    StripedLock(int stripes) {
+        if (stripes <= 0 || stripes > MAX_STRIPES) {
+            throw new IllegalArgumentException("段数必须在1~" + MAX_STRIPES + "之间: " + stripes);
+        }
+        this.mask = ceilToPowerOfTwo(stripes) - 1;
+    }
+
+    /**
+     * 预先分配、带填充的ReentrantLock分段锁
+     */
+    public static StripedLock<Lock> lock(int stripes) {
+        return new Eager<>(stripes, PaddedLock::new);
+    }
+
+    /**
+     * 预先分配、带填充的ReentrantReadWriteLock分段锁
+     */
+    public static StripedLock<ReadWriteLock> readWriteLock(int stripes) {
+        return new Eager<>(stripes, PaddedReadWriteLock::new);
+    }
+
+    /**
+     * 延迟创建、弱引用持有的ReentrantLock分段锁；返回的锁对象必须由调用方引用到解锁为止
+     */
+    public static StripedLock<Lock> lazyWeakLock(int stripes) {
+        return new LazyWeak<>(stripes, ReentrantLock::new);
+    }
+
+    /**
+     * 延迟创建、弱引用持有的ReentrantReadWriteLock分段锁；返回的锁对象必须由调用方引用到解锁为止
+     */
+    public static StripedLock<ReadWriteLock> lazyWeakReadWriteLock(int stripes) {
+        return new LazyWeak<>(stripes, ReentrantReadWriteLock::new);
+    }
+
+    /**
+     * 键所在段的锁，key不能为null
+     */
+    public L get(Object key) {
+        return getAt(indexFor(key));
+    }
+
+    /**
+     * 第index段的锁，0 &lt;= index &lt; size()
+     */
+    public abstract L getAt(int index);
+
+    /**
+     * 段数（向上取整到2的幂后的值）
+     */
+    public int size() {
+        return mask + 1;
+    }
+
+    /**
+     * 当前已经创建的锁的数量，预先分配模式下等于size()
+     */
+    public abstract int createdStripes();
+
+    public int indexFor(Object key) {
+        return smear(key.hashCode()) & mask;
+    }
+
+    /**
+     * 多个键对应的锁，按段下标升序排列且不重复；按返回顺序加锁、逆序解锁
+     */
+    public List<L> bulkGet(Iterable<?> keys) {
+        int[] indexes = new int[8];
+        int count = 0;
+        for (Object key : keys) {
+            if (count == indexes.length) {
+                indexes = Arrays.copyOf(indexes, count * 2);
+            }
+            indexes[count++] = indexFor(key);
+        }
+        Arrays.sort(indexes, 0, count);
+        List<L> locks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || indexes[i] != indexes[i - 1]) {
+                locks.add(getAt(indexes[i]));
+            }
+        }
+        return Collections.unmodifiableList(locks);
+    }
+
+    /**
+     * 锁住多个键：按段顺序获取全部排他锁，返回的Unlocker逆序释放，配合try-with-resources使用
+     *
+     * <pre>
+     * try (StripedLock.Unlocker ignored = StripedLock.lockAll(accounts.bulkGet(List.of(from, to)))) {
+     *     ...
+     * }
+     * </pre>
+     */
+    public static Unlocker lockAll(List<? extends Lock> locks) {
+        int acquired = 0;
+        try {
+            for (Lock lock : locks) {
+                lock.lock();
+                acquired++;
+            }
+        } catch (RuntimeException | Error e) {
+            unlockAll(locks, acquired);
+            throw e;
+        }
+        return () -> unlockAll(locks, locks.size());
+    }
+
+    private static void unlockAll(List<? extends Lock> locks, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+
+    /**
+     * 哈希值再打散一次，避免hashCode低位分布不均（如连续整数、以8对齐的地址）时集中到少数几段
+     */
+    static int smear(int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int ceilToPowerOfTwo(int value) {
+        return value == 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * lockAll返回的解锁句柄
+     */
+    @FunctionalInterface
+    public interface Unlocker extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * 预先分配模式
+     */
+    private static final class Eager<L> extends StripedLock<L> {
+        private final Object[] stripes;
+
+        Eager(int stripes, Supplier<L> factory) {
+            super(stripes);
+            if (stripes > MAX_EAGER_STRIPES) {
+                throw new IllegalArgumentException("预先分配的段数不能超过" + MAX_EAGER_STRIPES + "，请使用延迟弱引用模式");
+            }
+            this.stripes = new Object[size()];
+            Arrays.setAll(this.stripes, i -> factory.get());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public L getAt(int index) {
+            return (L) stripes[index];
+        }
+
+        @Override
+        public int createdStripes() {
+            return stripes.length;
+        }
+    }
+
+    /**
+     * 延迟弱引用模式：已创建的段放在ConcurrentHashMap里，随访问增长、随GC回收收缩
+     * 只有调用方的引用能让锁对象存活：正在等待的线程执行着锁的方法，引用着它；已经拿到锁的线程则不引用，
+     * 只要有调用方按约定引用着锁对象，同一段的所有线程拿到的就是同一个锁
+     */
+    private static final class LazyWeak<L> extends StripedLock<L> {
+        private final ConcurrentMap<Integer, StripeReference<L>> stripes = new ConcurrentHashMap<>();
+        private final ReferenceQueue<L> queue = new ReferenceQueue<>();
+        private final Supplier<L> factory;
+
+        LazyWeak(int stripes, Supplier<L> factory) {
+            super(stripes);
+            this.factory = factory;
+        }
+
+        @Override
+        public L getAt(int index) {
+            if (index < 0 || index > mask) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            StripeReference<L> existing = stripes.get(index);
+            L lock = existing == null ? null : existing.get();
+            if (lock != null) {
+                return lock;
+            }
+            drainQueue();
+            L created = factory.get();
+            StripeReference<L> fresh = new StripeReference<>(created, index, queue);
+            while (true) {
+                existing = stripes.putIfAbsent(index, fresh);
+                if (existing == null) {
+                    return created;
+                }
+                lock = existing.get();
+                if (lock != null) {
+                    return lock;
+                }
+                // 旧引用已被回收但还没从表中清除，替换掉它
+                if (stripes.replace(index, existing, fresh)) {
+                    return created;
+                }
+            }
+        }
+
+        @Override
+        public int createdStripes() {
+            drainQueue();
+            return stripes.size();
+        }
+
+        private void drainQueue() {
+            StripeReference<?> reference;
+            while ((reference = (StripeReference<?>) queue.poll()) != null) {
+                stripes.remove(reference.index, reference);
+            }
+        }
+    }
+
+    private static final class StripeReference<L> extends WeakReference<L> {
+        final int index;
+
+        StripeReference(L referent, int index, ReferenceQueue<L> queue) {
+            super(referent, queue);
+            this.index = index;
+        }
+    }
+
+    /**
+     * ReentrantLock的同步状态在构造时紧接着分配的Sync对象里，
+     * 子类的填充字段把相邻两段的Sync对象隔开，减少一段加锁导致另一段缓存行失效
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedLock extends ReentrantLock {
+        long p01, p02, p03, p04, p05, p06, p07, p08;
+        long p09, p10, p11, p12, p13, p14, p15, p16;
+    }
+
+    @SuppressWarnings("unused")
+    private static final class PaddedReadWriteLock extends ReentrantReadWriteLock {
+        long p01, p02, p03, p04, p05, p06, p07, p08;
+        long p09, p10, p11, p12, p13, p14, p15, p16;
+    }
+}
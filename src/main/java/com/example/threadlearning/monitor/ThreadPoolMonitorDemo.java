@@ -1,5 +1,6 @@
 package com.example.threadlearning.monitor;
 
+import com.example.threadlearning.threadlocal.FastThreadLocalThread;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
@@ -229,6 +230,7 @@ public class ThreadPoolMonitorDemo {
 
     /**
      * 自定义线程工厂
+     * 创建FastThreadLocalThread，与ThreadPoolConfig中的线程池保持一致
      */
     private static class CustomThreadFactory implements ThreadFactory {
         private final AtomicInteger threadNumber = new AtomicInteger(1);
@@ -240,7 +242,7 @@ public class ThreadPoolMonitorDemo {
 
         @Override
         public Thread newThread(Runnable r) {
-            Thread t = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+            Thread t = new FastThreadLocalThread(r, namePrefix + threadNumber.getAndIncrement());
             if (t.isDaemon()) {
                 t.setDaemon(false);
             }
@@ -0,0 +1,292 @@
+package com.example.threadlearning.service;
+
+import com.example.threadlearning.threadlocal.ThreadLocalInspector;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ThreadLocal泄漏检测服务
+ *
+ * 定期检查Spring容器中所有ThreadPoolTaskExecutor的工作线程（按线程名前缀识别）的ThreadLocalMap，
+ * 按线程和按value类型汇总条目数、stale条目数（ThreadLocal已被回收但value仍被线程引用）和估算大小；
+ * 发现stale条目时输出告警，配置了自动清理时顺带清理。
+ *
+ * 线程池使用FastThreadLocalThread时，FastThreadLocal（包括BufferArena每线程最多8MB的缓存）也会按槽位列出，
+ * 计入条目数、估算大小和按value类型的汇总；但这些槽位的下标不回收、没有弱引用的key，
+ * 永远不会被判定为stale，也不会被自动清理，只能从估算大小上发现异常。
+ *
+ * 配置：
+ * - thread-local.leak-detector.interval-seconds：检查间隔，0表示不定期检查，只在调用scan时检查
+ * - thread-local.leak-detector.auto-purge：定期检查时是否清理stale条目
+ */
+@Slf4j
+@Service
+public class ThreadLocalLeakDetector {
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Value("${thread-local.leak-detector.interval-seconds:60}")
+    private long intervalSeconds;
+
+    @Value("${thread-local.leak-detector.auto-purge:false}")
+    private boolean autoPurge;
+
+    private ScheduledExecutorService scheduler;
+    private volatile Report lastReport;
+
+    @PostConstruct
+    public void start() {
+        if (!ThreadLocalInspector.isAvailable()) {
+            log.warn("ThreadLocal泄漏检测不可用: {}", ThreadLocalInspector.unavailableReason());
+            return;
+        }
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "thread-local-leak-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::scheduledScan, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 立即检查所有Spring线程池
+     *
+     * @param purgeStale 是否清理stale条目
+     */
+    public Report scan(boolean purgeStale) {
+        if (!ThreadLocalInspector.isAvailable()) {
+            return Report.unavailable(ThreadLocalInspector.unavailableReason());
+        }
+        Map<String, String> prefixes = new LinkedHashMap<>();
+        applicationContext.getBeansOfType(ThreadPoolTaskExecutor.class)
+                .forEach((beanName, executor) -> prefixes.put(executor.getThreadNamePrefix(), beanName));
+
+        List<ThreadReport> threads = new ArrayList<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            String pool = poolOf(thread, prefixes);
+            if (pool != null) {
+                threads.add(new ThreadReport(pool, ThreadLocalInspector.inspect(thread, purgeStale)));
+            }
+        }
+        threads.sort(Comparator.comparing(ThreadReport::getPool).thenComparing(ThreadReport::getThreadName));
+        Report report = new Report(threads);
+        lastReport = report;
+        return report;
+    }
+
+    /**
+     * 最近一次检查的结果，还没有检查过时返回null
+     */
+    public Report getLastReport() {
+        return lastReport;
+    }
+
+    private void scheduledScan() {
+        try {
+            Report report = scan(autoPurge);
+            if (report.getStaleEntries() > 0) {
+                log.warn("检测到ThreadLocal泄漏: {} 个线程共 {} 个stale条目，估算 {} KB，已清理 {} 个",
+                        report.getThreads().stream().filter(t -> t.getStaleEntries() > 0).count(),
+                        report.getStaleEntries(), report.getStaleEstimatedBytes() / 1024, report.getPurgedEntries());
+            }
+        } catch (RuntimeException e) {
+            log.warn("ThreadLocal泄漏检测失败", e);
+        }
+    }
+
+    private static String poolOf(Thread thread, Map<String, String> prefixes) {
+        for (Map.Entry<String, String> entry : prefixes.entrySet()) {
+            if (thread.getName().startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 一次检查的汇总结果
+     */
+    public static final class Report {
+        private final LocalDateTime scannedAt = LocalDateTime.now();
+        private final boolean available;
+        private final String message;
+        private final List<ThreadReport> threads;
+        private final List<ValueClassSummary> valueClasses;
+
+        private Report(boolean available, String message, List<ThreadReport> threads) {
+            this.available = available;
+            this.message = message;
+            this.threads = threads;
+            this.valueClasses = summarizeByValueClass(threads);
+        }
+
+        Report(List<ThreadReport> threads) {
+            this(true, null, threads);
+        }
+
+        static Report unavailable(String message) {
+            return new Report(false, message, new ArrayList<>());
+        }
+
+        public LocalDateTime getScannedAt() {
+            return scannedAt;
+        }
+
+        public boolean isAvailable() {
+            return available;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public int getTotalEntries() {
+            return threads.stream().mapToInt(ThreadReport::getEntries).sum();
+        }
+
+        public int getStaleEntries() {
+            return threads.stream().mapToInt(ThreadReport::getStaleEntries).sum();
+        }
+
+        public long getEstimatedBytes() {
+            return threads.stream().mapToLong(ThreadReport::getEstimatedBytes).sum();
+        }
+
+        public long getStaleEstimatedBytes() {
+            return threads.stream().mapToLong(ThreadReport::getStaleEstimatedBytes).sum();
+        }
+
+        public int getPurgedEntries() {
+            return threads.stream().mapToInt(ThreadReport::getPurgedEntries).sum();
+        }
+
+        public List<ThreadReport> getThreads() {
+            return threads;
+        }
+
+        /**
+         * 按value类型汇总，估算大小从大到小
+         */
+        public List<ValueClassSummary> getValueClasses() {
+            return valueClasses;
+        }
+
+        private static List<ValueClassSummary> summarizeByValueClass(List<ThreadReport> threads) {
+            Map<String, ValueClassSummary> summaries = new LinkedHashMap<>();
+            for (ThreadReport thread : threads) {
+                for (ThreadLocalInspector.EntryInfo entry : thread.snapshot.getEntries()) {
+                    summaries.computeIfAbsent(entry.getValueClass(), ValueClassSummary::new).add(entry);
+                }
+            }
+            List<ValueClassSummary> result = new ArrayList<>(summaries.values());
+            result.sort(Comparator.comparingLong(ValueClassSummary::getEstimatedBytes).reversed());
+            return result;
+        }
+    }
+
+    /**
+     * 单个线程的检查结果
+     */
+    public static final class ThreadReport {
+        private final String pool;
+        private final ThreadLocalInspector.ThreadSnapshot snapshot;
+
+        ThreadReport(String pool, ThreadLocalInspector.ThreadSnapshot snapshot) {
+            this.pool = pool;
+            this.snapshot = snapshot;
+        }
+
+        public String getPool() {
+            return pool;
+        }
+
+        public String getThreadName() {
+            return snapshot.getThreadName();
+        }
+
+        public int getEntries() {
+            return snapshot.getEntryCount();
+        }
+
+        public int getStaleEntries() {
+            return snapshot.getStaleEntryCount();
+        }
+
+        public long getEstimatedBytes() {
+            return snapshot.getEstimatedBytes();
+        }
+
+        public long getStaleEstimatedBytes() {
+            return snapshot.getStaleEstimatedBytes();
+        }
+
+        public int getPurgedEntries() {
+            return snapshot.getPurgedEntries();
+        }
+    }
+
+    /**
+     * 按value类型的汇总
+     */
+    public static final class ValueClassSummary {
+        private final String valueClass;
+        private int entries;
+        private int staleEntries;
+        private long estimatedBytes;
+
+        ValueClassSummary(String valueClass) {
+            this.valueClass = valueClass;
+        }
+
+        void add(ThreadLocalInspector.EntryInfo entry) {
+            entries++;
+            if (entry.isStale()) {
+                staleEntries++;
+            }
+            estimatedBytes += entry.getEstimatedBytes();
+        }
+
+        public String getValueClass() {
+            return valueClass;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public int getStaleEntries() {
+            return staleEntries;
+        }
+
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.example.threadlearning.threadlocal;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 每线程的ByteBuffer缓存池
+ *
+ * 热路径上的任务每次都new一个临时缓冲区，分配本身不贵，贵的是它推高的分配速率和随之而来的GC。
+ * 这里让每个线程缓存用完的缓冲区，下次按尺寸直接复用：
+ * 1. 尺寸分级：256B到1MB之间按2的幂分成13级，申请的大小向上取整到所在级别；超过1MB的不缓存，直接分配
+ * 2. 线程私有：缓存放在FastThreadLocal里，acquire/release只访问当前线程的数组，不需要同步
+ * 3. 高水位回收：每个级别记录一个窗口内同时借出的最大数量，每TRIM_WINDOW次acquire把缓存数量削到该高水位，
+ *    一次突发之后线程不会一直占着突发时的内存
+ * 4. 上限：每级最多缓存maxCachedPerClass个，每个线程最多缓存maxCachedBytesPerThread字节，超出的直接丢弃交给GC
+ *
+ * 线程池中使用时的约定：
+ * - acquire和release必须成对，通常写在同一个try/finally里；在别的线程release也可以，缓冲区进入release所在线程的缓存
+ * - release后不能再使用该缓冲区；重复release同一个对象会抛IllegalStateException
+ * - 只能归还acquire得到的缓冲区本身：只读视图和堆内存的slice()会被拒绝，堆内存的duplicate()按底层数组识别为重复归还；
+ *   直接内存没有公开接口读取地址，同样尺寸的duplicate()/slice()视图无法识别，不要归还视图
+ * - 任务没有release的缓冲区不会留在线程上，只是失去复用机会；FastThreadLocalThreadFactory创建的线程退出时会清掉整个缓存
+ * - BufferArena内部持有FastThreadLocal，下标不回收，实例应当长期存活，不要按请求创建
+ */
+public final class BufferArena {
+
+    private static final int MIN_SHIFT = 8;
+    private static final int MAX_SHIFT = 20;
+    private static final int CLASS_COUNT = MAX_SHIFT - MIN_SHIFT + 1;
+    public static final int MAX_POOLED_CAPACITY = 1 << MAX_SHIFT;
+
+    /**
+     * 每个线程每隔多少次acquire按高水位回收一次
+     */
+    private static final int TRIM_WINDOW = 4096;
+
+    private static final BufferArena HEAP = new BufferArena("heap", false, 16, 8L << 20);
+    private static final BufferArena DIRECT = new BufferArena("direct", true, 16, 8L << 20);
+
+    private final String name;
+    private final boolean direct;
+    private final int maxCachedPerClass;
+    private final long maxCachedBytesPerThread;
+    private final FastThreadLocal<ThreadCache> caches;
+    private final Set<WeakReference<ThreadCache>> liveCaches = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<ThreadCache> deadCaches = new ReferenceQueue<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder unpooled = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder droppedBuffers = new LongAdder();
+    private final LongAdder trimmedBytes = new LongAdder();
+
+    public BufferArena(String name, boolean direct, int maxCachedPerClass, long maxCachedBytesPerThread) {
+        if (maxCachedPerClass <= 0 || maxCachedBytesPerThread <= 0) {
+            throw new IllegalArgumentException("缓存上限必须大于0");
+        }
+        this.name = name;
+        this.direct = direct;
+        this.maxCachedPerClass = maxCachedPerClass;
+        this.maxCachedBytesPerThread = maxCachedBytesPerThread;
+        this.caches = FastThreadLocal.withInitial(this::newCache);
+    }
+
+    /**
+     * 共享的堆内存arena：每级16个、每线程8MB
+     */
+    public static BufferArena heap() {
+        return HEAP;
+    }
+
+    /**
+     * 共享的直接内存arena：每级16个、每线程8MB
+     */
+    public static BufferArena direct() {
+        return DIRECT;
+    }
+
+    /**
+     * 借出一个至少size字节的缓冲区：position为0，limit为size，字节序为BIG_ENDIAN，内容不清零
+     */
+    public ByteBuffer acquire(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size不能为负数: " + size);
+        }
+        if (size > MAX_POOLED_CAPACITY) {
+            unpooled.increment();
+            allocatedBytes.add(size);
+            return allocate(size);
+        }
+        int sizeClass = sizeClass(size);
+        ThreadCache cache = caches.get();
+        ByteBuffer buffer;
+        int count = cache.counts[sizeClass];
+        if (count > 0) {
+            buffer = cache.stacks[sizeClass][--count];
+            cache.stacks[sizeClass][count] = null;
+            cache.counts[sizeClass] = count;
+            cache.cachedBytes -= buffer.capacity();
+            hits.increment();
+        } else {
+            int capacity = 1 << (sizeClass + MIN_SHIFT);
+            buffer = allocate(capacity);
+            misses.increment();
+            allocatedBytes.add(capacity);
+        }
+        int outstanding = ++cache.outstanding[sizeClass];
+        if (outstanding > cache.highWater[sizeClass]) {
+            cache.highWater[sizeClass] = outstanding;
+        }
+        if (++cache.acquiresSinceTrim >= TRIM_WINDOW) {
+            trim(cache);
+        }
+        buffer.clear().limit(size);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区；null、超过1MB或容量不是分级尺寸的缓冲区直接忽略
+     *
+     * @throws IllegalArgumentException 堆内存和直接内存混用，或者是只读视图、不独占底层数组的堆缓冲区
+     * @throws IllegalStateException    同一个缓冲区（或共享底层数组的duplicate()）在当前线程重复归还
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        if (buffer.isDirect() != direct) {
+            throw new IllegalArgumentException("缓冲区类型与arena不一致: " + name);
+        }
+        if (buffer.isReadOnly()) {
+            throw new IllegalArgumentException("不能归还只读缓冲区: " + name);
+        }
+        if (!direct && (!buffer.hasArray() || buffer.arrayOffset() != 0
+                || buffer.array().length != buffer.capacity())) {
+            throw new IllegalArgumentException("缓冲区不是由arena分配的（slice()等视图）: " + name);
+        }
+        int capacity = buffer.capacity();
+        if (capacity > MAX_POOLED_CAPACITY || capacity < (1 << MIN_SHIFT) || Integer.bitCount(capacity) != 1) {
+            return;
+        }
+        int sizeClass = Integer.numberOfTrailingZeros(capacity) - MIN_SHIFT;
+        ThreadCache cache = caches.get();
+        ByteBuffer[] stack = cache.stacks[sizeClass];
+        int count = cache.counts[sizeClass];
+        for (int i = 0; i < count; i++) {
+            if (stack[i] == buffer || (!direct && stack[i].array() == buffer.array())) {
+                throw new IllegalStateException("缓冲区重复归还");
+            }
+        }
+        if (cache.outstanding[sizeClass] > 0) {
+            cache.outstanding[sizeClass]--;
+        }
+        if (count < maxCachedPerClass && cache.cachedBytes + capacity <= maxCachedBytesPerThread) {
+            stack[count] = buffer;
+            cache.counts[sizeClass] = count + 1;
+            cache.cachedBytes += capacity;
+        } else {
+            droppedBuffers.increment();
+        }
+    }
+
+    /**
+     * 立即按高水位回收当前线程的缓存，适合在一批突发任务结束后调用
+     */
+    public void trimCurrentThread() {
+        if (caches.isSet()) {
+            trim(caches.get());
+        }
+    }
+
+    /**
+     * 丢弃当前线程的全部缓存
+     */
+    public void releaseCurrentThread() {
+        if (!caches.isSet()) {
+            return;
+        }
+        ThreadCache cache = caches.get();
+        for (int c = 0; c < CLASS_COUNT; c++) {
+            dropCached(cache, c, 0);
+        }
+    }
+
+    /**
+     * 所有线程的内存使用汇总；各线程的缓存字节数不加同步地读取，是近似值
+     */
+    public Stats stats() {
+        long cached = 0;
+        int threads = 0;
+        for (Iterator<WeakReference<ThreadCache>> it = liveCaches.iterator(); it.hasNext(); ) {
+            ThreadCache cache = it.next().get();
+            if (cache == null) {
+                it.remove();
+                continue;
+            }
+            cached += cache.cachedBytes;
+            threads++;
+        }
+        return new Stats(name, direct, threads, cached, allocatedBytes.sum(), hits.sum(), misses.sum(),
+                unpooled.sum(), droppedBuffers.sum(), trimmedBytes.sum());
+    }
+
+    /**
+     * 线程池的线程会因keepAlive超时退出，没有人调用stats()时也要清掉已回收的缓存引用，否则liveCaches只增不减
+     */
+    private ThreadCache newCache() {
+        drainDeadCaches();
+        ThreadCache cache = new ThreadCache(maxCachedPerClass);
+        liveCaches.add(new WeakReference<>(cache, deadCaches));
+        return cache;
+    }
+
+    private void drainDeadCaches() {
+        Reference<? extends ThreadCache> reference;
+        while ((reference = deadCaches.poll()) != null) {
+            liveCaches.remove(reference);
+        }
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * 每级缓存数量削到本窗口的高水位，然后以当前借出数开始新窗口
+     */
+    private void trim(ThreadCache cache) {
+        for (int c = 0; c < CLASS_COUNT; c++) {
+            dropCached(cache, c, cache.highWater[c]);
+            cache.highWater[c] = cache.outstanding[c];
+        }
+        cache.acquiresSinceTrim = 0;
+    }
+
+    private void dropCached(ThreadCache cache, int sizeClass, int keep) {
+        int count = cache.counts[sizeClass];
+        if (count <= keep) {
+            return;
+        }
+        ByteBuffer[] stack = cache.stacks[sizeClass];
+        long dropped = 0;
+        for (int i = keep; i < count; i++) {
+            dropped += stack[i].capacity();
+            stack[i] = null;
+        }
+        cache.counts[sizeClass] = keep;
+        cache.cachedBytes -= dropped;
+        trimmedBytes.add(dropped);
+    }
+
+    static int sizeClass(int size) {
+        if (size <= (1 << MIN_SHIFT)) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    /**
+     * 单个线程的缓存，只由所属线程读写（stats()除外）
+     */
+    private static final class ThreadCache {
+        final ByteBuffer[][] stacks;
+        final int[] counts = new int[CLASS_COUNT];
+        final int[] outstanding = new int[CLASS_COUNT];
+        final int[] highWater = new int[CLASS_COUNT];
+        long cachedBytes;
+        int acquiresSinceTrim;
+
+        ThreadCache(int maxCachedPerClass) {
+            stacks = new ByteBuffer[CLASS_COUNT][maxCachedPerClass];
+        }
+    }
+
+    /**
+     * 内存使用汇总
+     */
+    public static final class Stats {
+        private final String name;
+        private final boolean direct;
+        private final int threads;
+        private final long cachedBytes;
+        private final long allocatedBytes;
+        private final long hits;
+        private final long misses;
+        private final long unpooled;
+        private final long droppedBuffers;
+        private final long trimmedBytes;
+
+        Stats(String name, boolean direct, int threads, long cachedBytes, long allocatedBytes, long hits,
+              long misses, long unpooled, long droppedBuffers, long trimmedBytes) {
+            this.name = name;
+            this.direct = direct;
+            this.threads = threads;
+            this.cachedBytes = cachedBytes;
+            this.allocatedBytes = allocatedBytes;
+            this.hits = hits;
+            this.misses = misses;
+            this.unpooled = unpooled;
+            this.droppedBuffers = droppedBuffers;
+            this.trimmedBytes = trimmedBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirect() {
+            return direct;
+        }
+
+        /**
+         * 持有缓存的存活线程数
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * 当前缓存在各线程上、尚未借出的字节数
+         */
+        public long getCachedBytes() {
+            return cachedBytes;
+        }
+
+        /**
+         * 累计新分配的字节数（包括不缓存的大缓冲区）
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getUnpooled() {
+            return unpooled;
+        }
+
+        public long getDroppedBuffers() {
+            return droppedBuffers;
+        }
+
+        public long getTrimmedBytes() {
+            return trimmedBytes;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: 线程 %d, 缓存 %d KB, 累计分配 %d KB, 命中率 %.2f%% (命中 %d / 未命中 %d), "
+                            + "不缓存 %d, 丢弃 %d, 回收 %d KB",
+                    name, threads, cachedBytes / 1024, allocatedBytes / 1024, getHitRate() * 100, hits, misses,
+                    unpooled, droppedBuffers, trimmedBytes / 1024);
+        }
+    }
+}
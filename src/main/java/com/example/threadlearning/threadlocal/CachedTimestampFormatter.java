@@ -0,0 +1,129 @@
+package com.example.threadlearning.threadlocal;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 按秒缓存前缀的时间戳格式化器，格式固定为 yyyy-MM-dd HH:mm:ss.SSS
+ *
+ * 用ThreadLocal给每个线程一个SimpleDateFormat只解决了线程安全，每次format仍然要做完整的日历计算并分配String。
+ * 日志、序列化场景里相邻的时间戳绝大多数落在同一秒，这里的做法：
+ * 1. 缓存"yyyy-MM-dd HH:mm:ss"这19个字节的前缀，按epoch秒命中，只有跨秒时才用DateTimeFormatter重新计算
+ * 2. 毫秒部分每次直接写3个数字
+ * 3. 结果写入调用方提供的byte[]/char[]/StringBuilder，命中缓存时不分配任何对象
+ *
+ * 并发：缓存是按秒取模的小数组，每个槽位存一个不可变的Entry（字段全为final），
+ * 线程之间对槽位的读写不加锁——读到旧Entry时秒数对不上，按未命中重新计算并覆盖即可，
+ * final字段保证读到的Entry一定是完整构造的。多个槽位让乱序到达的相邻几秒时间戳不会互相踢出。
+ */
+public class CachedTimestampFormatter {
+
+    /**
+     * 输出长度：yyyy-MM-dd HH:mm:ss.SSS
+     */
+    public static final int LENGTH = 23;
+
+    private static final int PREFIX_LENGTH = 19;
+    private static final int SLOTS = 4;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private final DateTimeFormatter prefixFormatter;
+    private final Entry[] cache = new Entry[SLOTS];
+
+    public CachedTimestampFormatter() {
+        this(ZoneId.systemDefault());
+    }
+
+    public CachedTimestampFormatter(ZoneId zone) {
+        this.prefixFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(zone);
+    }
+
+    /**
+     * 写入byte[]（ASCII），返回写入后的偏移量
+     */
+    public int format(long epochMillis, byte[] buffer, int offset) {
+        long second = Math.floorDiv(epochMillis, 1000L);
+        int millis = (int) Math.floorMod(epochMillis, 1000L);
+        byte[] prefix = entry(second).prefix;
+        System.arraycopy(prefix, 0, buffer, offset, PREFIX_LENGTH);
+        int pos = offset + PREFIX_LENGTH;
+        buffer[pos++] = '.';
+        buffer[pos++] = (byte) ('0' + millis / 100);
+        buffer[pos++] = (byte) ('0' + millis / 10 % 10);
+        buffer[pos++] = (byte) ('0' + millis % 10);
+        return pos;
+    }
+
+    /**
+     * 写入char[]，返回写入后的偏移量
+     */
+    public int format(long epochMillis, char[] buffer, int offset) {
+        long second = Math.floorDiv(epochMillis, 1000L);
+        int millis = (int) Math.floorMod(epochMillis, 1000L);
+        byte[] prefix = entry(second).prefix;
+        int pos = offset;
+        for (int i = 0; i < PREFIX_LENGTH; i++) {
+            buffer[pos++] = (char) prefix[i];
+        }
+        buffer[pos++] = '.';
+        buffer[pos++] = (char) ('0' + millis / 100);
+        buffer[pos++] = (char) ('0' + millis / 10 % 10);
+        buffer[pos++] = (char) ('0' + millis % 10);
+        return pos;
+    }
+
+    /**
+     * 追加到StringBuilder，容量足够时不分配
+     */
+    public StringBuilder formatTo(long epochMillis, StringBuilder builder) {
+        long second = Math.floorDiv(epochMillis, 1000L);
+        int millis = (int) Math.floorMod(epochMillis, 1000L);
+        return builder.append(entry(second).text)
+                .append('.')
+                .append((char) ('0' + millis / 100))
+                .append((char) ('0' + millis / 10 % 10))
+                .append((char) ('0' + millis % 10));
+    }
+
+    /**
+     * 便捷方法，会分配一个String
+     */
+    public String format(long epochMillis) {
+        byte[] buffer = new byte[LENGTH];
+        format(epochMillis, buffer, 0);
+        return new String(buffer, StandardCharsets.ISO_8859_1);
+    }
+
+    private Entry entry(long second) {
+        int slot = (int) second & SLOT_MASK;
+        Entry entry = cache[slot];
+        if (entry != null && entry.second == second) {
+            return entry;
+        }
+        String text = prefixFormatter.format(Instant.ofEpochSecond(second));
+        if (text.length() != PREFIX_LENGTH) {
+            // 年份超出4位时格式长度会变化，这里只支持0000~9999年
+            throw new IllegalArgumentException("不支持的时间戳: " + second * 1000);
+        }
+        entry = new Entry(second, text);
+        cache[slot] = entry;
+        return entry;
+    }
+
+    /**
+     * 同一前缀的两种形式：byte[]用于写缓冲区，String用于追加StringBuilder
+     */
+    private static final class Entry {
+        final long second;
+        final byte[] prefix;
+        final String text;
+
+        Entry(long second, String text) {
+            this.second = second;
+            this.prefix = text.getBytes(StandardCharsets.ISO_8859_1);
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.threadlearning.threadlocal;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 基于下标数组的线程本地变量
+ *
+ * ThreadLocal.get()要对ThreadLocalMap做一次哈希探测：计算槽位、比较弱引用的key、冲突时线性探测，
+ * 线程上的ThreadLocal越多，冲突和缓存未命中越多。这里的做法与Netty的FastThreadLocal相同：
+ * 1. 每个FastThreadLocal创建时分配一个全局唯一的下标
+ * 2. 每个线程持有一个Object[]，get/set直接按下标访问，没有哈希和探测
+ * 3. 线程是FastThreadLocalThread时数组就是线程的字段；普通线程退化为用一个ThreadLocal保存数组，
+ *    不论有多少个FastThreadLocal都只需要一次ThreadLocal探测
+ *
+ * 注意：
+ * - 下标不回收，数组长度等于创建过的FastThreadLocal总数，应当像ThreadLocal一样声明为static字段，不要按请求创建
+ * - 线程池里的线程会复用，任务结束时仍需remove()，或调用removeAll()清理当前线程的全部变量
+ */
+public class FastThreadLocal<V> {
+
+    private static final AtomicInteger NEXT_INDEX = new AtomicInteger();
+    private static final Object UNSET = new Object();
+    private static final ThreadLocal<Object[]> SLOW_PATH = new ThreadLocal<>();
+
+    private final int index;
+
+    public FastThreadLocal() {
+        this.index = NEXT_INDEX.getAndIncrement();
+        if (index < 0) {
+            throw new IllegalStateException("FastThreadLocal数量超出上限");
+        }
+    }
+
+    public static <V> FastThreadLocal<V> withInitial(Supplier<? extends V> supplier) {
+        return new FastThreadLocal<V>() {
+            @Override
+            protected V initialValue() {
+                return supplier.get();
+            }
+        };
+    }
+
+    /**
+     * 当前线程没有设置过值时调用，默认返回null
+     */
+    protected V initialValue() {
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get() {
+        Object[] slots = slots(Thread.currentThread());
+        Object value = slots[index];
+        if (value != UNSET) {
+            return (V) value;
+        }
+        V initial = initialValue();
+        slots(Thread.currentThread())[index] = initial;
+        return initial;
+    }
+
+    public void set(V value) {
+        slots(Thread.currentThread())[index] = value;
+    }
+
+    public void remove() {
+        Object[] slots = existingSlots(Thread.currentThread());
+        if (slots != null && index < slots.length) {
+            slots[index] = UNSET;
+        }
+    }
+
+    /**
+     * 当前线程是否设置过值（包括initialValue产生的值）
+     */
+    public boolean isSet() {
+        Object[] slots = existingSlots(Thread.currentThread());
+        return slots != null && index < slots.length && slots[index] != UNSET;
+    }
+
+    /**
+     * 清理当前线程上的所有FastThreadLocal
+     */
+    public static void removeAll() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof FastThreadLocalThread) {
+            ((FastThreadLocalThread) thread).setFastThreadLocals(null);
+        } else {
+            SLOW_PATH.remove();
+        }
+    }
+
+    /**
+     * 已分配的下标数，即每个线程数组的最大长度
+     */
+    public static int indexedCount() {
+        return NEXT_INDEX.get();
+    }
+
+    /**
+     * 槽位是否未设置，供ThreadLocalInspector读取其他线程的数组时使用
+     */
+    static boolean isUnset(Object slot) {
+        return slot == UNSET;
+    }
+
+    /**
+     * 当前线程的数组，长度不够时扩容
+     */
+    private Object[] slots(Thread thread) {
+        Object[] slots = existingSlots(thread);
+        if (slots != null && index < slots.length) {
+            return slots;
+        }
+        Object[] grown = grow(slots, index);
+        if (thread instanceof FastThreadLocalThread) {
+            ((FastThreadLocalThread) thread).setFastThreadLocals(grown);
+        } else {
+            SLOW_PATH.set(grown);
+        }
+        return grown;
+    }
+
+    private static Object[] existingSlots(Thread thread) {
+        if (thread instanceof FastThreadLocalThread) {
+            return ((FastThreadLocalThread) thread).getFastThreadLocals();
+        }
+        return SLOW_PATH.get();
+    }
+
+    /**
+     * 按2的幂扩容，新槽位填充UNSET
+     */
+    private static Object[] grow(Object[] old, int index) {
+        int oldLength = old == null ? 0 : old.length;
+        int newLength = Math.max(32, Integer.highestOneBit(Math.max(index, NEXT_INDEX.get() - 1)) << 1);
+        Object[] grown = old == null ? new Object[newLength] : Arrays.copyOf(old, newLength);
+        Arrays.fill(grown, oldLength, newLength, UNSET);
+        return grown;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.threadlearning.threadlocal;
+
+/**
+ * 直接持有FastThreadLocal数组的线程
+ * 数组只由线程自己读写，不需要volatile或同步
+ */
+public class FastThreadLocalThread extends Thread {
+
+    private Object[] fastThreadLocals;
+
+    public FastThreadLocalThread(Runnable target, String name) {
+        super(target, name);
+    }
+
+    public FastThreadLocalThread(ThreadGroup group, Runnable target, String name) {
+        super(group, target, name);
+    }
+
+    Object[] getFastThreadLocals() {
+        return fastThreadLocals;
+    }
+
+    void setFastThreadLocals(Object[] fastThreadLocals) {
+        this.fastThreadLocals = fastThreadLocals;
+    }
+}
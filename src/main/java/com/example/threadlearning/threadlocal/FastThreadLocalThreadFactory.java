@@ -0,0 +1,39 @@
+package com.example.threadlearning.threadlocal;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 创建FastThreadLocalThread的线程工厂
+ * 线程名为 前缀+序号（从1开始），与Spring ThreadPoolTaskExecutor的threadNamePrefix命名方式一致，
+ * 线程退出前清理该线程上的全部FastThreadLocal
+ */
+public class FastThreadLocalThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+    private final String namePrefix;
+    private final boolean daemon;
+
+    public FastThreadLocalThreadFactory(String namePrefix) {
+        this(namePrefix, false);
+    }
+
+    public FastThreadLocalThreadFactory(String namePrefix, boolean daemon) {
+        this.namePrefix = namePrefix;
+        this.daemon = daemon;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread t = new FastThreadLocalThread(() -> {
+            try {
+                r.run();
+            } finally {
+                FastThreadLocal.removeAll();
+            }
+        }, namePrefix + threadNumber.getAndIncrement());
+        t.setDaemon(daemon);
+        t.setPriority(Thread.NORM_PRIORITY);
+        return t;
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.threadlearning.threadlocal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * 绑定到作用域的不可变请求上下文
+ *
+ * InheritableThreadLocal的问题：
+ * 1. 每次new Thread都要复制父线程整个inheritableThreadLocals表（所有可继承变量，不只是请求上下文），短任务多时开销明显
+ * 2. 线程池的线程只在创建时继承一次，之后执行别的请求的任务时读到的仍是创建它的那个请求的值
+ *
+ * 这里的做法与ScopedValue一致：
+ * 1. 上下文不可变，只能通过runWith/callWith绑定到一段代码上，代码执行完自动恢复外层的绑定，不需要remove
+ * 2. 派生任务时用propagate()捕获当前上下文的引用，任务执行时在工作线程上重新绑定，不复制任何表
+ * 3. 嵌套作用域用withAttribute等方法生成新对象再绑定，外层看到的上下文不受影响
+ *
+ * 运行时有可用的java.lang.ScopedValue（Java 21需要--enable-preview，Java 25起正式提供）时通过MethodHandle使用它，
+ * 否则退化为非继承的ThreadLocal，在runWith里保存并恢复外层值，语义相同。
+ */
+public final class RequestContext {
+
+    private static final Binding BINDING = createBinding();
+
+    private final String requestId;
+    private final String userId;
+    private final Map<String, String> attributes;
+
+    private RequestContext(String requestId, String userId, Map<String, String> attributes) {
+        this.requestId = requestId;
+        this.userId = userId;
+        this.attributes = attributes;
+    }
+
+    public static RequestContext of(String requestId, String userId) {
+        return new RequestContext(requestId, userId, Collections.emptyMap());
+    }
+
+    /**
+     * 返回增加（或替换）一个属性后的新上下文，当前对象不变
+     */
+    public RequestContext withAttribute(String key, String value) {
+        Map<String, String> copy = new LinkedHashMap<>(attributes);
+        copy.put(key, value);
+        return new RequestContext(requestId, userId, Collections.unmodifiableMap(copy));
+    }
+
+    public RequestContext withUserId(String userId) {
+        return new RequestContext(requestId, userId, attributes);
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getAttribute(String key) {
+        return attributes.get(key);
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestContext{requestId=" + requestId + ", userId=" + userId + ", attributes=" + attributes + "}";
+    }
+
+    /**
+     * 在绑定了context的作用域中执行operation，结束后恢复外层的绑定
+     */
+    public static void runWith(RequestContext context, Runnable operation) {
+        if (context == null) {
+            throw new IllegalArgumentException("context不能为null");
+        }
+        BINDING.run(context, operation);
+    }
+
+    /**
+     * 在绑定了context的作用域中执行operation并返回结果
+     */
+    public static <T> T callWith(RequestContext context, Callable<T> operation) throws Exception {
+        Object[] result = new Object[1];
+        Exception[] failure = new Exception[1];
+        runWith(context, () -> {
+            try {
+                result[0] = operation.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+
+    /**
+     * 在绑定了context的作用域中执行不抛受检异常的operation并返回结果
+     */
+    public static <T> T supplyWith(RequestContext context, Supplier<T> operation) {
+        Object[] result = new Object[1];
+        runWith(context, () -> result[0] = operation.get());
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+
+    /**
+     * 当前作用域绑定的上下文
+     *
+     * @throws NoSuchElementException 不在任何runWith/callWith作用域中
+     */
+    public static RequestContext current() {
+        RequestContext context = BINDING.get();
+        if (context == null) {
+            throw new NoSuchElementException("当前线程没有绑定RequestContext");
+        }
+        return context;
+    }
+
+    public static boolean isBound() {
+        return BINDING.get() != null;
+    }
+
+    /**
+     * 捕获调用时的上下文，返回的任务在任意线程上执行时都绑定同一个上下文；没有绑定时原样返回
+     */
+    public static Runnable propagate(Runnable task) {
+        RequestContext captured = BINDING.get();
+        if (captured == null) {
+            return task;
+        }
+        return () -> BINDING.run(captured, task);
+    }
+
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        RequestContext captured = BINDING.get();
+        if (captured == null) {
+            return task;
+        }
+        return () -> callWith(captured, task);
+    }
+
+    /**
+     * 包装executor，提交的每个任务都带上提交时的上下文
+     */
+    public static Executor propagating(Executor executor) {
+        return task -> executor.execute(propagate(task));
+    }
+
+    /**
+     * 当前使用的实现：ScopedValue或ThreadLocal
+     */
+    public static String carrierName() {
+        return BINDING.name();
+    }
+
+    private static Binding createBinding() {
+        Binding scoped = ScopedValueBinding.tryCreate();
+        return scoped != null ? scoped : new ThreadLocalBinding();
+    }
+
+    /**
+     * 上下文的存放方式
+     */
+    private interface Binding {
+
+        /**
+         * 当前绑定的上下文，没有绑定时返回null
+         */
+        RequestContext get();
+
+        void run(RequestContext context, Runnable operation);
+
+        String name();
+    }
+
+    /**
+     * Java 17的实现：普通（非继承）ThreadLocal，作用域结束时恢复外层值
+     */
+    private static final class ThreadLocalBinding implements Binding {
+
+        private static final ThreadLocal<RequestContext> CURRENT = new ThreadLocal<>();
+
+        @Override
+        public RequestContext get() {
+            return CURRENT.get();
+        }
+
+        @Override
+        public void run(RequestContext context, Runnable operation) {
+            RequestContext outer = CURRENT.get();
+            CURRENT.set(context);
+            try {
+                operation.run();
+            } finally {
+                if (outer == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(outer);
+                }
+            }
+        }
+
+        @Override
+        public String name() {
+            return "ThreadLocal";
+        }
+    }
+
+    /**
+     * 基于java.lang.ScopedValue的实现
+     * 编译目标是17，只能通过MethodHandle调用；只用各版本签名都没有变化的where、Carrier.run、isBound、get
+     */
+    private static final class ScopedValueBinding implements Binding {
+
+        private final MethodHandle where;
+        private final MethodHandle carrierRun;
+        private final MethodHandle isBound;
+        private final MethodHandle get;
+
+        private ScopedValueBinding(MethodHandle where, MethodHandle carrierRun, MethodHandle isBound, MethodHandle get) {
+            this.where = where;
+            this.carrierRun = carrierRun;
+            this.isBound = isBound;
+            this.get = get;
+        }
+
+        /**
+         * ScopedValue不存在或未启用预览特性时返回null；绑定后读不回同一个对象也视为不可用
+         */
+        static Binding tryCreate() {
+            try {
+                Class<?> scopedValueClass = Class.forName("java.lang.ScopedValue");
+                Class<?> carrierClass = Class.forName("java.lang.ScopedValue$Carrier");
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                Object scopedValue = lookup.findStatic(scopedValueClass, "newInstance",
+                        MethodType.methodType(scopedValueClass)).invoke();
+                MethodHandle where = MethodHandles.insertArguments(lookup.findStatic(scopedValueClass, "where",
+                        MethodType.methodType(carrierClass, scopedValueClass, Object.class)), 0, scopedValue);
+                MethodHandle carrierRun = lookup.findVirtual(carrierClass, "run",
+                        MethodType.methodType(void.class, Runnable.class));
+                MethodHandle isBound = lookup.findVirtual(scopedValueClass, "isBound",
+                        MethodType.methodType(boolean.class)).bindTo(scopedValue);
+                MethodHandle get = lookup.findVirtual(scopedValueClass, "get",
+                        MethodType.methodType(Object.class)).bindTo(scopedValue);
+                ScopedValueBinding binding = new ScopedValueBinding(where, carrierRun, isBound, get);
+
+                RequestContext probe = RequestContext.of("probe", "probe");
+                RequestContext[] seen = new RequestContext[1];
+                binding.run(probe, () -> seen[0] = binding.get());
+                return seen[0] == probe && binding.get() == null ? binding : null;
+            } catch (Throwable e) {
+                return null;
+            }
+        }
+
+        @Override
+        public RequestContext get() {
+            try {
+                return (boolean) isBound.invoke() ? (RequestContext) get.invoke() : null;
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public void run(RequestContext context, Runnable operation) {
+            try {
+                carrierRun.invoke(where.invoke(context), operation);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        }
+
+        @Override
+        public String name() {
+            return "ScopedValue";
+        }
+
+        private static RuntimeException rethrow(Throwable e) {
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+}
@@ -3,13 +3,28 @@ package com.example.threadlearning.threadlocal;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntToLongFunction;
+import java.util.function.Supplier;
 
 /**
  * ThreadLocal使用示例和内存泄漏防范演示
@@ -19,6 +34,23 @@ import java.util.concurrent.atomic.AtomicInteger;
 @Component
 public class ThreadLocalDemo {
 
+    private static final int MAX_DEMO_LOCALS = 256;
+
+    /**
+     * FastThreadLocal的下标不回收，演示用的变量声明为静态，重复调用演示不会让下标无限增长
+     */
+    @SuppressWarnings("unchecked")
+    private static final ThreadLocal<Integer>[] DEMO_THREAD_LOCALS = new ThreadLocal[MAX_DEMO_LOCALS];
+    @SuppressWarnings("unchecked")
+    private static final FastThreadLocal<Integer>[] DEMO_FAST_THREAD_LOCALS = new FastThreadLocal[MAX_DEMO_LOCALS];
+
+    static {
+        for (int i = 0; i < MAX_DEMO_LOCALS; i++) {
+            DEMO_THREAD_LOCALS[i] = new ThreadLocal<>();
+            DEMO_FAST_THREAD_LOCALS[i] = new FastThreadLocal<>();
+        }
+    }
+
     private final Random random = new Random();
 
     /**
@@ -208,6 +240,88 @@ public class ThreadLocalDemo {
         log.info("内存泄漏演示完成");
     }
 
+    /**
+     * ThreadLocal泄漏检测演示
+     * 1. 线程池任务把LargeObject放进ThreadLocal后不remove，随后ThreadLocal对象本身不再被引用
+     * 2. GC回收ThreadLocal后，工作线程的ThreadLocalMap里留下key为null、value仍是1MB大对象的stale条目
+     * 3. 用ThreadLocalInspector检查工作线程，按线程输出条目数、stale条目数和估算大小，然后清理并复查
+     * 需要 --add-opens java.base/java.lang=ALL-UNNAMED
+     */
+    public void demonstrateLeakDetection() {
+        log.info("\n=== ThreadLocal泄漏检测演示 ===");
+
+        if (!ThreadLocalInspector.isAvailable()) {
+            log.warn("无法检查ThreadLocalMap: {}", ThreadLocalInspector.unavailableReason());
+            return;
+        }
+
+        List<Thread> workers = new CopyOnWriteArrayList<>();
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "leak-worker-" + counter.incrementAndGet());
+            workers.add(thread);
+            return thread;
+        });
+        // 一个仍在使用的ThreadLocal，作为正常条目的对照
+        ThreadLocal<String> liveContext = new ThreadLocal<>();
+
+        try {
+            leakLargeObjects(executor, liveContext, 4);
+
+            // 等工作线程从任务代码中返回（栈上不再引用任务），ThreadLocal对象随即不可达，GC后Entry的key被清除
+            Thread.sleep(200);
+            System.gc();
+            Thread.sleep(200);
+
+            for (Thread worker : workers) {
+                ThreadLocalInspector.ThreadSnapshot snapshot = ThreadLocalInspector.inspect(worker, false);
+                log.info("线程 {}: 条目 {} 个，stale {} 个，估算 {} KB，其中stale {} KB",
+                        snapshot.getThreadName(), snapshot.getEntryCount(), snapshot.getStaleEntryCount(),
+                        snapshot.getEstimatedBytes() / 1024, snapshot.getStaleEstimatedBytes() / 1024);
+                snapshot.getEntries().stream().filter(ThreadLocalInspector.EntryInfo::isStale)
+                        .forEach(entry -> log.info("    stale条目: value={} 估算 {} KB",
+                                entry.getValueClass(), entry.getEstimatedBytes() / 1024));
+            }
+
+            for (Thread worker : workers) {
+                ThreadLocalInspector.ThreadSnapshot purged = ThreadLocalInspector.inspect(worker, true);
+                log.info("清理线程 {}: 清理 {} 个stale条目，释放约 {} KB",
+                        purged.getThreadName(), purged.getPurgedEntries(), purged.getPurgedBytes() / 1024);
+            }
+            for (Thread worker : workers) {
+                ThreadLocalInspector.ThreadSnapshot after = ThreadLocalInspector.inspect(worker, false);
+                log.info("复查线程 {}: 条目 {} 个，stale {} 个", after.getThreadName(),
+                        after.getEntryCount(), after.getStaleEntryCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+        log.info("Spring线程池的实时检查结果: GET /thread-local/leak-report（加 ?purge=true 同时清理）");
+    }
+
+    /**
+     * 提交任务把大对象放进一个局部的ThreadLocal且不清理；方法返回后该ThreadLocal不再可达
+     */
+    private void leakLargeObjects(ExecutorService executor, ThreadLocal<String> liveContext, int tasks)
+            throws InterruptedException {
+        ThreadLocal<LargeObject> leaking = new ThreadLocal<>();
+        CountDownLatch latch = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; i++) {
+            final int taskId = i;
+            executor.submit(() -> {
+                try {
+                    leaking.set(new LargeObject("LeakedData-" + taskId));
+                    liveContext.set("request-" + taskId);
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await();
+    }
+
     /**
      * InheritableThreadLocal演示
      */
@@ -252,6 +366,110 @@ public class ThreadLocalDemo {
         inheritableThreadLocal.remove();
     }
 
+    /**
+     * 作用域请求上下文演示（RequestContext，InheritableThreadLocal的替代方案）
+     * 1. 线程池：InheritableThreadLocal只在线程创建时继承，后续请求读到旧值；RequestContext按任务传递
+     * 2. 嵌套作用域：内层绑定新对象，退出后自动恢复外层，作用域外isBound()为false
+     * 3. 扇出开销：父线程上另有若干可继承变量（MDC、安全上下文等）时，每个子线程都要复制整张表
+     */
+    public void demonstrateScopedRequestContext() {
+        log.info("\n=== 作用域请求上下文演示 ===");
+        log.info("RequestContext实现: {}", RequestContext.carrierName());
+
+        InheritableThreadLocal<String> inheritableRequest = new InheritableThreadLocal<>();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            for (String requestId : new String[]{"req-A", "req-B"}) {
+                inheritableRequest.set(requestId);
+                String seen = pool.submit(inheritableRequest::get).get();
+                String scoped = RequestContext.callWith(RequestContext.of(requestId, "user-1"),
+                        () -> pool.submit(RequestContext.propagate(
+                                () -> RequestContext.current().getRequestId())).get());
+                log.info("提交请求 {} 的任务 - InheritableThreadLocal读到: {}, RequestContext读到: {}",
+                        requestId, seen, scoped);
+            }
+        } catch (Exception e) {
+            log.error("线程池上下文传递演示失败", e);
+        } finally {
+            inheritableRequest.remove();
+            pool.shutdown();
+        }
+
+        RequestContext.runWith(RequestContext.of("req-C", "user-2"), () -> {
+            RequestContext.runWith(RequestContext.current().withAttribute("stage", "inner"), () ->
+                    log.info("内层作用域: {}", RequestContext.current()));
+            log.info("退出内层后: {}", RequestContext.current());
+        });
+        log.info("作用域外isBound: {}", RequestContext.isBound());
+
+        int extraLocals = 32;
+        List<InheritableThreadLocal<String>> ambient = new ArrayList<>();
+        for (int i = 0; i < extraLocals; i++) {
+            InheritableThreadLocal<String> local = new InheritableThreadLocal<>();
+            local.set("ambient-" + i);
+            ambient.add(local);
+        }
+        int tasks = 5000;
+        RequestContext context = RequestContext.of("req-D", "user-3");
+        ExecutorService fanOutPool = Executors.newFixedThreadPool(4);
+        Executor propagating = RequestContext.propagating(fanOutPool);
+        try {
+            long inheritableNanos = 0;
+            long scopedNanos = 0;
+            long pooledNanos = 0;
+            // 第一轮预热
+            for (int round = 0; round < 2; round++) {
+                inheritableRequest.set("req-D");
+                try {
+                    inheritableNanos = fanOut(tasks, task -> new Thread(task).start(), inheritableRequest::get, "req-D");
+                } finally {
+                    inheritableRequest.remove();
+                }
+                scopedNanos = RequestContext.callWith(context, () -> fanOut(tasks,
+                        task -> new Thread(null, RequestContext.propagate(task), "scoped-child", 0, false).start(),
+                        () -> RequestContext.current().getRequestId(), "req-D"));
+                pooledNanos = RequestContext.callWith(context, () -> fanOut(tasks, propagating::execute,
+                        () -> RequestContext.current().getRequestId(), "req-D"));
+            }
+            log.info("扇出{}个任务（父线程另有{}个可继承变量）:", tasks, extraLocals);
+            log.info("  InheritableThreadLocal + 新线程: {} μs/任务",
+                    String.format("%.2f", inheritableNanos / 1000.0 / tasks));
+            log.info("  RequestContext + 不继承的新线程: {} μs/任务",
+                    String.format("%.2f", scopedNanos / 1000.0 / tasks));
+            log.info("  RequestContext + 线程池: {} μs/任务", String.format("%.2f", pooledNanos / 1000.0 / tasks));
+            log.info("  新线程的创建和启动远比复制继承表昂贵，扇出密集时用线程池 + RequestContext.propagate传递上下文");
+        } catch (Exception e) {
+            log.error("扇出开销对比失败", e);
+        } finally {
+            ambient.forEach(ThreadLocal::remove);
+            fanOutPool.shutdown();
+        }
+    }
+
+    /**
+     * 用launcher启动tasks个读取上下文的任务，等待全部完成，返回耗时（纳秒）
+     */
+    private long fanOut(int tasks, Consumer<Runnable> launcher, Supplier<String> reader, String expected)
+            throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(tasks);
+        AtomicInteger mismatches = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            launcher.accept(() -> {
+                if (!expected.equals(reader.get())) {
+                    mismatches.incrementAndGet();
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        if (mismatches.get() > 0) {
+            log.warn("{} 个任务读到了错误的上下文", mismatches.get());
+        }
+        return elapsed;
+    }
+
     /**
      * 使用ThreadLocal实现DateFormat线程安全
      */
@@ -302,6 +520,59 @@ public class ThreadLocalDemo {
         log.info("DateFormat线程安全演示完成");
     }
 
+    /**
+     * 按秒缓存前缀的时间戳格式化演示
+     * 1. 正确性：多个线程格式化随机时间戳（含跨秒），结果与DateTimeFormatter逐一比对
+     * 2. 性能：ThreadLocal&lt;SimpleDateFormat&gt; vs DateTimeFormatter vs CachedTimestampFormatter写入线程自己的缓冲区
+     */
+    public void demonstrateCachedTimestampFormatter() {
+        log.info("\n=== 按秒缓存的时间戳格式化演示 ===");
+
+        CachedTimestampFormatter cachedFormatter = new CachedTimestampFormatter();
+        DateTimeFormatter reference = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+                .withZone(ZoneId.systemDefault());
+
+        // 正确性：相邻时间戳乱序交错，覆盖同一秒命中、跨秒和槽位冲突
+        AtomicInteger mismatches = new AtomicInteger();
+        long base = System.currentTimeMillis();
+        performanceTest("正确性校验", 4, 50000, () -> {
+            long timestamp = base + ThreadLocalRandom.current().nextLong(-10_000, 10_000);
+            char[] buffer = new char[CachedTimestampFormatter.LENGTH];
+            cachedFormatter.format(timestamp, buffer, 0);
+            if (!new String(buffer).equals(reference.format(Instant.ofEpochMilli(timestamp)))) {
+                mismatches.incrementAndGet();
+            }
+        }, () -> {
+        });
+        log.info("4个线程共比对 200000 个时间戳，不一致: {} 个", mismatches.get());
+        log.info("示例: {}", cachedFormatter.format(base));
+
+        // 性能：时间戳用System.currentTimeMillis()，与日志场景一致
+        int threadCount = 4;
+        int operationsPerThread = 1_000_000;
+        ThreadLocal<SimpleDateFormat> simpleDateFormat = ThreadLocal.withInitial(
+                () -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS"));
+        long sdfTime = performanceTest("ThreadLocal<SimpleDateFormat>", threadCount, operationsPerThread,
+                () -> simpleDateFormat.get().format(new Date(System.currentTimeMillis())),
+                simpleDateFormat::remove);
+
+        long dtfTime = performanceTest("DateTimeFormatter", threadCount, operationsPerThread,
+                () -> reference.format(Instant.ofEpochMilli(System.currentTimeMillis())),
+                () -> {
+                });
+
+        // 每个线程一个复用的输出缓冲区，相当于日志框架里每个线程的编码缓冲
+        ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[CachedTimestampFormatter.LENGTH]);
+        long cachedTime = performanceTest("CachedTimestampFormatter", threadCount, operationsPerThread,
+                () -> cachedFormatter.format(System.currentTimeMillis(), buffers.get(), 0),
+                buffers::remove);
+
+        log.info("{}个线程各格式化{}次:", threadCount, operationsPerThread);
+        log.info("ThreadLocal<SimpleDateFormat>: {} ms", sdfTime);
+        log.info("DateTimeFormatter: {} ms", dtfTime);
+        log.info("CachedTimestampFormatter(写入缓冲区): {} ms", cachedTime);
+    }
+
     /**
      * ThreadLocal性能对比演示
      */
@@ -343,6 +614,195 @@ public class ThreadLocalDemo {
         log.info("AtomicInteger: {} ms", atomicTime);
     }
 
+    /**
+     * FastThreadLocal演示
+     * 每个线程上分别有1、16、256个存活的线程本地变量，轮流读取，对比每次get的耗时：
+     * 1. ThreadLocal：ThreadLocalMap哈希探测
+     * 2. FastThreadLocal + FastThreadLocalThread：按下标直接读线程字段里的数组
+     * 3. FastThreadLocal + 普通线程：先用一个ThreadLocal取出数组，再按下标读取
+     * ThreadPoolConfig中的线程池已使用FastThreadLocalThreadFactory
+     */
+    public void demonstrateFastThreadLocal() {
+        log.info("\n=== FastThreadLocal演示 ===");
+
+        ThreadFactory fastFactory = new FastThreadLocalThreadFactory("fast-local-");
+        ThreadFactory plainFactory = runnable -> new Thread(runnable, "plain-local");
+        for (int localCount : new int[]{1, 16, MAX_DEMO_LOCALS}) {
+            double threadLocal = measureLocalAccess(plainFactory, localCount, false);
+            double fast = measureLocalAccess(fastFactory, localCount, true);
+            double fallback = measureLocalAccess(plainFactory, localCount, true);
+            log.info("{}个变量: ThreadLocal {} ns/次, FastThreadLocal {} ns/次, FastThreadLocal(普通线程) {} ns/次",
+                    localCount, String.format("%.2f", threadLocal), String.format("%.2f", fast),
+                    String.format("%.2f", fallback));
+        }
+        log.info("已分配的FastThreadLocal下标数: {}", FastThreadLocal.indexedCount());
+    }
+
+    /**
+     * 在factory创建的新线程上设置localCount个变量，然后轮流读取，返回每次get的平均纳秒数
+     */
+    private double measureLocalAccess(ThreadFactory factory, int localCount, boolean fast) {
+        int iterations = 20_000_000;
+        int mask = localCount - 1;
+        double[] result = new double[1];
+        Thread thread = factory.newThread(() -> {
+            for (int i = 0; i < localCount; i++) {
+                if (fast) {
+                    DEMO_FAST_THREAD_LOCALS[i].set(i);
+                } else {
+                    DEMO_THREAD_LOCALS[i].set(i);
+                }
+            }
+            long sum = 0;
+            long start = 0;
+            // 前一半迭代用于预热
+            for (int i = 0; i < iterations * 2; i++) {
+                if (i == iterations) {
+                    start = System.nanoTime();
+                }
+                sum += fast ? DEMO_FAST_THREAD_LOCALS[i & mask].get() : DEMO_THREAD_LOCALS[i & mask].get();
+            }
+            result[0] = (double) (System.nanoTime() - start) / iterations;
+            for (int i = 0; i < localCount; i++) {
+                DEMO_THREAD_LOCALS[i].remove();
+                DEMO_FAST_THREAD_LOCALS[i].remove();
+            }
+            if (sum == 42) {
+                log.debug("防止循环被优化掉");
+            }
+        });
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result[0];
+    }
+
+    /**
+     * 每线程缓冲区池演示（BufferArena）
+     * 1. 热路径对比：每个任务申请512B~32KB的临时缓冲区写入并校验，统计工作线程上每个任务的分配字节数
+     * 2. 高水位回收：一批任务同时持有多个缓冲区造成缓存膨胀，之后的平稳任务让缓存回落
+     * 3. 直接内存arena的使用统计
+     */
+    public void demonstrateBufferArena() {
+        log.info("\n=== 每线程缓冲区池演示 ===");
+
+        int[] sizes = {512, 4096, 32 * 1024};
+        int tasks = 20_000;
+        BufferArena arena = BufferArena.heap();
+        ExecutorService executor = Executors.newFixedThreadPool(4, new FastThreadLocalThreadFactory("arena-worker-"));
+        try {
+            double[] plain = new double[2];
+            double[] pooled = new double[2];
+            // 第一轮预热
+            for (int round = 0; round < 2; round++) {
+                plain = runBufferTasks(executor, tasks, taskId -> {
+                    ByteBuffer buffer = ByteBuffer.allocate(sizes[taskId % sizes.length]);
+                    return fillAndChecksum(buffer);
+                });
+                pooled = runBufferTasks(executor, tasks, taskId -> {
+                    ByteBuffer buffer = arena.acquire(sizes[taskId % sizes.length]);
+                    try {
+                        return fillAndChecksum(buffer);
+                    } finally {
+                        arena.release(buffer);
+                    }
+                });
+            }
+            log.info("每次new ByteBuffer: {} B/任务, {} μs/任务",
+                    String.format("%.0f", plain[0]), String.format("%.2f", plain[1]));
+            log.info("BufferArena:       {} B/任务, {} μs/任务",
+                    String.format("%.0f", pooled[0]), String.format("%.2f", pooled[1]));
+            log.info("{}", arena.stats());
+
+            // 突发：每个任务同时持有8个32KB缓冲区
+            runBufferTasks(executor, 400, taskId -> {
+                ByteBuffer[] held = new ByteBuffer[8];
+                long sum = 0;
+                for (int i = 0; i < held.length; i++) {
+                    held[i] = arena.acquire(32 * 1024);
+                    sum += fillAndChecksum(held[i]);
+                }
+                for (ByteBuffer buffer : held) {
+                    arena.release(buffer);
+                }
+                return sum;
+            });
+            log.info("突发之后: {}", arena.stats());
+            // 高水位按窗口计算：包含突发的窗口结束时仍保留8个，下一个平稳窗口结束时才削到1个
+            int steadyTasks = tasks * 2;
+            runBufferTasks(executor, steadyTasks, taskId -> {
+                ByteBuffer buffer = arena.acquire(512);
+                try {
+                    return fillAndChecksum(buffer);
+                } finally {
+                    arena.release(buffer);
+                }
+            });
+            log.info("平稳运行{}个任务之后: {}", steadyTasks, arena.stats());
+
+            BufferArena direct = BufferArena.direct();
+            runBufferTasks(executor, tasks, taskId -> {
+                ByteBuffer buffer = direct.acquire(sizes[taskId % sizes.length]);
+                try {
+                    return fillAndChecksum(buffer);
+                } finally {
+                    direct.release(buffer);
+                }
+            });
+            log.info("{}", direct.stats());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 在线程池上执行tasks个任务，返回{每个任务在工作线程上的平均分配字节数, 平均耗时μs}
+     * 分配字节数只统计任务体本身，不包括提交任务产生的对象
+     */
+    private double[] runBufferTasks(ExecutorService executor, int tasks, IntToLongFunction body)
+            throws InterruptedException {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        LongAdder allocated = new LongAdder();
+        LongAdder checksum = new LongAdder();
+        CountDownLatch done = new CountDownLatch(tasks);
+        long start = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            final int taskId = i;
+            executor.execute(() -> {
+                long before = threadBean.getCurrentThreadAllocatedBytes();
+                long result = body.applyAsLong(taskId);
+                allocated.add(threadBean.getCurrentThreadAllocatedBytes() - before);
+                checksum.add(result);
+                done.countDown();
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        return new double[]{(double) allocated.sum() / tasks, elapsed / 1000.0 / tasks};
+    }
+
+    /**
+     * 模拟编码：按long写满缓冲区再读回求和
+     */
+    private static long fillAndChecksum(ByteBuffer buffer) {
+        int longs = buffer.remaining() / Long.BYTES;
+        for (int i = 0; i < longs; i++) {
+            buffer.putLong(i * 31L);
+        }
+        buffer.flip();
+        long sum = 0;
+        while (buffer.remaining() >= Long.BYTES) {
+            sum += buffer.getLong();
+        }
+        return sum;
+    }
+
     /**
      * 性能测试辅助方法
      */
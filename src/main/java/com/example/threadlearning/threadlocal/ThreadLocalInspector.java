@@ -0,0 +1,432 @@
+package com.example.threadlearning.threadlocal;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 通过反射读取任意线程的ThreadLocalMap
+ *
+ * Thread.threadLocals / inheritableThreadLocals 是ThreadLocal.ThreadLocalMap，内部是Entry[]，
+ * Entry是以ThreadLocal为referent的WeakReference，value是强引用：
+ * ThreadLocal对象本身被回收后，key变成null（stale entry），但value仍然被线程强引用着，
+ * 线程池里的线程不会退出，value就一直泄漏，直到该线程恰好在同一个槽位附近调用set/get/remove触发清理。
+ *
+ * Java 17默认不允许反射访问java.lang的私有字段，需要在启动参数中加上
+ * --add-opens java.base/java.lang=ALL-UNNAMED（打包后的jar已在MANIFEST中声明Add-Opens）；
+ * 未打开时isAvailable()返回false，unavailableReason()给出原因。
+ *
+ * 清理stale entry只把Entry.value置为null，不修改table结构：
+ * ThreadLocalMap没有同步，结构性修改只能由所属线程自己做；而key已经为null的Entry不会再被任何get命中，
+ * 所属线程自己的清理逻辑同样是把value置null，两边并发写入的都是null，不会破坏Map。
+ *
+ * FastThreadLocalThread的FastThreadLocal存在线程自己的数组里，不经过ThreadLocalMap，这里按下标逐个报告已设置的槽位。
+ * 槽位没有弱引用的key：FastThreadLocal对象被回收后下标也不回收，无从判断是否stale，一律按非stale报告、不参与清理，
+ * 只能从条目数和估算大小上发现异常，由所属线程remove()/removeAll()释放。
+ * 普通线程上的FastThreadLocal数组保存在一个ThreadLocal里，已经作为一个ThreadLocalMap条目报告。
+ */
+public final class ThreadLocalInspector {
+
+    private static final Field THREAD_LOCALS;
+    private static final Field INHERITABLE_THREAD_LOCALS;
+    private static final Field TABLE;
+    private static final Field VALUE;
+    private static final String UNAVAILABLE_REASON;
+
+    static {
+        Field threadLocals = null;
+        Field inheritable = null;
+        Field table = null;
+        Field value = null;
+        String reason = null;
+        try {
+            threadLocals = accessible(Thread.class.getDeclaredField("threadLocals"));
+            inheritable = accessible(Thread.class.getDeclaredField("inheritableThreadLocals"));
+            Class<?> mapClass = Class.forName("java.lang.ThreadLocal$ThreadLocalMap");
+            table = accessible(mapClass.getDeclaredField("table"));
+            Class<?> entryClass = Class.forName("java.lang.ThreadLocal$ThreadLocalMap$Entry");
+            value = accessible(entryClass.getDeclaredField("value"));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            reason = "无法反射访问ThreadLocalMap，请在JVM参数中加上 --add-opens java.base/java.lang=ALL-UNNAMED ("
+                    + e.getClass().getSimpleName() + ": " + e.getMessage() + ")";
+        }
+        THREAD_LOCALS = threadLocals;
+        INHERITABLE_THREAD_LOCALS = inheritable;
+        TABLE = table;
+        VALUE = value;
+        UNAVAILABLE_REASON = reason;
+    }
+
+    private ThreadLocalInspector() {
+    }
+
+    public static boolean isAvailable() {
+        return UNAVAILABLE_REASON == null;
+    }
+
+    public static String unavailableReason() {
+        return UNAVAILABLE_REASON;
+    }
+
+    /**
+     * 检查一个线程的ThreadLocal和InheritableThreadLocal
+     *
+     * @param purgeStale 是否清理key已被回收的条目的value
+     */
+    public static ThreadSnapshot inspect(Thread thread, boolean purgeStale) {
+        if (!isAvailable()) {
+            throw new IllegalStateException(UNAVAILABLE_REASON);
+        }
+        List<EntryInfo> entries = new ArrayList<>();
+        int purged = 0;
+        long purgedBytes = 0;
+        for (Field mapField : new Field[]{THREAD_LOCALS, INHERITABLE_THREAD_LOCALS}) {
+            boolean inheritable = mapField == INHERITABLE_THREAD_LOCALS;
+            Object[] table = table(thread, mapField);
+            if (table == null) {
+                continue;
+            }
+            for (Object entry : table) {
+                if (entry == null) {
+                    continue;
+                }
+                Object key = ((Reference<?>) entry).get();
+                Object value = get(VALUE, entry);
+                if (key == null && value == null) {
+                    // 已经被清理过的Entry
+                    continue;
+                }
+                long bytes = ObjectSizeEstimator.estimate(value);
+                entries.add(new EntryInfo(key == null ? null : key.getClass().getName(),
+                        value == null ? "null" : value.getClass().getName(), key == null, inheritable, bytes));
+                if (key == null && purgeStale) {
+                    set(VALUE, entry, null);
+                    purged++;
+                    purgedBytes += bytes;
+                }
+            }
+        }
+        if (thread instanceof FastThreadLocalThread) {
+            addFastThreadLocals((FastThreadLocalThread) thread, entries);
+        }
+        return new ThreadSnapshot(thread.getName(), entries, purged, purgedBytes);
+    }
+
+    /**
+     * 数组由所属线程不加同步地读写和扩容，这里读到的可能是扩容前的旧数组，估算值偏小即可
+     */
+    private static void addFastThreadLocals(FastThreadLocalThread thread, List<EntryInfo> entries) {
+        Object[] slots = thread.getFastThreadLocals();
+        if (slots == null) {
+            return;
+        }
+        for (int index = 0; index < slots.length; index++) {
+            Object value = slots[index];
+            if (FastThreadLocal.isUnset(value)) {
+                continue;
+            }
+            entries.add(new EntryInfo(FastThreadLocal.class.getName() + "[" + index + "]",
+                    value == null ? "null" : value.getClass().getName(), false, false, true,
+                    ObjectSizeEstimator.estimate(value)));
+        }
+    }
+
+    private static Object[] table(Thread thread, Field mapField) {
+        Object map = get(mapField, thread);
+        return map == null ? null : (Object[]) get(TABLE, map);
+    }
+
+    private static Field accessible(Field field) {
+        field.setAccessible(true);
+        return field;
+    }
+
+    private static Object get(Field field, Object target) {
+        try {
+            return field.get(target);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void set(Field field, Object target, Object value) {
+        try {
+            field.set(target, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 一个线程的检查结果
+     */
+    public static final class ThreadSnapshot {
+        private final String threadName;
+        private final List<EntryInfo> entries;
+        private final int purgedEntries;
+        private final long purgedBytes;
+
+        ThreadSnapshot(String threadName, List<EntryInfo> entries, int purgedEntries, long purgedBytes) {
+            this.threadName = threadName;
+            this.entries = Collections.unmodifiableList(entries);
+            this.purgedEntries = purgedEntries;
+            this.purgedBytes = purgedBytes;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        public List<EntryInfo> getEntries() {
+            return entries;
+        }
+
+        public int getEntryCount() {
+            return entries.size();
+        }
+
+        /**
+         * key已被回收、value仍被线程引用的条目数
+         */
+        public int getStaleEntryCount() {
+            return (int) entries.stream().filter(EntryInfo::isStale).count();
+        }
+
+        public long getEstimatedBytes() {
+            return entries.stream().mapToLong(EntryInfo::getEstimatedBytes).sum();
+        }
+
+        public long getStaleEstimatedBytes() {
+            return entries.stream().filter(EntryInfo::isStale).mapToLong(EntryInfo::getEstimatedBytes).sum();
+        }
+
+        public int getPurgedEntries() {
+            return purgedEntries;
+        }
+
+        public long getPurgedBytes() {
+            return purgedBytes;
+        }
+    }
+
+    /**
+     * ThreadLocalMap中的一个条目
+     */
+    public static final class EntryInfo {
+        private final String threadLocalClass;
+        private final String valueClass;
+        private final boolean stale;
+        private final boolean inheritable;
+        private final boolean fastThreadLocal;
+        private final long estimatedBytes;
+
+        EntryInfo(String threadLocalClass, String valueClass, boolean stale, boolean inheritable, long estimatedBytes) {
+            this(threadLocalClass, valueClass, stale, inheritable, false, estimatedBytes);
+        }
+
+        EntryInfo(String threadLocalClass, String valueClass, boolean stale, boolean inheritable,
+                  boolean fastThreadLocal, long estimatedBytes) {
+            this.threadLocalClass = threadLocalClass;
+            this.valueClass = valueClass;
+            this.stale = stale;
+            this.inheritable = inheritable;
+            this.fastThreadLocal = fastThreadLocal;
+            this.estimatedBytes = estimatedBytes;
+        }
+
+        /**
+         * ThreadLocal本身的类名，stale条目为null；FastThreadLocal槽位为FastThreadLocal[下标]
+         */
+        public String getThreadLocalClass() {
+            return threadLocalClass;
+        }
+
+        public String getValueClass() {
+            return valueClass;
+        }
+
+        public boolean isStale() {
+            return stale;
+        }
+
+        public boolean isInheritable() {
+            return inheritable;
+        }
+
+        /**
+         * 是否是FastThreadLocalThread数组中的槽位，这类条目无法判断stale，也不会被清理
+         */
+        public boolean isFastThreadLocal() {
+            return fastThreadLocal;
+        }
+
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+    }
+
+    /**
+     * 估算value可达对象图的大小（字节）
+     *
+     * 没有Instrumentation代理，只能按字段布局估算：对象头12字节、引用4字节（压缩指针）、按8字节对齐。
+     * 1. 能反射访问的字段逐个遍历；JDK其他模块中未开放的类只计浅大小，集合和Map通过公开的迭代接口遍历元素
+     * 2. 不进入Class、ClassLoader、Thread，避免把整个应用算进来；最多遍历MAX_OBJECTS个对象
+     * 3. ByteBuffer的底层数组或直接内存字段不可访问，按capacity计入，直接内存虽不在堆上也算作线程占用的内存
+     * 结果只用于比较量级和找出大头，不是精确的retained size（共享对象会被每个持有者重复计入）。
+     */
+    static final class ObjectSizeEstimator {
+
+        private static final int MAX_OBJECTS = 100_000;
+        private static final int HEADER = 12;
+        private static final int ARRAY_HEADER = 16;
+        private static final int REFERENCE = 4;
+        private static final Map<Class<?>, ClassLayout> LAYOUTS = new ConcurrentHashMap<>();
+
+        private ObjectSizeEstimator() {
+        }
+
+        static long estimate(Object root) {
+            if (root == null) {
+                return 0;
+            }
+            Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+            Deque<Object> pending = new ArrayDeque<>();
+            pending.push(root);
+            long total = 0;
+            while (!pending.isEmpty() && visited.size() < MAX_OBJECTS) {
+                Object current = pending.pop();
+                if (!visited.add(current)) {
+                    continue;
+                }
+                Class<?> type = current.getClass();
+                if (type.isArray()) {
+                    total += arraySize(current, pending);
+                    continue;
+                }
+                ClassLayout layout = LAYOUTS.computeIfAbsent(type, ClassLayout::new);
+                total += layout.shallowSize;
+                if (current instanceof ByteBuffer) {
+                    total += ((ByteBuffer) current).capacity();
+                }
+                for (Field field : layout.references) {
+                    push(pending, read(field, current));
+                }
+                if (!layout.fullyAccessible) {
+                    pushElements(current, pending);
+                }
+            }
+            return total;
+        }
+
+        private static long arraySize(Object array, Deque<Object> pending) {
+            int length = Array.getLength(array);
+            Class<?> component = array.getClass().getComponentType();
+            if (component.isPrimitive()) {
+                return align(ARRAY_HEADER + (long) length * primitiveSize(component));
+            }
+            for (Object element : (Object[]) array) {
+                push(pending, element);
+            }
+            return align(ARRAY_HEADER + (long) length * REFERENCE);
+        }
+
+        /**
+         * 字段不可访问的集合类通过公开接口遍历元素，被所属线程并发修改时放弃遍历
+         */
+        private static void pushElements(Object object, Deque<Object> pending) {
+            try {
+                if (object instanceof Collection) {
+                    for (Object element : (Collection<?>) object) {
+                        push(pending, element);
+                    }
+                } else if (object instanceof Map) {
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+                        push(pending, entry.getKey());
+                        push(pending, entry.getValue());
+                    }
+                }
+            } catch (RuntimeException e) {
+                // ConcurrentModificationException等，估算值偏小即可
+            }
+        }
+
+        private static void push(Deque<Object> pending, Object value) {
+            if (value == null || value instanceof Class || value instanceof ClassLoader || value instanceof Thread) {
+                return;
+            }
+            pending.push(value);
+        }
+
+        private static Object read(Field field, Object target) {
+            try {
+                return field.get(target);
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+        }
+
+        private static int primitiveSize(Class<?> type) {
+            if (type == long.class || type == double.class) {
+                return 8;
+            }
+            if (type == int.class || type == float.class) {
+                return 4;
+            }
+            if (type == short.class || type == char.class) {
+                return 2;
+            }
+            return 1;
+        }
+
+        private static long align(long size) {
+            return (size + 7) & ~7L;
+        }
+
+        /**
+         * 每个类的浅大小和可遍历的引用字段，按类缓存
+         */
+        private static final class ClassLayout {
+            final long shallowSize;
+            final List<Field> references = new ArrayList<>();
+            final boolean fullyAccessible;
+
+            ClassLayout(Class<?> type) {
+                long size = HEADER;
+                boolean accessible = true;
+                for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        if (Modifier.isStatic(field.getModifiers())) {
+                            continue;
+                        }
+                        if (field.getType().isPrimitive()) {
+                            size += primitiveSize(field.getType());
+                            continue;
+                        }
+                        size += REFERENCE;
+                        try {
+                            field.setAccessible(true);
+                            references.add(field);
+                        } catch (RuntimeException e) {
+                            // 未开放的模块（InaccessibleObjectException），只计入引用本身
+                            accessible = false;
+                        }
+                    }
+                }
+                this.shallowSize = align(size);
+                this.fullyAccessible = accessible;
+            }
+        }
+    }
+}